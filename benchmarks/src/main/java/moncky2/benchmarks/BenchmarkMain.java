@@ -0,0 +1,39 @@
+package moncky2.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Entry point of benchmarks.jar, runs JMH with the given arguments (see java -jar benchmarks.jar -h).
+Unless the arguments choose a result file (-rf/-rff), the results are also saved as JSON in
+moncky2out/benchmarks/jmh-<date and time>.json, so runs can be compared later.
+ */
+public class BenchmarkMain {
+
+    private static final Path RESULT_DIRECTORY = Path.of("moncky2out", "benchmarks");
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf") && !jmhArgs.contains("-rff") && !jmhArgs.contains("-h") && !jmhArgs.contains("-l")) {
+            Path resultFile = resultFile();
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+            jmhArgs.add("-rff");
+            jmhArgs.add(resultFile.toString());
+            System.out.println("results will be saved in " + resultFile);
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+
+    private static Path resultFile() throws IOException {
+        Files.createDirectories(RESULT_DIRECTORY);
+        String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        return RESULT_DIRECTORY.resolve("jmh-" + time + ".json");
+    }
+}
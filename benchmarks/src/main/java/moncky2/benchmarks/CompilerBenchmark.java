@@ -0,0 +1,74 @@
+package moncky2.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Throughput of Moncky2Compiler.compileCode, counted in source lines per second:
+- assemble: a new compiler assembles the whole program
+- reassemble: the same compiler assembles the program again after a one-line edit (the edit is added and removed
+  in turns), so only the lines that changed are encoded
+Writing the image is measured by ImageWriterBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+
+    @Param({"demoLoop", "demoExamCode1", "synthetic", "20k", "large"})
+    public String program;
+
+    private String code;
+    private String editedCode;
+    private int lines;
+    private Object compiler;
+    private boolean edited = false;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long lines;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lines = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        code = Moncky2Handles.program(program);
+        lines = code.split("\n").length;
+        editedCode = Programs.edit(code);
+        compiler = Moncky2Handles.newCompiler();
+        Moncky2Handles.compileCode(compiler, code);
+    }
+
+    @Benchmark
+    public Object assemble(Counters counters) throws Throwable {
+        Object compiler = Moncky2Handles.newCompiler();
+        Moncky2Handles.compileCode(compiler, code);
+        counters.lines += lines;
+        return compiler;
+    }
+
+    @Benchmark
+    public Object reassemble(Counters counters) throws Throwable {
+        edited = !edited;
+        Moncky2Handles.compileCode(compiler, edited ? editedCode : code);
+        counters.lines += lines;
+        return compiler;
+    }
+}
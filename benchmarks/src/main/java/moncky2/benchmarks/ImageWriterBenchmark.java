@@ -0,0 +1,90 @@
+package moncky2.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/*
+Throughput of MemoryImageWriter, counted in image bytes per second:
+- encode: encode the words into a buffer
+- write: encode and write a file (a temporary file that is deleted afterwards)
+Images:
+- large: the assembled words of the large generated program (about 64K instructions)
+- memory: a full 64K-word memory dump with a few thousand non-zero words, mostly long zero regions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageWriterBenchmark {
+
+    @Param({"large", "memory"})
+    public String image;
+
+    @Param({"RAW", "INTEL_HEX", "BINARY_LITTLE_ENDIAN"})
+    public String format;
+
+    private short[] words;
+    private Object imageFormat;
+    private Path file;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        if (image.equals("memory")) {
+            words = new short[65536];
+            Random random = new Random(42);
+            for (int i = 0; i < 4000; i++) words[random.nextInt(words.length)] = (short) random.nextInt();
+        } else {
+            Object compiler = Moncky2Handles.newCompiler();
+            Moncky2Handles.compileCode(compiler, Moncky2Handles.program(image));
+            words = Moncky2Handles.compiledWords(compiler);
+        }
+        imageFormat = Moncky2Handles.imageFormat(format);
+        file = Files.createTempFile("moncky2image", ".img");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ByteBuffer encode(Counters counters) throws Throwable {
+        ByteBuffer buffer = Moncky2Handles.encodeImage(words, imageFormat);
+        counters.bytes += buffer.remaining();
+        return buffer;
+    }
+
+    @Benchmark
+    public void write(Counters counters) throws Throwable {
+        Moncky2Handles.writeImage(file, words, imageFormat);
+        counters.bytes += Files.size(file);
+    }
+}
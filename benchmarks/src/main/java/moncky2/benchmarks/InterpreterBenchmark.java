@@ -0,0 +1,57 @@
+package moncky2.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Throughput of Moncky2Interpreter.interpretCode: every invocation parses, decodes and runs the whole program.
+The instructions counter reports executed instructions per second next to the invocations per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"demoLoop", "demoExamCode1", "synthetic"})
+    public String program;
+
+    private String code;
+    private Object interpreter;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        code = Moncky2Handles.program(program);
+        interpreter = Moncky2Handles.newInterpreter();
+    }
+
+    @Benchmark
+    public long interpretCode(Counters counters) throws Throwable {
+        Moncky2Handles.interpretCode(interpreter, code);
+        long count = Moncky2Handles.instructionCount(interpreter);
+        counters.instructions += count;
+        return count;
+    }
+}
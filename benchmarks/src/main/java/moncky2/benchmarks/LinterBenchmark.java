@@ -0,0 +1,77 @@
+package moncky2.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/*
+Throughput of the linter (new Moncky2Linter(code), which reads the labels, and runCheck), counted in checked lines per second.
+The linter prints its report with one call to System.out, which is replaced by a stream that discards everything
+during the benchmark, so the result measures the checks and building the report, not the console.
+lint50k is a 50000-line program with a label reference in every block: labels are looked up in the SymbolTable
+that is built once per program, so lines/s should stay about the same as for the small programs.
+parallel=false checks every line on one thread, parallel=true checks programs of Moncky2Linter.PARALLEL_LINES lines
+or more (lint50k) in blocks on all processors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinterBenchmark {
+
+    @Param({"demoBrokenCode.txt", "demoExamCode1", "synthetic", "lint50k"})
+    public String program;
+
+    @Param({"true", "false"})
+    public boolean parallel;
+
+    private String code;
+    private int lines;
+    private PrintStream console;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long lines;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lines = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        code = Moncky2Handles.program(program);
+        lines = code.split("\n").length;
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void runCheck(Counters counters) throws Throwable {
+        Object linter = Moncky2Handles.newLinter(code);
+        Moncky2Handles.setParallel(linter, parallel);
+        Moncky2Handles.runCheck(linter);
+        counters.lines += lines;
+    }
+}
@@ -0,0 +1,138 @@
+package moncky2.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/*
+Access to the interpreter, compiler, image writer and linter for the benchmarks.
+Those classes are in the unnamed package, which cannot be imported from a named package (and JMH needs one),
+so they are reached through method handles. The handles are static final, so the JIT inlines them like direct calls.
+ */
+final class Moncky2Handles {
+
+    private static final MethodHandle NEW_INTERPRETER;
+    private static final MethodHandle INTERPRET_CODE;
+    private static final MethodHandle INSTRUCTION_COUNT;
+    private static final MethodHandle NEW_COMPILER;
+    private static final MethodHandle COMPILE_CODE;
+    private static final MethodHandle COMPILED_WORDS;
+    private static final MethodHandle ENCODE_IMAGE;
+    private static final MethodHandle WRITE_IMAGE;
+    private static final Object[] IMAGE_FORMATS;
+    private static final MethodHandle NEW_LINTER;
+    private static final MethodHandle RUN_CHECK;
+    private static final MethodHandle SET_PARALLEL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> interpreter = Class.forName("Moncky2Interpreter");
+            Class<?> compiler = Class.forName("Moncky2Compiler");
+            Class<?> linter = Class.forName("Moncky2Linter");
+            NEW_INTERPRETER = lookup.findConstructor(interpreter, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            INTERPRET_CODE = lookup.findVirtual(interpreter, "interpretCode", MethodType.methodType(void.class, String.class))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+            INSTRUCTION_COUNT = lookup.findVirtual(interpreter, "getInstructionCount", MethodType.methodType(long.class))
+                    .asType(MethodType.methodType(long.class, Object.class));
+            NEW_COMPILER = lookup.findConstructor(compiler, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            COMPILE_CODE = lookup.findVirtual(compiler, "compileCode", MethodType.methodType(void.class, String.class))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+            COMPILED_WORDS = lookup.findVirtual(compiler, "getCompiledWords", MethodType.methodType(short[].class))
+                    .asType(MethodType.methodType(short[].class, Object.class));
+            Class<?> imageWriter = Class.forName("MemoryImageWriter");
+            Class<?> imageFormat = Class.forName("MemoryImageWriter$Format");
+            IMAGE_FORMATS = imageFormat.getEnumConstants();
+            ENCODE_IMAGE = lookup.findStatic(imageWriter, "encode", MethodType.methodType(ByteBuffer.class, short[].class, imageFormat))
+                    .asType(MethodType.methodType(ByteBuffer.class, short[].class, Object.class));
+            WRITE_IMAGE = lookup.findStatic(imageWriter, "write", MethodType.methodType(void.class, Path.class, short[].class, imageFormat))
+                    .asType(MethodType.methodType(void.class, Path.class, short[].class, Object.class));
+            NEW_LINTER = lookup.findConstructor(linter, MethodType.methodType(void.class, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            RUN_CHECK = lookup.findVirtual(linter, "runCheck", MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+            SET_PARALLEL = lookup.findVirtual(linter, "setParallel", MethodType.methodType(void.class, boolean.class))
+                    .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Moncky2Handles() {
+    }
+
+    static Object newInterpreter() throws Throwable {
+        return NEW_INTERPRETER.invokeExact();
+    }
+
+    static void interpretCode(Object interpreter, String code) throws Throwable {
+        INTERPRET_CODE.invokeExact(interpreter, code);
+    }
+
+    static long instructionCount(Object interpreter) throws Throwable {
+        return (long) INSTRUCTION_COUNT.invokeExact(interpreter);
+    }
+
+    static Object newCompiler() throws Throwable {
+        return NEW_COMPILER.invokeExact();
+    }
+
+    static void compileCode(Object compiler, String code) throws Throwable {
+        COMPILE_CODE.invokeExact(compiler, code);
+    }
+
+    static short[] compiledWords(Object compiler) throws Throwable {
+        return (short[]) COMPILED_WORDS.invokeExact(compiler);
+    }
+
+    //MemoryImageWriter.Format constant with the given name (RAW, INTEL_HEX, ...)
+    static Object imageFormat(String name) {
+        for (Object format : IMAGE_FORMATS) {
+            if (format.toString().equals(name)) return format;
+        }
+        throw new IllegalArgumentException("unknown image format " + name);
+    }
+
+    static ByteBuffer encodeImage(short[] words, Object format) throws Throwable {
+        return (ByteBuffer) ENCODE_IMAGE.invokeExact(words, format);
+    }
+
+    static void writeImage(Path path, short[] words, Object format) throws Throwable {
+        WRITE_IMAGE.invokeExact(path, words, format);
+    }
+
+    static Object newLinter(String code) throws Throwable {
+        return NEW_LINTER.invokeExact(code);
+    }
+
+    static void runCheck(Object linter) throws Throwable {
+        RUN_CHECK.invokeExact(linter);
+    }
+
+    static void setParallel(Object linter, boolean parallel) throws Throwable {
+        SET_PARALLEL.invokeExact(linter, parallel);
+    }
+
+    /**
+     * this method reads a program for a benchmark
+     * @param name a demo (the demos are packaged in the jar), or synthetic/20k/large for Programs.synthetic, lint50k for Programs.labelled
+     * @return the source code
+     */
+    static String program(String name) throws IOException {
+        if (name.equals("synthetic")) return Programs.synthetic(Programs.SYNTHETIC_BLOCKS);
+        if (name.equals("20k")) return Programs.synthetic(Programs.EDIT_BLOCKS);
+        if (name.equals("large")) return Programs.synthetic(Programs.LARGE_BLOCKS);
+        if (name.equals("lint50k")) return Programs.labelled(Programs.LINT_BLOCKS);
+        try (InputStream in = Moncky2Handles.class.getResourceAsStream("/demos/" + name)) {
+            if (in == null) throw new IllegalArgumentException("unknown program " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package moncky2.benchmarks;
+
+/*
+Generated programs for the benchmarks, larger than the demos.
+ */
+final class Programs {
+
+    //number of loop blocks in the synthetic program used by the interpreter, compiler, and linter benchmarks
+    static final int SYNTHETIC_BLOCKS = 200;
+    //number of loop blocks in a program of about 20000 lines, used to measure re-assembly after an edit
+    static final int EDIT_BLOCKS = 1350;
+    //number of loop blocks in the large program (about 64K instructions) used by the compiler benchmarks
+    //it is only assembled, jumps past address 32767 halt the processor (addresses are signed 16-bit numbers)
+    static final int LARGE_BLOCKS = 5400;
+
+    //number of blocks in the program of about 50000 lines used by the linter benchmark
+    static final int LINT_BLOCKS = 4545;
+
+    private Programs() {
+    }
+
+    /**
+     * this method makes a one-line edit: it inserts an instruction in the middle of the program
+     * @param code source code
+     * @return the code with "nop r0, r0" added before the middle line
+     */
+    static String edit(String code) {
+        int middle = code.indexOf('\n', code.length() / 2) + 1;
+        return code.substring(0, middle) + "nop  r0,    r0\n" + code.substring(middle);
+    }
+
+    /**
+     * this method generates a program of independent counted loops, every loop runs 100 times
+     * it uses loads, stores, ALU operations and conditional jumps, like the demos
+     * it writes to memory address 0x7F00 only, so it does not overwrite its instructions when it has less than 32K of them
+     * li can only load 8 bits, so loops after address 255 build their address with a shift
+     * @param blocks number of loops, every loop is 9 to 12 instructions
+     * @return the source code, it halts
+     */
+    static String synthetic(int blocks) {
+        StringBuilder code = new StringBuilder(blocks * 200);
+        code.append(";generated benchmark program\n");
+        code.append("li   r1,    1         ;increment\n");
+        code.append("li   r8,    8         ;shift for addresses\n");
+        code.append("li   r3,    0x7F\n");
+        code.append("shl  r3,    r8        ;memory address 0x7F00\n");
+        int address = 4;
+        for (int block = 0; block < blocks; block++) {
+            code.append("\n;block ").append(block).append('\n');
+            code.append("li   r10,   100       ;loop counter\n");
+            address++;
+            //a loop address is the address of the instruction before the loop, the last instruction that loads it into r12
+            int loop = address;
+            if (loop > 255) {
+                loop = address + 3;
+                code.append("li   r12,   ").append(loop >> 8).append('\n');
+                code.append("shl  r12,   r8\n");
+                code.append("li   r13,   ").append(loop & 0xFF).append('\n');
+                code.append("or   r12,   r13\n");
+                address += 4;
+            } else {
+                code.append("li   r12,   :loop").append(block).append('\n');
+                address++;
+            }
+            code.append(":loop").append(block).append('\n');
+            code.append("add  r2,    r1\n");
+            code.append("xor  r4,    r2\n");
+            code.append("st   r2,    (r3)\n");
+            code.append("ld   r5,    (r3)\n");
+            code.append("add  r6,    r1\n");
+            code.append("sub  r10,   r1\n");
+            code.append("jpnz r12              ;next iteration\n");
+            address += 7;
+        }
+        code.append("\nhalt\n");
+        return code.toString();
+    }
+
+    /**
+     * this method generates a program for the linter with a label reference in every block
+     * every 100th block also defines a label twice and loads a label that does not exist, so the label diagnostics run too
+     * it is only linted: labels after address 255 don't fit in li
+     * @param blocks number of blocks, every block is 11 lines (the program has 11 * blocks + 4 lines)
+     * @return the source code
+     */
+    static String labelled(int blocks) {
+        StringBuilder code = new StringBuilder(blocks * 200);
+        code.append(";generated linter benchmark program\n");
+        code.append("li   r1,    1\n");
+        for (int block = 0; block < blocks; block++) {
+            code.append("\n;block ").append(block).append('\n');
+            code.append("li   r10,   100\n");
+            code.append("li   r12,   :loop").append(block).append('\n');
+            code.append(":loop").append(block).append('\n');
+            if (block % 100 == 0) {
+                code.append(":loop").append(block).append("           ;duplicate\n");
+                code.append("li   r13,   :missing").append(block).append('\n');
+            } else {
+                code.append("xor  r4,    r2\n");
+                code.append("st   r2,    (r3)\n");
+            }
+            code.append("add  r2,    r1\n");
+            code.append("ld   r5,    (r3)\n");
+            code.append("sub  r10,   r1\n");
+            code.append("jpnz r12              ;next iteration\n");
+        }
+        code.append("\nhalt\n");
+        return code.toString();
+    }
+}
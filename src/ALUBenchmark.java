@@ -0,0 +1,112 @@
+import java.util.Random;
+
+/*
+Compares Moncky2ALU with the string based ALU the interpreter used before (kept below as a reference).
+Both versions run the same random operations. The results are checked against each other, then both are timed.
+ */
+public class ALUBenchmark {
+
+    private static final int[] OPCODES = {
+            CommandDecoder.OP_OR, CommandDecoder.OP_AND, CommandDecoder.OP_XOR, CommandDecoder.OP_ADD, CommandDecoder.OP_SUB,
+            CommandDecoder.OP_SHL, CommandDecoder.OP_SHR, CommandDecoder.OP_ASHR, CommandDecoder.OP_NOT, CommandDecoder.OP_NEG
+    };
+    private static final int OPERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] opcodes = new int[OPERATIONS];
+        short[] valuesA = new short[OPERATIONS];
+        short[] valuesB = new short[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            opcodes[i] = OPCODES[random.nextInt(OPCODES.length)];
+            valuesA[i] = (short) random.nextInt();
+            //keep shift amounts small, the string version shifts one bit at a time
+            valuesB[i] = (short) random.nextInt(20);
+        }
+
+        //check that both versions give the same results
+        short[] register = new short[16];
+        for (int i = 0; i < OPERATIONS; i++) {
+            register[0] = valuesA[i];
+            register[1] = valuesB[i];
+            short expected = stringALU(opcodes[i], valuesA[i], valuesB[i]);
+            Moncky2ALU.execute(opcodes[i], register, 0, 1, 0);
+            if (register[0] != expected) {
+                throw new RuntimeException(CommandDecoder.MNEMONICS[opcodes[i]] + " " + valuesA[i] + ", " + valuesB[i] + ": expected " + expected + " but was " + register[0]);
+            }
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int check = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                check += stringALU(opcodes[i], valuesA[i], valuesB[i]);
+            }
+            long stringTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                register[0] = valuesA[i];
+                register[1] = valuesB[i];
+                check -= (short) Moncky2ALU.execute(opcodes[i], register, 0, 1, 0);
+            }
+            long integerTime = System.nanoTime() - start;
+
+            System.out.printf("round %d: string ALU %.1f ns/op, Moncky2ALU %.1f ns/op (%.0fx faster) [%d]%n", round,
+                    (double) stringTime / OPERATIONS, (double) integerTime / OPERATIONS, (double) stringTime / integerTime, check);
+        }
+    }
+
+    //the ALU operations as they were done in executeCommand, with binary strings
+    private static short stringALU(int opcode, short valueA, short valueB) {
+        String reg1 = NumberConverter.decimalToBinaryString(valueA, 16);
+        String reg2 = NumberConverter.decimalToBinaryString(valueB, 16);
+        StringBuilder result = new StringBuilder();
+        switch (opcode) {
+            case CommandDecoder.OP_OR:
+                for (int i = 0; i < 16; i++) {
+                    if (reg1.charAt(i) == '1' || reg2.charAt(i) == '1') result.append("1");
+                    else result.append("0");
+                }
+                return (short) NumberConverter.binaryStringToDecimal(result.toString());
+            case CommandDecoder.OP_AND:
+                for (int i = 0; i < 16; i++) {
+                    if (reg1.charAt(i) == '1' && reg2.charAt(i) == '1') result.append("1");
+                    else result.append("0");
+                }
+                return (short) NumberConverter.binaryStringToDecimal(result.toString());
+            case CommandDecoder.OP_XOR:
+                for (int i = 0; i < 16; i++) {
+                    if ((reg1.charAt(i) == '1' || reg2.charAt(i) == '1') && (reg1.charAt(i) != reg2.charAt(i))) result.append("1");
+                    else result.append("0");
+                }
+                return (short) NumberConverter.binaryStringToDecimal(result.toString());
+            case CommandDecoder.OP_ADD:
+                return (short) (valueA + valueB);
+            case CommandDecoder.OP_SUB:
+                return (short) (valueA - valueB);
+            case CommandDecoder.OP_SHL:
+                for (int i = 0; i < valueB; i++) {
+                    String binary = NumberConverter.decimalToBinaryString(valueA, 16);
+                    valueA = (short) NumberConverter.binaryStringToDecimal(binary.substring(1) + "0");
+                }
+                return valueA;
+            case CommandDecoder.OP_SHR:
+                for (int i = 0; i < valueB; i++) {
+                    String binary = NumberConverter.decimalToBinaryString(valueA, 16);
+                    valueA = (short) NumberConverter.binaryStringToDecimal("0" + binary.substring(0, binary.length() - 1));
+                }
+                return valueA;
+            case CommandDecoder.OP_ASHR:
+                for (int i = 0; i < valueB; i++) {
+                    String binary = NumberConverter.decimalToBinaryString(valueA, 16);
+                    valueA = (short) NumberConverter.binaryStringToDecimal(binary.charAt(0) + binary.substring(0, binary.length() - 1));
+                }
+                return valueA;
+            case CommandDecoder.OP_NOT:
+                return (short) NumberConverter.binaryStringToDecimal(NumberConverter.invertBinary(reg2));
+            default:
+                return (short) (NumberConverter.binaryStringToDecimal(NumberConverter.invertBinary(reg2)) + 1);
+        }
+    }
+}
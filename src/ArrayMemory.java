@@ -0,0 +1,20 @@
+//default memory of the interpreter: all words are kept in a short array and disappear when the program ends
+public class ArrayMemory implements Moncky2Memory {
+
+    private final short[] words = new short[WORDS];
+
+    @Override
+    public short read(int address) {
+        return words[address];
+    }
+
+    @Override
+    public void write(int address, short value) {
+        words[address] = value;
+    }
+
+    @Override
+    public void load(short[] words) {
+        System.arraycopy(words, 0, this.words, 0, words.length);
+    }
+}
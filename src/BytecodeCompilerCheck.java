@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+Differential check of Moncky2BytecodeCompiler: every program runs in the interpreter and as compiled bytecode,
+then the registers, memory, ALU value, flags, and instruction count are compared.
+A program that fails must fail with the same exception in both engines.
+Checks all programs in moncky2in/demos, or the files given as arguments.
+ */
+public class BytecodeCompilerCheck {
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args) files.add(Path.of(arg));
+        } else {
+            try (Stream<Path> demos = Files.list(Path.of("moncky2in/demos"))) {
+                demos.sorted().forEach(files::add);
+            }
+        }
+        int mismatches = 0;
+        for (Path file : files) {
+            String code = Files.readString(file);
+            String interpreted = run(code, false);
+            String compiled = run(code, true);
+            if (interpreted.equals(compiled)) {
+                System.out.println("OK       " + file.getFileName() + " (" + interpreted.lines().findFirst().orElse("") + ")");
+            } else {
+                mismatches++;
+                System.out.println("MISMATCH " + file.getFileName());
+                System.out.println("interpreter:\n" + interpreted + "compiled:\n" + compiled);
+            }
+        }
+        System.out.println(files.size() + " programs checked, " + mismatches + " mismatches");
+        if (mismatches > 0) System.exit(1);
+    }
+
+    //runs the code with one engine and describes the final cpu state
+    private static String run(String code, boolean compile) {
+        Moncky2Interpreter m2i = new Moncky2Interpreter();
+        m2i.setBytecodeCompilation(compile);
+        StringBuilder state = new StringBuilder();
+        try {
+            m2i.interpretCode(code);
+            state.append(m2i.getInstructionCount()).append(" instructions\n");
+        } catch (RuntimeException e) {
+            state.append("failed with ").append(e.getClass().getSimpleName()).append(": ").append(e.getMessage()).append('\n');
+        }
+        state.append("registers ").append(Arrays.toString(m2i.getRegister())).append('\n');
+        state.append("ALU ").append(m2i.getALU()).append(", flags ").append(m2i.getFlags()).append('\n');
+        Moncky2Memory memory = m2i.getMemory();
+        for (int i = 0; i < Moncky2Memory.WORDS; i++) {
+            if (memory.read(i) != 0) state.append("memory at #").append(i).append(": ").append(memory.read(i)).append('\n');
+        }
+        return state.toString();
+    }
+}
@@ -0,0 +1,238 @@
+public class CommandDecoder {
+
+    //opcodes of decoded instructions
+    public static final int OP_HALT = 0;
+    public static final int OP_LI = 1;
+    public static final int OP_LD = 2;
+    public static final int OP_ST = 3;
+    public static final int OP_JP = 4;
+    public static final int OP_JPC = 5;
+    public static final int OP_JPNC = 6;
+    public static final int OP_JPZ = 7;
+    public static final int OP_JPNZ = 8;
+    public static final int OP_JPS = 9;
+    public static final int OP_JPNS = 10;
+    public static final int OP_JPO = 11;
+    public static final int OP_JPNO = 12;
+    public static final int OP_NOP = 13;
+    public static final int OP_OR = 14;
+    public static final int OP_AND = 15;
+    public static final int OP_XOR = 16;
+    public static final int OP_ADD = 17;
+    public static final int OP_SUB = 18;
+    public static final int OP_SHL = 19;
+    public static final int OP_SHR = 20;
+    public static final int OP_ASHR = 21;
+    public static final int OP_NOT = 22;
+    public static final int OP_NEG = 23;
+    //instruction that is read but does nothing (unknown ALU operation, single word line)
+    public static final int OP_SKIP = 24;
+    //instruction that could not be decoded. It is executed through executeCommand so it fails the same way it always did
+    public static final int OP_LEGACY = 25;
+    //16-bit instruction word that is not a Moncky-2 instruction (only found in hex images)
+    public static final int OP_INVALID = 26;
+
+    //mnemonics of the opcodes above, indexed by opcode
+    public static final String[] MNEMONICS = {
+            "halt", "li", "ld", "st", "jp", "jpc", "jpnc", "jpz", "jpnz", "jps", "jpns", "jpo", "jpno",
+            "nop", "or", "and", "xor", "add", "sub", "shl", "shr", "ashr", "not", "neg", "skip", "legacy", "invalid"
+    };
+
+    //decoded instruction for every possible 16-bit Moncky-2 instruction word, so decoding a fetched word is one array lookup
+    public static final int[] WORD_DECODE_TABLE = new int[65536];
+
+    static {
+        for (int word = 0; word < WORD_DECODE_TABLE.length; word++) {
+            WORD_DECODE_TABLE[word] = decodeWord(word);
+        }
+    }
+
+    /*
+    Layout of a decoded instruction word (one int per instruction):
+    - bits 0-7   opcode
+    - bits 8-11  first register (rA)
+    - bits 12-15 second register (rB)
+    - bits 16-31 immediate value (signed 16-bit)
+     */
+    public static int encode(int opcode, int registerA, int registerB, int immediate) {
+        return opcode | (registerA << 8) | (registerB << 12) | (immediate << 16);
+    }
+
+    public static int opcode(int instruction) {
+        return instruction & 0xFF;
+    }
+
+    public static int registerA(int instruction) {
+        return (instruction >> 8) & 0xF;
+    }
+
+    public static int registerB(int instruction) {
+        return (instruction >> 12) & 0xF;
+    }
+
+    public static short immediate(int instruction) {
+        return (short) (instruction >> 16);
+    }
+
+    /**
+     * this method writes a decoded instruction as assembly code ("add r1, r2", "li r3, 42", "ld r0, (r4)")
+     * @param instruction decoded instruction word
+     * @return the instruction as text, "skip", "legacy" (text instruction), or "invalid 0x...." (not an instruction)
+     */
+    public static String toText(int instruction) {
+        int opcode = opcode(instruction);
+        int a = registerA(instruction);
+        int b = registerB(instruction);
+        if (opcode == OP_LI) return "li r" + a + ", " + immediate(instruction);
+        if (opcode == OP_LD || opcode == OP_ST) return MNEMONICS[opcode] + " r" + a + ", (r" + b + ")";
+        if (opcode >= OP_JP && opcode <= OP_JPNO) return MNEMONICS[opcode] + " r" + a;
+        if (opcode >= OP_NOP && opcode <= OP_NEG) return MNEMONICS[opcode] + " r" + a + ", r" + b;
+        if (opcode == OP_INVALID) return "invalid 0x" + Integer.toHexString(immediate(instruction) & 0xFFFF);
+        if (opcode < MNEMONICS.length) return MNEMONICS[opcode];
+        return "unknown opcode " + opcode;
+    }
+
+    /**
+     * this method decodes a 16-bit Moncky-2 instruction word (as written by Moncky2Compiler) into a decoded instruction
+     * - 0000 ---- ---- ----   halt
+     * - 0001 iiii iiii rrrr   li r, i
+     * - 0100 oooo aaaa bbbb   ALU operation o (nop, or, and, xor, add, sub, shl, shr, ashr, not, neg)
+     * - 1000 ---- aaaa bbbb   ld a, (b)
+     * - 1010 ---- aaaa bbbb   st a, (b)
+     * - 1100 ---- ---- rrrr   jp r
+     * - 1111 ---- -fff rrrr   conditional jump on flag f (c, nc, z, nz, s, ns, o, no)
+     * @param word instruction word (0-65535)
+     * @return decoded instruction word
+     */
+    public static int decodeWord(int word) {
+        int a = (word >> 4) & 0xF;
+        int b = word & 0xF;
+        switch (word >> 12) {
+            case 0x0:
+                return OP_HALT;
+            case 0x1:
+                return encode(OP_LI, b, 0, (word >> 4) & 0xFF);
+            case 0x4: {
+                int operation = (word >> 8) & 0xF;
+                if (operation > OP_NEG - OP_NOP) return encode(OP_INVALID, 0, 0, word);
+                return encode(OP_NOP + operation, a, b, 0);
+            }
+            case 0x8:
+                return encode(OP_LD, a, b, 0);
+            case 0xA:
+                return encode(OP_ST, a, b, 0);
+            case 0xC:
+                return encode(OP_JP, b, 0, 0);
+            case 0xF:
+                return encode(OP_JPC + ((word >> 4) & 0x7), b, 0, 0);
+            default:
+                return encode(OP_INVALID, 0, 0, word);
+        }
+    }
+
+    /**
+     * this method decodes every command once, so the interpreter does not have to parse text while running
+     * @param commands list of instructions without blank lines, comments, or labels
+     * @param symbolTable labels of the program, used to resolve label values
+     * @return one decoded instruction word for every command
+     */
+    public static int[] decode(String[] commands, SymbolTable symbolTable) {
+        int[] program = new int[commands.length];
+        Moncky2Lexer lexer = new Moncky2Lexer();
+        for (int i = 0; i < commands.length; i++) {
+            program[i] = decodeCommand(lexer, commands[i], symbolTable);
+        }
+        return program;
+    }
+
+    /**
+     * this method decodes a single command the same way executeCommand reads it
+     * anything executeCommand would fail on is decoded as OP_LEGACY, so the error is still thrown when (and only when) it runs
+     * a missing label is not left for later: its RuntimeException is thrown right away
+     * @param command command/instruction as text
+     * @param symbolTable labels of the program, used to resolve label values
+     * @return decoded instruction word
+     */
+    public static int decodeCommand(String command, SymbolTable symbolTable) {
+        return decodeCommand(new Moncky2Lexer(), command, symbolTable);
+    }
+
+    /**
+     * this method decodes a single command with a lexer that is reused for every command (see decodeCommand)
+     * @param lexer the shared lexer, it holds the tokens of the command afterwards
+     * @param command command/instruction as text
+     * @param symbolTable labels of the program, used to resolve label values
+     * @return decoded instruction word
+     */
+    public static int decodeCommand(Moncky2Lexer lexer, CharSequence command, SymbolTable symbolTable) {
+        try {
+            return decodeTokens(lexer, command, symbolTable);
+        } catch (IllegalArgumentException e) {
+            return OP_LEGACY;
+        }
+    }
+
+    private static int decodeTokens(Moncky2Lexer lexer, CharSequence command, SymbolTable symbolTable) {
+        if (lexer.lex(command) == 0) return OP_LEGACY;
+        if (lexer.isIgnoreCase(0, "halt")) return OP_HALT;
+
+        if (lexer.is(0, "li")) {
+            int registerNumber = register(lexer, 1, Moncky2Lexer.REGISTER);
+            int immediateValue;
+            if (lexer.kind(2) == Moncky2Lexer.LABEL) {
+                immediateValue = symbolTable.getValue(lexer.text(2));
+            } else if (lexer.kind(2) == Moncky2Lexer.IMMEDIATE) {
+                immediateValue = lexer.value(2);
+                //decimal values are read as a short, 0x/0b/0o values are cut to 16 bits
+                if (lexer.isDecimal(2) && (immediateValue < Short.MIN_VALUE || immediateValue > 255)) return OP_LEGACY;
+                immediateValue = (short) immediateValue;
+            } else {
+                return OP_LEGACY;
+            }
+            return encode(OP_LI, registerNumber, 0, immediateValue);
+        }
+        if (lexer.is(0, "ld") || lexer.is(0, "st")) {
+            int firstRegisterNumber = register(lexer, 1, Moncky2Lexer.REGISTER);
+            int secondRegisterNumber = register(lexer, 2, Moncky2Lexer.MEMORY_REGISTER);
+            int opcode = lexer.is(0, "ld") ? OP_LD : OP_ST;
+            return encode(opcode, firstRegisterNumber, secondRegisterNumber, 0);
+        }
+        if (lexer.startsWith(0, "jp")) {
+            int registerNumber = register(lexer, 1, Moncky2Lexer.REGISTER);
+            for (int opcode = OP_JP; opcode <= OP_JPNO; opcode++) {
+                if (lexer.is(0, MNEMONICS[opcode])) return encode(opcode, registerNumber, 0, 0);
+            }
+            return OP_LEGACY;
+        }
+        if (lexer.getCount() > 1 && lexer.kind(0) != Moncky2Lexer.COMMENT && !lexer.startsWith(0, "li")) {
+            int firstRegisterNumber = register(lexer, 1, Moncky2Lexer.REGISTER);
+            int secondRegisterNumber = register(lexer, 2, Moncky2Lexer.REGISTER);
+
+            int opcode = aluOpcode(lexer);
+            //unknown ALU operations read their registers and do nothing else
+            if (opcode == OP_SKIP) return OP_SKIP;
+            return encode(opcode, firstRegisterNumber, secondRegisterNumber, 0);
+        }
+        return OP_SKIP;
+    }
+
+    private static int aluOpcode(Moncky2Lexer lexer) {
+        //ALU mnemonics are not case-sensitive
+        for (int opcode = OP_NOP; opcode <= OP_NEG; opcode++) {
+            if (lexer.isIgnoreCase(0, MNEMONICS[opcode])) return opcode;
+        }
+        return OP_SKIP;
+    }
+
+    //register number of a token, anything that is not a register of the expected kind is left to the legacy path
+    private static int register(Moncky2Lexer lexer, int token, int kind) {
+        if (lexer.kind(token) != kind) throw new IllegalArgumentException("no register at token " + token);
+        return checkRegister(lexer.value(token));
+    }
+
+    //register numbers outside 0-15 make executeCommand fail, so they are left to the legacy path
+    private static int checkRegister(int registerNumber) {
+        if (registerNumber < 0 || registerNumber > 15) throw new IllegalArgumentException("no register with number " + registerNumber);
+        return registerNumber;
+    }
+}
@@ -1,23 +1,20 @@
-import java.util.ArrayList;
-
 public class CommandReader {
     public static String[] getCommandParts(String command){
-        command = command.trim();
+        return getCommandParts(new Moncky2Lexer(), command);
+    }
 
-        //split each instruction into words/parts
-        String[] codeLineParts = command.split(" ");
-        ArrayList<String> code = new ArrayList<>();
-        for (String codeLinePart : codeLineParts) {
-            if (!codeLinePart.isEmpty()) {
-                code.add(codeLinePart);
-            }
-        }
-        codeLineParts = new String[code.size()];
+    /**
+     * this method splits an instruction into words/parts with the shared lexer ("li r1, 5 ;x" -> "li", "r1,", "5", ";x")
+     * a register followed by a comma keeps its comma, a comment is one part
+     * @param lexer lexer that is reused for every line
+     * @param command command/instruction as text
+     * @return the parts of the command
+     */
+    public static String[] getCommandParts(Moncky2Lexer lexer, String command){
+        String[] codeLineParts = new String[lexer.lex(command)];
         for (int i = 0; i < codeLineParts.length; i++){
-            codeLineParts[i] = code.get(i);
+            codeLineParts[i] = lexer.hasComma(i) ? lexer.text(i) + "," : lexer.text(i);
         }
-
         return codeLineParts;
-
     }
 }
@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class HexImage {
+
+    //first line of a memory image in Digital's "v2.0 raw" format
+    public static final String HEADER = "v2.0 raw";
+
+    /**
+     * this method reads a memory image file in Digital's "v2.0 raw" format (as written by Moncky2Compiler)
+     * @param path location of the .hex file
+     * @return the 16-bit words of the image, starting at address 0
+     * @throws IOException when the file can't be read
+     */
+    public static short[] read(Path path) throws IOException {
+        return parse(Files.readString(path));
+    }
+
+    /**
+     * this method parses the text of a "v2.0 raw" memory image
+     * words are hexadecimal numbers separated by whitespace. "N*value" stands for N (at least 1) copies of value
+     * lines starting with '#' are comments
+     * @param hexContent text of the image, starting with the "v2.0 raw" header
+     * @return the 16-bit words of the image, starting at address 0
+     */
+    public static short[] parse(String hexContent) {
+        String[] lines = hexContent.split("\n");
+        if (lines.length == 0 || !lines[0].strip().equals(HEADER)) {
+            throw new RuntimeException("memory image does not start with \"" + HEADER + "\"");
+        }
+        short[] words = new short[65536];
+        int address = 0;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].strip();
+            if (line.startsWith("#")) continue;
+            //words are only separated by whitespace, ',' and ';' mean nothing in an image (they make a word invalid)
+            for (String word : line.split("\\s+")) {
+                if (word.isEmpty()) continue;
+                int count = 1;
+                int value;
+                try {
+                    int star = word.indexOf('*');
+                    count = star >= 0 ? Integer.parseInt(word.substring(0, star)) : 1;
+                    value = NumberConverter.hexStringToDecimal(word.substring(star + 1));
+                } catch (NumberFormatException e) {
+                    value = -1;
+                }
+                if (count < 1 || value < 0 || value > 0xFFFF || count > words.length - address) {
+                    throw new RuntimeException("invalid word \"" + word + "\" at line " + (i + 1) + " of memory image");
+                }
+                for (int j = 0; j < count; j++) {
+                    words[address++] = (short) value;
+                }
+            }
+        }
+        short[] image = new short[address];
+        System.arraycopy(words, 0, image, 0, address);
+        return image;
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntConsumer;
+
+/*
+Recorder that streams every executed instruction word to a file in Digital's "v2.0 raw" format (8 words per line).
+Nothing is kept in memory besides the write buffer.
+ */
+public class HexStreamRecorder implements IntConsumer, Closeable {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private final BufferedWriter writer;
+    private int wordsOnLine = 0;
+
+    /**
+     * @param path file the instruction words are written to. An existing file is replaced
+     * @throws IOException when the file can't be created
+     */
+    public HexStreamRecorder(Path path) throws IOException {
+        writer = Files.newBufferedWriter(path);
+        writer.write(HexImage.HEADER + "\n");
+    }
+
+    @Override
+    public void accept(int word) {
+        try {
+            //4 hexadecimal digits, written one by one so no String is created for every word
+            writer.write(HEX_DIGITS[(word >> 12) & 0xF]);
+            writer.write(HEX_DIGITS[(word >> 8) & 0xF]);
+            writer.write(HEX_DIGITS[(word >> 4) & 0xF]);
+            writer.write(HEX_DIGITS[word & 0xF]);
+            writer.write(' ');
+            wordsOnLine++;
+            if (wordsOnLine == 8) {
+                writer.write('\n');
+                wordsOnLine = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,440 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+Assembler for programs that are assembled again after every edit (see Moncky2Assembler for the encoding).
+It keeps the code of the last assemble call with what it found for every line: where the line starts, its kind,
+its address, the label it loads, and its error. The next call compares the new code with the old one:
+- the common start and end of the two texts are found, and widened to whole lines
+- only the lines in between are read and encoded, the words and errors of the other lines are reused
+  (the lines after the edit move to their new line numbers and addresses)
+- the labels are read again only when a label line changed, otherwise the labels after the edit move with their lines
+- "li rX, :label" lines outside the edit are encoded again when their label got another value
+So a one-line edit costs a few comparisons of the whole text and arrays (no split, no hashing of every line).
+writeImage compares the new image with the one it wrote last time and only rewrites the bytes that changed.
+ */
+public class IncrementalAssembler {
+
+    //image written by writeImage: the words, the bytes (only kept for RAW and INTEL_HEX), and the file after the write
+    private static class WrittenImage {
+        final MemoryImageWriter.Format format;
+        final short[] words;
+        final byte[] bytes;
+        final long size;
+        final FileTime modified;
+
+        WrittenImage(MemoryImageWriter.Format format, short[] words, byte[] bytes, long size, FileTime modified) {
+            this.format = format;
+            this.words = words;
+            this.bytes = bytes;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    //kind of a line (Moncky2Lexer.firstKind): instructions are the MNEMONIC lines
+    private static final byte INSTRUCTION = Moncky2Lexer.MNEMONIC;
+    private static final byte LABEL = Moncky2Lexer.LABEL;
+    //label value of a label that is not defined
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    //image files written by writeImage -> the last write
+    private final HashMap<Path, WrittenImage> writtenImages = new HashMap<>();
+    private final ArrayList<String> errors = new ArrayList<>();
+    private final Moncky2Lexer lexer = new Moncky2Lexer();
+    private SymbolTable symbolTable;
+    private short[] words = new short[0];
+    //words of the assemble call before the last one, writeImage uses them to find the words it has to write
+    private short[] previousWords;
+    private int encodedLines = 0;
+    private int reusedLines = 0;
+    private int firstChangedWord = -1;
+    private int lastChangedWord = -1;
+
+    //code of the last assemble call, lines are separated by '\n' (a code that ends with '\n' has an empty last line)
+    //null when nothing is kept (before the first call and after clearCache)
+    private String code = null;
+    private int lineCount;
+    //per line (index 0 is line 1), only the first lineCount entries are used
+    //offset of the first character in code
+    private int[] lineStarts = new int[16];
+    //kind of the first token (Moncky2Lexer.firstKind)
+    private byte[] lineKinds = new byte[16];
+    //number of instructions before the line, the address of the line when it is an instruction
+    private int[] lineAddresses = new int[16];
+    //label loaded by "li rX, :label", or null
+    private String[] lineLabels = new String[16];
+    //error of the instruction, or null
+    private String[] lineErrors = new String[16];
+    private int errorCount;
+
+    /**
+     * this method assembles the code, reusing the encoding of lines that did not change since the last call
+     * lines that can't be encoded are collected in getErrors (the word 0x0000 takes their place), like Moncky2Assembler
+     * @param moncky2Code raw code with labels, comments, and empty lines
+     * @return the instruction words, word i is instruction i of the program
+     */
+    public short[] assemble(String moncky2Code) {
+        previousWords = words;
+        encodedLines = 0;
+        firstChangedWord = -1;
+        lastChangedWord = -1;
+        if (moncky2Code.equals(code)) {
+            reusedLines = words.length;
+            return words;
+        }
+        if (code == null) {
+            //start from an empty program: one empty line and no words
+            code = "";
+            lineCount = 1;
+            lineStarts[0] = 0;
+            lineKinds[0] = Moncky2Lexer.NONE;
+            lineAddresses[0] = 0;
+            lineLabels[0] = null;
+            lineErrors[0] = null;
+            errorCount = 0;
+            symbolTable = new SymbolTable(new String[0]);
+            words = new short[0];
+        }
+
+        //common start, widened to the start of its line
+        int oldLength = code.length();
+        int newLength = moncky2Code.length();
+        int common = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < common && code.charAt(prefix) == moncky2Code.charAt(prefix)) prefix++;
+        int firstLine = lineAt(prefix);
+        int start = lineStarts[firstLine];
+        //common end, widened to the first line after it that starts after a common '\n'
+        int suffix = 0;
+        while (suffix < common - start && code.charAt(oldLength - 1 - suffix) == moncky2Code.charAt(newLength - 1 - suffix)) suffix++;
+        int shift = newLength - oldLength;
+        int oldEnd = oldLength - suffix;
+        int endLine = lineAt(oldEnd);
+        if (lineStarts[endLine] < oldEnd) endLine++;
+        if (endLine < lineCount && lineStarts[endLine] == oldEnd && oldEnd + shift > start
+                && moncky2Code.charAt(oldEnd + shift - 1) != '\n') {
+            endLine++;
+        }
+        //lines firstLine to endLine (exclusive) of the old code are replaced by the lines of the changed part
+        int changedEnd = endLine < lineCount ? lineStarts[endLine] + shift : newLength + 1;
+        String[] changedLines = changedEnd == start ? new String[0] : lines(moncky2Code, start, changedEnd - 1);
+
+        //what the replaced lines had
+        boolean labelsChanged = false;
+        int firstAddress = lineAddresses[firstLine];
+        int oldInstructions = 0;
+        for (int i = firstLine; i < endLine; i++) {
+            if (lineKinds[i] == INSTRUCTION) oldInstructions++;
+            if (lineKinds[i] == LABEL) labelsChanged = true;
+            if (lineErrors[i] != null) errorCount--;
+        }
+        int newInstructions = 0;
+        byte[] changedKinds = new byte[changedLines.length];
+        for (int i = 0; i < changedLines.length; i++) {
+            changedKinds[i] = (byte) Moncky2Lexer.firstKind(changedLines[i]);
+            if (changedKinds[i] == INSTRUCTION) newInstructions++;
+            if (changedKinds[i] == LABEL) labelsChanged = true;
+        }
+        int lineShift = changedLines.length - (endLine - firstLine);
+        int addressShift = newInstructions - oldInstructions;
+
+        //move the lines after the change to their new place
+        int oldLineCount = lineCount;
+        lineCount += lineShift;
+        ensureCapacity(lineCount);
+        int movedLines = oldLineCount - endLine;
+        int newEndLine = endLine + lineShift;
+        System.arraycopy(lineStarts, endLine, lineStarts, newEndLine, movedLines);
+        System.arraycopy(lineKinds, endLine, lineKinds, newEndLine, movedLines);
+        System.arraycopy(lineAddresses, endLine, lineAddresses, newEndLine, movedLines);
+        System.arraycopy(lineLabels, endLine, lineLabels, newEndLine, movedLines);
+        System.arraycopy(lineErrors, endLine, lineErrors, newEndLine, movedLines);
+        for (int i = newEndLine; i < lineCount; i++) {
+            lineStarts[i] += shift;
+            lineAddresses[i] += addressShift;
+        }
+        if (lineCount < oldLineCount) {
+            //forget the labels and errors of the lines that are not used anymore
+            Arrays.fill(lineLabels, lineCount, oldLineCount, null);
+            Arrays.fill(lineErrors, lineCount, oldLineCount, null);
+        }
+
+        //words before and after the change stay the same
+        short[] assembled = new short[words.length + addressShift];
+        System.arraycopy(words, 0, assembled, 0, firstAddress);
+        System.arraycopy(words, firstAddress + oldInstructions, assembled, firstAddress + newInstructions,
+                words.length - firstAddress - oldInstructions);
+        code = moncky2Code;
+        words = assembled;
+
+        //labels: read again when a label line changed, otherwise the labels after the change move
+        SymbolTable previousTable = symbolTable;
+        if (labelsChanged) {
+            //the changed lines are the whole program after the first call, empty lines at the end have no labels
+            symbolTable = new SymbolTable(changedLines.length == lineCount ? changedLines : moncky2Code.split("\n"));
+        } else if (lineShift != 0 || addressShift != 0) {
+            symbolTable = symbolTable.moved(endLine + 1, lineShift, addressShift);
+        }
+
+        //pass two for the changed lines
+        int position = start;
+        int address = firstAddress;
+        for (int i = 0; i < changedLines.length; i++) {
+            int line = firstLine + i;
+            lineStarts[line] = position;
+            lineKinds[line] = changedKinds[i];
+            lineAddresses[line] = address;
+            lineLabels[line] = null;
+            lineErrors[line] = null;
+            position += changedLines[i].length() + 1;
+            if (changedKinds[i] != INSTRUCTION) continue;
+            String text = changedLines[i].strip();
+            lineLabels[line] = labelOf(text);
+            encode(line, text);
+            changed(address);
+            address++;
+        }
+
+        //lines outside the change that load a label with another value
+        if (symbolTable != previousTable) {
+            for (int line = 0; line < lineCount; line++) {
+                if (lineLabels[line] == null || (line >= firstLine && line < newEndLine)) continue;
+                String label = lineLabels[line];
+                if (valueOf(previousTable, label) == valueOf(symbolTable, label)) continue;
+                encode(line, lineText(line).strip());
+                changed(lineAddresses[line]);
+            }
+        }
+        reusedLines = words.length - encodedLines;
+
+        //the words after the change moved when instructions were added or removed
+        //(after clearCache the old words are compared from the start)
+        if (addressShift != 0 || words.length != previousWords.length) {
+            int commonWords = Math.min(words.length, previousWords.length);
+            int mismatch = Arrays.mismatch(words, firstAddress, commonWords, previousWords, firstAddress, commonWords);
+            if (mismatch >= 0) changed(firstAddress + mismatch);
+            if (words.length != previousWords.length) {
+                changed(commonWords);
+                changed(Math.max(words.length, previousWords.length) - 1);
+            } else {
+                int last = commonWords - 1;
+                while (last >= firstAddress && words[last] == previousWords[last]) last--;
+                if (last >= firstAddress) changed(last);
+            }
+        }
+
+        errors.clear();
+        for (int line = 0; errorCount > 0 && line < lineCount; line++) {
+            if (lineErrors[line] != null) errors.add("line " + (line + 1) + ": " + lineErrors[line]);
+        }
+        return words;
+    }
+
+    //the lines between two offsets of the code, without copying the code in between
+    private static String[] lines(String code, int start, int end) {
+        ArrayList<String> lines = new ArrayList<>();
+        int lineStart = start;
+        int lineEnd;
+        while ((lineEnd = code.indexOf('\n', lineStart)) >= 0 && lineEnd < end) {
+            lines.add(code.substring(lineStart, lineEnd));
+            lineStart = lineEnd + 1;
+        }
+        lines.add(code.substring(lineStart, end));
+        return lines.toArray(new String[0]);
+    }
+
+    //index of the last line that starts at or before the offset
+    private int lineAt(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    //text of a line of the code, without its '\n'
+    private String lineText(int line) {
+        int end = line + 1 < lineCount ? lineStarts[line + 1] - 1 : code.length();
+        return code.substring(lineStarts[line], end);
+    }
+
+    //encodes an instruction line into its word (at the address of the line), or keeps its error
+    private void encode(int line, String text) {
+        encodedLines++;
+        if (lineErrors[line] != null) errorCount--;
+        try {
+            words[lineAddresses[line]] = (short) Moncky2Assembler.encodeInstruction(lexer, text, symbolTable);
+            lineErrors[line] = null;
+        } catch (RuntimeException e) {
+            words[lineAddresses[line]] = 0;
+            lineErrors[line] = e.getMessage();
+            errorCount++;
+        }
+    }
+
+    //widens the range of changed words when the word at the address is different from the previous call
+    private void changed(int address) {
+        if (address < words.length && address < previousWords.length && words[address] == previousWords[address]) return;
+        if (firstChangedWord < 0 || address < firstChangedWord) firstChangedWord = address;
+        if (address > lastChangedWord) lastChangedWord = address;
+    }
+
+    //value of a label, or MISSING
+    private static int valueOf(SymbolTable table, String label) {
+        return table.contains(label) ? table.getValue(label) : MISSING;
+    }
+
+    //the label loaded by "li rX, :label", the same test SymbolTable.findMissingLabels uses
+    private String labelOf(String line) {
+        if (line.indexOf(':') < 0) return null;
+        lexer.lex(line);
+        if (lexer.is(0, "li") && lexer.kind(2) == Moncky2Lexer.LABEL) return lexer.text(2);
+        return null;
+    }
+
+    private void ensureCapacity(int lines) {
+        if (lines <= lineStarts.length) return;
+        int length = Math.max(lines, lineStarts.length * 2);
+        lineStarts = Arrays.copyOf(lineStarts, length);
+        lineKinds = Arrays.copyOf(lineKinds, length);
+        lineAddresses = Arrays.copyOf(lineAddresses, length);
+        lineLabels = Arrays.copyOf(lineLabels, length);
+        lineErrors = Arrays.copyOf(lineErrors, length);
+    }
+
+    /**
+     * this method writes the words of the last assemble call as a memory image (see MemoryImageWriter)
+     * when this assembler wrote the same file before and the file was not changed since (same size and modification
+     * time), only the bytes that changed are written (and the file is cut when the new image is shorter):
+     * - binary images only encode the words that changed since the previous assemble call (2 bytes per word)
+     * - RAW and INTEL_HEX images are encoded again and compared with the last write, because a word does not have a
+     *   fixed place in them (runs of equal words, records that are left out)
+     * @param path location of the image file
+     * @param format format of the file
+     * @return number of bytes written
+     * @throws IOException when the file can't be written
+     */
+    public int writeImage(Path path, MemoryImageWriter.Format format) throws IOException {
+        boolean binary = format == MemoryImageWriter.Format.BINARY_LITTLE_ENDIAN || format == MemoryImageWriter.Format.BINARY_BIG_ENDIAN;
+        //forget the file until it is written completely, a failed write makes the next call write everything
+        WrittenImage written = writtenImages.remove(path);
+        if (written == null || written.format != format || !Files.exists(path) || Files.size(path) != written.size
+                || !Files.getLastModifiedTime(path).equals(written.modified)) {
+            byte[] image = encode(words, format);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel, image, 0, image.length, 0);
+            }
+            remember(path, format, binary ? null : image, image.length);
+            return image.length;
+        }
+        if (written.words == words) {
+            writtenImages.put(path, written);
+            return 0;
+        }
+        if (binary) {
+            //the words that are different from the written ones, 2 bytes each at the same place in the file
+            int first = 0;
+            int last = words.length - 1;
+            if (written.words == previousWords) {
+                first = firstChangedWord < 0 ? words.length : firstChangedWord;
+                last = lastChangedWord;
+            }
+            int end = Math.min(last + 1, words.length);
+            byte[] changed = first < end ? encode(Arrays.copyOfRange(words, first, end), format) : new byte[0];
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                write(channel, changed, 0, changed.length, first * 2L);
+                if (words.length < written.words.length) channel.truncate(words.length * 2L);
+            }
+            remember(path, format, null, words.length * 2L);
+            return changed.length;
+        }
+        byte[] image = encode(words, format);
+        byte[] previous = written.bytes;
+        int first = 0;
+        int common = Math.min(image.length, previous.length);
+        while (first < common && image[first] == previous[first]) first++;
+        int end = image.length;
+        if (image.length == previous.length) {
+            while (end > first && image[end - 1] == previous[end - 1]) end--;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            write(channel, image, first, end, first);
+            if (image.length < previous.length) channel.truncate(image.length);
+        }
+        remember(path, format, image, image.length);
+        return end - first;
+    }
+
+    private static byte[] encode(short[] words, MemoryImageWriter.Format format) {
+        ByteBuffer encoded = MemoryImageWriter.encode(words, format);
+        byte[] image = new byte[encoded.remaining()];
+        encoded.get(image);
+        return image;
+    }
+
+    private void remember(Path path, MemoryImageWriter.Format format, byte[] image, long size) throws IOException {
+        writtenImages.put(path, new WrittenImage(format, words, image, size, Files.getLastModifiedTime(path)));
+    }
+
+    //writes bytes start to end (exclusive) of the array at the given position in the file
+    private static void write(FileChannel channel, byte[] image, int start, int end, long position) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(image, start, end - start);
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    //getter for the problems found by the last assemble call, as "line N: message"
+    public ArrayList<String> getErrors() {
+        return errors;
+    }
+
+    //getter for the words of the last assemble call
+    public short[] getWords() {
+        return words;
+    }
+
+    //getter for the labels of the last assemble call
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    //getter for the number of lines the last assemble call had to encode
+    public int getEncodedLines() {
+        return encodedLines;
+    }
+
+    //getter for the number of instructions the last assemble call took from the previous call
+    public int getReusedLines() {
+        return reusedLines;
+    }
+
+    //getter for the first word that is different from the previous assemble call (-1 if nothing changed)
+    public int getFirstChangedWord() {
+        return firstChangedWord;
+    }
+
+    //getter for the last word that is different from the previous assemble call (-1 if nothing changed)
+    public int getLastChangedWord() {
+        return lastChangedWord;
+    }
+
+    //forgets the last program, the next assemble call encodes everything again (and still compares with the last words)
+    public void clearCache() {
+        code = null;
+        lineCount = 0;
+        Arrays.fill(lineLabels, null);
+        Arrays.fill(lineErrors, null);
+    }
+
+    //getter for the number of lines the assembler keeps from the last call
+    public int getCacheSize() {
+        return lineCount;
+    }
+}
@@ -0,0 +1,48 @@
+public class InstructionEncoder {
+
+    /**
+     * this method encodes a decoded instruction (see CommandDecoder) into the 16-bit Moncky-2 instruction word
+     * it is the reverse of CommandDecoder.decodeWord, li instructions keep the lowest 8 bits of their value
+     * @param instruction decoded instruction word
+     * @return 16-bit instruction word (0-65535), or -1 for instructions that have no encoding (OP_SKIP, OP_LEGACY)
+     */
+    public static int encode(int instruction) {
+        int opcode = instruction & 0xFF;
+        int a = (instruction >> 8) & 0xF;
+        int b = (instruction >> 12) & 0xF;
+        switch (opcode) {
+            case CommandDecoder.OP_HALT:
+                return 0x0000;
+            case CommandDecoder.OP_LI:
+                return 0x1000 | (((instruction >> 16) & 0xFF) << 4) | a;
+            case CommandDecoder.OP_LD:
+                return 0x8000 | (a << 4) | b;
+            case CommandDecoder.OP_ST:
+                return 0xA000 | (a << 4) | b;
+            case CommandDecoder.OP_JP:
+                return 0xC000 | a;
+            case CommandDecoder.OP_SKIP:
+            case CommandDecoder.OP_LEGACY:
+                return -1;
+            case CommandDecoder.OP_INVALID:
+                //invalid words keep the word they were decoded from
+                return (instruction >> 16) & 0xFFFF;
+            default:
+                if (opcode <= CommandDecoder.OP_JPNO) {
+                    //conditional jumps: flag number in bits 4-6
+                    return 0xF000 | ((opcode - CommandDecoder.OP_JPC) << 4) | a;
+                }
+                //ALU operations: operation number in bits 8-11
+                return 0x4000 | ((opcode - CommandDecoder.OP_NOP) << 8) | (a << 4) | b;
+        }
+    }
+
+    /**
+     * @param word 16-bit instruction word
+     * @return the word as 4 hexadecimal digits, like they are written in a .hex file
+     */
+    public static String toHexString(int word) {
+        String hexWord = Integer.toString(word & 0xFFFF, 16);
+        return ("0000" + hexWord).substring(hexWord.length());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+One problem found by the linter: where it is (line and column, both starting at 1), how bad it is, what kind of
+problem it is, and a message. Some messages have a hint after them ("No register with number 16"), the colored
+output shows it in red, or in green when it is advice ("Use 'jp' instead ...").
+LintReporter turns a list of diagnostics into text, JSON, or SARIF.
+ */
+public class LintDiagnostic {
+
+    public enum Severity {
+        ERROR, WARNING
+    }
+
+    //kinds of problems, the label is shown between brackets in the text output
+    public enum Code {
+        SYNTAX("SYNTAX", Severity.ERROR, "invalid syntax of an argument"),
+        VALUE("VALUE", Severity.ERROR, "number or register out of range"),
+        ARGUMENT("ARGUMENT", Severity.ERROR, "missing or unknown argument"),
+        UNKNOWN_INSTRUCTION("UNKNOWN INSTRUCTION", Severity.ERROR, "instruction that does not exist"),
+        MISSING_LABEL("MISSING LABEL", Severity.ERROR, "label that is loaded but never defined"),
+        DUPLICATE_LABEL("DUPLICATE LABEL", Severity.WARNING, "label that is defined more than once"),
+        PRACTICE("WARNING", Severity.WARNING, "instruction that works but probably does not do what was meant");
+
+        private final String label;
+        private final Severity severity;
+        private final String description;
+
+        Code(String label, Severity severity, String description) {
+            this.label = label;
+            this.severity = severity;
+            this.description = description;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Severity getSeverity() {
+            return severity;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final int line;
+    private final int column;
+    private final Code code;
+    private final String message;
+    //text after the message, or null
+    private final String hint;
+    //true when the hint is advice (green) instead of the reason of the problem (red)
+    private final boolean advice;
+
+    /**
+     * constructor
+     * @param line line number (starting at 1)
+     * @param column column of the part of the line the problem is about (starting at 1)
+     * @param code kind of problem, it decides the severity
+     * @param message what is wrong
+     * @param hint text after the message, or null
+     * @param advice true when the hint tells how to fix the problem
+     */
+    public LintDiagnostic(int line, int column, Code code, String message, String hint, boolean advice) {
+        this.line = line;
+        this.column = column;
+        this.code = code;
+        this.message = message;
+        this.hint = hint;
+        this.advice = advice;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public Code getCode() {
+        return code;
+    }
+
+    public Severity getSeverity() {
+        return code.getSeverity();
+    }
+
+    //getter for the message without the hint
+    public String getMessage() {
+        return message;
+    }
+
+    public String getHint() {
+        return hint;
+    }
+
+    public boolean isAdvice() {
+        return advice;
+    }
+
+    //message and hint as one text
+    public String getFullMessage() {
+        return hint == null ? message : message + " " + hint;
+    }
+
+    @Override
+    public String toString() {
+        return line + ":" + column + ": " + getSeverity().name().toLowerCase() + " [" + code.getLabel() + "] " + getFullMessage();
+    }
+}
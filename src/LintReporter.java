@@ -0,0 +1,172 @@
+import java.io.PrintStream;
+import java.util.List;
+
+/*
+Writes the diagnostics of the linter in one of these formats:
+- COLOR: "12: [VALUE] : message hint" with ANSI colors, the way the linter always printed its findings
+- TEXT: "12:5: error [VALUE] message hint" without colors, for files and editors that jump to line:column
+- JSON: {"file": ..., "errors": N, "warnings": N, "diagnostics": [{"line", "column", "severity", "code", "message"}, ...]}
+- SARIF: a SARIF 2.1.0 log with one run, for code scanning tools
+The whole report is built in memory and printed with one call, so a large file doesn't wait on the console
+for every finding.
+ */
+public class LintReporter {
+
+    public enum Format {
+        COLOR, TEXT, JSON, SARIF
+    }
+
+    /**
+     * this method finds the format for a name given on the command line
+     * @param name color, text, json, or sarif
+     * @return the format
+     */
+    public static Format parseFormat(String name) {
+        switch (name) {
+            case "color": return Format.COLOR;
+            case "text": return Format.TEXT;
+            case "json": return Format.JSON;
+            case "sarif": return Format.SARIF;
+            default: throw new RuntimeException("unknown report format \"" + name + "\" (color, text, json, sarif)");
+        }
+    }
+
+    /**
+     * this method prints a report
+     * @param out stream the report is printed to
+     * @param diagnostics problems in the order they are reported
+     * @param format format of the report
+     * @param file name of the checked file, used in JSON and SARIF
+     */
+    public static void write(PrintStream out, List<LintDiagnostic> diagnostics, Format format, String file) {
+        out.print(format(diagnostics, format, file));
+        out.flush();
+    }
+
+    /**
+     * this method builds a report
+     * @param diagnostics problems in the order they are reported
+     * @param format format of the report
+     * @param file name of the checked file, used in JSON and SARIF
+     * @return the report text
+     */
+    public static String format(List<LintDiagnostic> diagnostics, Format format, String file) {
+        StringBuilder report = new StringBuilder(diagnostics.size() * 128 + 256);
+        switch (format) {
+            case COLOR:
+            case TEXT:
+                for (LintDiagnostic diagnostic : diagnostics) {
+                    appendText(report, diagnostic, format == Format.COLOR);
+                }
+                break;
+            case JSON:
+                appendJson(report, diagnostics, file);
+                break;
+            case SARIF:
+                appendSarif(report, diagnostics, file);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown format " + format);
+        }
+        return report.toString();
+    }
+
+    private static void appendText(StringBuilder report, LintDiagnostic diagnostic, boolean color) {
+        if (!color) {
+            report.append(diagnostic).append('\n');
+            return;
+        }
+        String codeColor = diagnostic.getSeverity() == LintDiagnostic.Severity.ERROR ? Moncky2Linter.ANSI_RED : Moncky2Linter.ANSI_YELLOW;
+        report.append(diagnostic.getLine()).append(": [").append(codeColor).append(diagnostic.getCode().getLabel())
+                .append(Moncky2Linter.ANSI_RESET).append("] : ").append(diagnostic.getMessage());
+        if (diagnostic.getHint() != null) {
+            report.append(' ').append(diagnostic.isAdvice() ? Moncky2Linter.ANSI_GREEN : Moncky2Linter.ANSI_RED)
+                    .append(diagnostic.getHint()).append(Moncky2Linter.ANSI_RESET);
+        }
+        report.append('\n');
+    }
+
+    private static void appendJson(StringBuilder report, List<LintDiagnostic> diagnostics, String file) {
+        int errors = 0;
+        for (LintDiagnostic diagnostic : diagnostics) {
+            if (diagnostic.getSeverity() == LintDiagnostic.Severity.ERROR) errors++;
+        }
+        report.append("{\n  \"file\": \"").append(escape(file)).append("\",\n");
+        report.append("  \"errors\": ").append(errors).append(",\n");
+        report.append("  \"warnings\": ").append(diagnostics.size() - errors).append(",\n");
+        report.append("  \"diagnostics\": ");
+        appendJsonList(report, diagnostics, "  ");
+        report.append("\n}\n");
+    }
+
+    /**
+     * this method appends diagnostics as a JSON array of {"line", "column", "severity", "code", "message"} objects
+     * @param report builder the array is appended to
+     * @param diagnostics problems in the order they are reported
+     * @param indent indentation of the line the array starts on
+     */
+    public static void appendJsonList(StringBuilder report, List<LintDiagnostic> diagnostics, String indent) {
+        report.append('[');
+        String separator = "\n";
+        for (LintDiagnostic diagnostic : diagnostics) {
+            report.append(separator).append(indent).append("  {\"line\": ").append(diagnostic.getLine())
+                    .append(", \"column\": ").append(diagnostic.getColumn())
+                    .append(", \"severity\": \"").append(diagnostic.getSeverity().name().toLowerCase())
+                    .append("\", \"code\": \"").append(diagnostic.getCode().name())
+                    .append("\", \"message\": \"").append(escape(diagnostic.getFullMessage())).append("\"}");
+            separator = ",\n";
+        }
+        if (!diagnostics.isEmpty()) report.append('\n').append(indent);
+        report.append(']');
+    }
+
+    private static void appendSarif(StringBuilder report, List<LintDiagnostic> diagnostics, String file) {
+        report.append("{\n  \"$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\",\n");
+        report.append("  \"version\": \"2.1.0\",\n");
+        report.append("  \"runs\": [\n    {\n");
+        report.append("      \"tool\": {\n        \"driver\": {\n          \"name\": \"Moncky2Linter\",\n          \"rules\": [");
+        String separator = "\n";
+        for (LintDiagnostic.Code code : LintDiagnostic.Code.values()) {
+            report.append(separator).append("            {\"id\": \"").append(code.name())
+                    .append("\", \"name\": \"").append(escape(code.getLabel()))
+                    .append("\", \"shortDescription\": {\"text\": \"").append(escape(code.getDescription()))
+                    .append("\"}, \"defaultConfiguration\": {\"level\": \"").append(level(code.getSeverity())).append("\"}}");
+            separator = ",\n";
+        }
+        report.append("\n          ]\n        }\n      },\n");
+        report.append("      \"results\": [");
+        separator = "\n";
+        for (LintDiagnostic diagnostic : diagnostics) {
+            report.append(separator).append("        {\"ruleId\": \"").append(diagnostic.getCode().name())
+                    .append("\", \"ruleIndex\": ").append(diagnostic.getCode().ordinal())
+                    .append(", \"level\": \"").append(level(diagnostic.getSeverity()))
+                    .append("\", \"message\": {\"text\": \"").append(escape(diagnostic.getFullMessage()))
+                    .append("\"}, \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"").append(escape(file))
+                    .append("\"}, \"region\": {\"startLine\": ").append(diagnostic.getLine())
+                    .append(", \"startColumn\": ").append(diagnostic.getColumn()).append("}}}]}");
+            separator = ",\n";
+        }
+        report.append(diagnostics.isEmpty() ? "]\n" : "\n      ]\n");
+        report.append("    }\n  ]\n}\n");
+    }
+
+    private static String level(LintDiagnostic.Severity severity) {
+        return severity == LintDiagnostic.Severity.ERROR ? "error" : "warning";
+    }
+
+    /**
+     * this method escapes text for a JSON string (quotes, backslashes, and control characters)
+     * @param text text to escape
+     * @return the text without the surrounding quotes
+     */
+    public static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') escaped.append('\\').append(c);
+            else if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
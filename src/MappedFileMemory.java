@@ -0,0 +1,60 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+Memory backed by a memory-mapped RAM image file of 128 KiB (65536 little-endian 16-bit words, word n at byte 2n).
+A run starts with the words already in the file and every write goes straight to the mapped file,
+so the final RAM is on disk when the run ends without a separate save step.
+Other programs can map the same file to read the RAM without copying it.
+ */
+public class MappedFileMemory implements Moncky2Memory, Closeable {
+
+    //size of a RAM image file in bytes
+    public static final int IMAGE_BYTES = WORDS * 2;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * constructor: maps a RAM image file, a missing or shorter file is created or extended with zeros
+     * @param path location of the RAM image
+     * @throws IOException when the file can't be opened or mapped
+     */
+    public MappedFileMemory(Path path) throws IOException {
+        //the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, IMAGE_BYTES);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public short read(int address) {
+        return buffer.getShort(checkAddress(address) << 1);
+    }
+
+    @Override
+    public void write(int address, short value) {
+        buffer.putShort(checkAddress(address) << 1, value);
+    }
+
+    //same exception as the array memory
+    private static int checkAddress(int address) {
+        if (address < 0 || address >= WORDS) throw new ArrayIndexOutOfBoundsException("Index " + address + " out of bounds for length " + WORDS);
+        return address;
+    }
+
+    //this method writes all changed words to the storage device, the operating system also does this by itself later
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/*
+Compares the memory implementations: ArrayMemory (default), PagedMemory (copy-on-write pages, used by fork),
+and MappedFileMemory (RAM image file).
+- sequential: writes and reads every word in order
+- random: reads and writes random addresses
+- interpreter: runs a program that fills memory (moncky2in/demos/demoLoop, or the file given as argument)
+The RAM image of the mapped memory is a temporary file that is deleted afterwards.
+ */
+public class MemoryBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int PASSES = 50;
+
+    public static void main(String[] args) throws IOException {
+        String code = Files.readString(Path.of(args.length > 0 ? args[0] : "moncky2in/demos/demoLoop"));
+        Path imageFile = Files.createTempFile("moncky2ram", ".bin");
+        try (MappedFileMemory mapped = new MappedFileMemory(imageFile)) {
+            Moncky2Memory[] memories = {new ArrayMemory(), new PagedMemory(), mapped};
+            String[] names = {"array", "paged", "mapped file"};
+            int[] randomAddresses = new int[Moncky2Memory.WORDS];
+            Random random = new Random(42);
+            for (int i = 0; i < randomAddresses.length; i++) randomAddresses[i] = random.nextInt(Moncky2Memory.WORDS);
+
+            for (int round = 0; round < ROUNDS; round++) {
+                System.out.println("round " + round);
+                for (int m = 0; m < memories.length; m++) {
+                    Moncky2Memory memory = memories[m];
+                    long start = System.nanoTime();
+                    long check = sequential(memory);
+                    double sequentialTime = (System.nanoTime() - start) / (2.0 * PASSES * Moncky2Memory.WORDS);
+
+                    start = System.nanoTime();
+                    check += randomAccess(memory, randomAddresses);
+                    double randomTime = (System.nanoTime() - start) / (2.0 * PASSES * Moncky2Memory.WORDS);
+
+                    Moncky2Interpreter m2i = new Moncky2Interpreter();
+                    m2i.setMemory(memory);
+                    start = System.nanoTime();
+                    long instructions = 0;
+                    for (int i = 0; i < PASSES; i++) {
+                        m2i.interpretCode(code);
+                        instructions += m2i.getInstructionCount();
+                    }
+                    double instructionsPerSecond = instructions / ((System.nanoTime() - start) / 1e9);
+
+                    System.out.printf("  %-12s sequential %.2f ns/access, random %.2f ns/access, interpreter %.1f M instructions/s [%d]%n",
+                            names[m], sequentialTime, randomTime, instructionsPerSecond / 1e6, check);
+                }
+                //a program run from a paused state: a fork of a loaded interpreter against loading a new one
+                Moncky2Interpreter paused = new Moncky2Interpreter();
+                paused.loadCode(code);
+                paused.fork();
+                long start = System.nanoTime();
+                long instructions = 0;
+                for (int i = 0; i < PASSES; i++) {
+                    Moncky2Interpreter fork = paused.fork();
+                    fork.run(Long.MAX_VALUE);
+                    instructions += fork.getInstructionCount();
+                }
+                double forkTime = (System.nanoTime() - start) / (1e3 * PASSES);
+                start = System.nanoTime();
+                for (int i = 0; i < PASSES; i++) {
+                    Moncky2Interpreter fresh = new Moncky2Interpreter();
+                    fresh.interpretCode(code);
+                    instructions += fresh.getInstructionCount();
+                }
+                double freshTime = (System.nanoTime() - start) / (1e3 * PASSES);
+                System.out.printf("  %-12s fork and run %.1f us, new interpreter, load and run %.1f us [%d]%n", "fork", forkTime, freshTime, instructions);
+            }
+        } finally {
+            Files.deleteIfExists(imageFile);
+        }
+    }
+
+    //writes every word, then reads every word
+    private static long sequential(Moncky2Memory memory) {
+        long check = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int address = 0; address < Moncky2Memory.WORDS; address++) {
+                memory.write(address, (short) (address + pass));
+            }
+            for (int address = 0; address < Moncky2Memory.WORDS; address++) {
+                check += memory.read(address);
+            }
+        }
+        return check;
+    }
+
+    //reads a word at a random address and writes it back to the next random address
+    private static long randomAccess(Moncky2Memory memory, int[] addresses) {
+        long check = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int i = 0; i < addresses.length - 1; i++) {
+                short value = memory.read(addresses[i]);
+                memory.write(addresses[i + 1], (short) (value + 1));
+                check += value;
+            }
+        }
+        return check;
+    }
+}
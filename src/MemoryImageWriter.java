@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+Writes 16-bit words (a compiled program or a memory dump) as a memory image file.
+The whole file is encoded into one ByteBuffer and written with a FileChannel, without Writers or temporary Strings.
+
+Formats:
+- RAW: Digital's "v2.0 raw" text format (read by HexImage), 8 words per line. RUN_LENGTH or more equal words in a row
+  are written as "N*value", so long zero regions take a few bytes
+- INTEL_HEX: Intel HEX records of 16 bytes, words are stored little-endian (like MappedFileMemory).
+  Records that only contain zeros are left out, memory that is not in the file starts at 0
+- BINARY_LITTLE_ENDIAN, BINARY_BIG_ENDIAN: 2 bytes per word, nothing else
+ */
+public class MemoryImageWriter {
+
+    public enum Format {
+        RAW, INTEL_HEX, BINARY_LITTLE_ENDIAN, BINARY_BIG_ENDIAN
+    }
+
+    //equal words in a row that are written as one "N*value" item in RAW images
+    public static final int RUN_LENGTH = 4;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+    private static final byte[] HEX_DIGITS_UPPER_CASE = "0123456789ABCDEF".getBytes();
+    private static final int RAW_WORDS_PER_LINE = 8;
+    private static final int INTEL_RECORD_BYTES = 16;
+
+    /**
+     * this method writes words to a file, an existing file is replaced
+     * @param path location of the image file
+     * @param words 16-bit words, starting at address 0
+     * @param format format of the file
+     * @throws IOException when the file can't be written
+     */
+    public static void write(Path path, short[] words, Format format) throws IOException {
+        ByteBuffer image = encode(words, format);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        }
+    }
+
+    /**
+     * this method encodes words as the bytes of an image file
+     * @param words 16-bit words, starting at address 0
+     * @param format format of the file
+     * @return buffer with the file content between position and limit
+     */
+    public static ByteBuffer encode(short[] words, Format format) {
+        switch (format) {
+            case RAW:
+                return encodeRaw(words);
+            case INTEL_HEX:
+                return encodeIntelHex(words);
+            case BINARY_LITTLE_ENDIAN:
+            case BINARY_BIG_ENDIAN:
+                ByteBuffer image = ByteBuffer.allocate(words.length * 2);
+                image.order(format == Format.BINARY_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                image.asShortBuffer().put(words);
+                return image;
+            default:
+                throw new IllegalArgumentException("unknown format " + format);
+        }
+    }
+
+    /**
+     * this method finds the format for a name given on the command line
+     * @param name raw, intel, bin (little-endian), or bin-be (big-endian)
+     * @return the format
+     */
+    public static Format parseFormat(String name) {
+        switch (name) {
+            case "raw": return Format.RAW;
+            case "intel": return Format.INTEL_HEX;
+            case "bin": return Format.BINARY_LITTLE_ENDIAN;
+            case "bin-be": return Format.BINARY_BIG_ENDIAN;
+            default: throw new RuntimeException("unknown image format \"" + name + "\" (raw, intel, bin, bin-be)");
+        }
+    }
+
+    //usual file extension of a format
+    public static String getExtension(Format format) {
+        switch (format) {
+            case RAW: return ".hex";
+            case INTEL_HEX: return ".ihex";
+            default: return ".bin";
+        }
+    }
+
+    private static ByteBuffer encodeRaw(short[] words) {
+        //every item takes at most 5 bytes per word it stands for ("xxxx " or "N*x " for 4 or more words)
+        ByteBuffer image = ByteBuffer.allocate(HexImage.HEADER.length() + 1 + words.length * 5 + words.length / RAW_WORDS_PER_LINE + 1);
+        for (int i = 0; i < HexImage.HEADER.length(); i++) image.put((byte) HexImage.HEADER.charAt(i));
+        image.put((byte) '\n');
+        int items = 0;
+        int address = 0;
+        while (address < words.length) {
+            short word = words[address];
+            int end = address + 1;
+            while (end < words.length && words[end] == word) end++;
+            if (end - address >= RUN_LENGTH) {
+                putDecimal(image, end - address);
+                image.put((byte) '*');
+                putHexDigits(image, word & 0xFFFF);
+                address = end;
+            } else {
+                putHex(image, word & 0xFFFF, 4, HEX_DIGITS);
+                address++;
+            }
+            image.put((byte) ' ');
+            items++;
+            if (items == RAW_WORDS_PER_LINE) {
+                image.put((byte) '\n');
+                items = 0;
+            }
+        }
+        return image.flip();
+    }
+
+    private static ByteBuffer encodeIntelHex(short[] words) {
+        int bytes = words.length * 2;
+        int records = (bytes + INTEL_RECORD_BYTES - 1) / INTEL_RECORD_BYTES;
+        //data records are at most 44 bytes, address records 15, and the end of file record 12
+        ByteBuffer image = ByteBuffer.allocate(records * 44 + (bytes / 0x10000 + 1) * 15 + 12);
+        byte[] data = new byte[INTEL_RECORD_BYTES];
+        int segment = 0;
+        for (int start = 0; start < bytes; start += INTEL_RECORD_BYTES) {
+            int length = Math.min(INTEL_RECORD_BYTES, bytes - start);
+            boolean zero = true;
+            for (int i = 0; i < length; i++) {
+                short word = words[(start + i) / 2];
+                data[i] = (byte) ((start + i) % 2 == 0 ? word : word >> 8);
+                if (data[i] != 0) zero = false;
+            }
+            if (zero) continue;
+            //addresses above 64 KiB need an extended linear address record with the upper 16 bits
+            if (start >>> 16 != segment) {
+                segment = start >>> 16;
+                putIntelRecord(image, 0x04, 0, new byte[]{(byte) (segment >> 8), (byte) segment}, 2);
+            }
+            putIntelRecord(image, 0x00, start & 0xFFFF, data, length);
+        }
+        putIntelRecord(image, 0x01, 0, data, 0);
+        return image.flip();
+    }
+
+    //":LLAAAATT" + data + checksum, the checksum makes the sum of all record bytes 0
+    private static void putIntelRecord(ByteBuffer image, int type, int address, byte[] data, int length) {
+        image.put((byte) ':');
+        int sum = length + (address >> 8) + address + type;
+        putHex(image, length, 2, HEX_DIGITS_UPPER_CASE);
+        putHex(image, address, 4, HEX_DIGITS_UPPER_CASE);
+        putHex(image, type, 2, HEX_DIGITS_UPPER_CASE);
+        for (int i = 0; i < length; i++) {
+            putHex(image, data[i] & 0xFF, 2, HEX_DIGITS_UPPER_CASE);
+            sum += data[i];
+        }
+        putHex(image, -sum & 0xFF, 2, HEX_DIGITS_UPPER_CASE);
+        image.put((byte) '\n');
+    }
+
+    //value as exactly the given number of hexadecimal digits
+    private static void putHex(ByteBuffer image, int value, int digits, byte[] hexDigits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            image.put(hexDigits[(value >> shift) & 0xF]);
+        }
+    }
+
+    //value as hexadecimal digits without leading zeros
+    private static void putHexDigits(ByteBuffer image, int value) {
+        int shift = 12;
+        while (shift > 0 && (value >> shift) == 0) shift -= 4;
+        for (; shift >= 0; shift -= 4) {
+            image.put(HEX_DIGITS[(value >> shift) & 0xF]);
+        }
+    }
+
+    private static void putDecimal(ByteBuffer image, int value) {
+        int divisor = 1;
+        while (divisor * 10 <= value) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            image.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+public class Moncky2ALU {
+
+    //bits of the packed flag word
+    public static final int FLAG_CARRY = 1;
+    public static final int FLAG_ZERO = 2;
+    public static final int FLAG_SIGN = 4;
+    public static final int FLAG_OVERFLOW = 8;
+    public static final int ALL_FLAGS = FLAG_CARRY | FLAG_ZERO | FLAG_SIGN | FLAG_OVERFLOW;
+    //set in the value returned by the operations when they produced a new ALU result
+    public static final int RESULT_WRITTEN = 1 << 20;
+
+    //flags every ALU operation leaves as they were, indexed by opcode (all other flags are recomputed)
+    private static final int[] KEPT_FLAGS = new int[CommandDecoder.MNEMONICS.length];
+
+    static {
+        KEPT_FLAGS[CommandDecoder.OP_NOP] = 0;
+        KEPT_FLAGS[CommandDecoder.OP_OR] = 0;
+        KEPT_FLAGS[CommandDecoder.OP_AND] = FLAG_ZERO;
+        KEPT_FLAGS[CommandDecoder.OP_XOR] = FLAG_ZERO;
+        KEPT_FLAGS[CommandDecoder.OP_ADD] = 0;
+        KEPT_FLAGS[CommandDecoder.OP_SUB] = 0;
+        KEPT_FLAGS[CommandDecoder.OP_SHL] = ALL_FLAGS;
+        KEPT_FLAGS[CommandDecoder.OP_SHR] = ALL_FLAGS;
+        KEPT_FLAGS[CommandDecoder.OP_ASHR] = ALL_FLAGS;
+        KEPT_FLAGS[CommandDecoder.OP_NOT] = ALL_FLAGS;
+        KEPT_FLAGS[CommandDecoder.OP_NEG] = ALL_FLAGS;
+    }
+
+    /*
+    Every ALU operation works on the registers with 16-bit integer arithmetic.
+    The result is stored in the first register, like the Moncky-2 does ("op rA, rB" -> rA = rA op rB).
+    Nothing is allocated: the new ALU value and flags are packed into the returned int
+    - bits 0-15: ALU value
+    - bits 16-19: flags after the operation (FLAG_CARRY, FLAG_ZERO, FLAG_SIGN, FLAG_OVERFLOW)
+    - RESULT_WRITTEN: set if the ALU value changed
+    The operations are small on purpose, so the JIT compiler can inline them into the interpreter loop.
+     */
+
+    /**
+     * this method runs any ALU operation
+     * @param opcode ALU opcode from CommandDecoder (OP_NOP to OP_NEG)
+     * @param register the 16 registers of the cpu
+     * @param a number of the first register (also receives the result)
+     * @param b number of the second register
+     * @param flags packed flags before the operation
+     * @return packed ALU value and flags
+     */
+    public static int execute(int opcode, short[] register, int a, int b, int flags) {
+        switch (opcode) {
+            case CommandDecoder.OP_NOP: return nop(register, a, b);
+            case CommandDecoder.OP_OR: return or(register, a, b, flags);
+            case CommandDecoder.OP_AND: return and(register, a, b, flags);
+            case CommandDecoder.OP_XOR: return xor(register, a, b, flags);
+            case CommandDecoder.OP_ADD: return add(register, a, b, flags);
+            case CommandDecoder.OP_SUB: return sub(register, a, b, flags);
+            case CommandDecoder.OP_SHL:
+            case CommandDecoder.OP_SHR:
+            case CommandDecoder.OP_ASHR: return shift(opcode, register, a, b, flags);
+            case CommandDecoder.OP_NOT: return not(register, a, b, flags);
+            case CommandDecoder.OP_NEG: return neg(register, a, b, flags);
+            default: throw new IllegalArgumentException("not an ALU operation: " + opcode);
+        }
+    }
+
+    //copies the second register, the ALU value and all flags are cleared
+    public static int nop(short[] register, int a, int b) {
+        register[a] = register[b];
+        return RESULT_WRITTEN;
+    }
+
+    public static int or(short[] register, int a, int b, int flags) {
+        return store(CommandDecoder.OP_OR, register, a, register[a] | register[b], 0, flags);
+    }
+
+    public static int and(short[] register, int a, int b, int flags) {
+        return store(CommandDecoder.OP_AND, register, a, register[a] & register[b], 0, flags);
+    }
+
+    public static int xor(short[] register, int a, int b, int flags) {
+        return store(CommandDecoder.OP_XOR, register, a, register[a] ^ register[b], 0, flags);
+    }
+
+    public static int add(short[] register, int a, int b, int flags) {
+        int sum = register[a] + register[b];
+        //overflow only when the sum is too great for a positive 16-bit number
+        int newFlags = ((Short.MAX_VALUE - sum) >>> 31) * FLAG_OVERFLOW | ((((sum & 0xFFFF) - 1) >>> 31) * FLAG_ZERO);
+        return store(CommandDecoder.OP_ADD, register, a, (short) sum, newFlags, flags);
+    }
+
+    public static int sub(short[] register, int a, int b, int flags) {
+        int result = (short) (register[a] - register[b]);
+        //a zero result keeps the old sign flag
+        int newFlags = result == 0 ? FLAG_ZERO | (flags & FLAG_SIGN) : (result >>> 31) * FLAG_SIGN;
+        return store(CommandDecoder.OP_SUB, register, a, result, newFlags, flags);
+    }
+
+    public static int not(short[] register, int a, int b, int flags) {
+        return store(CommandDecoder.OP_NOT, register, a, ~register[b], 0, flags);
+    }
+
+    public static int neg(short[] register, int a, int b, int flags) {
+        return store(CommandDecoder.OP_NEG, register, a, -register[b], 0, flags);
+    }
+
+    /**
+     * this method shifts the first register by the number of bits in the second register
+     * a shift amount of 0 or less changes nothing, not even the ALU value
+     * @param opcode OP_SHL, OP_SHR or OP_ASHR
+     * @return packed ALU value and flags
+     */
+    public static int shift(int opcode, short[] register, int a, int b, int flags) {
+        short amount = register[b];
+        if (amount <= 0) return flags << 16;
+        return store(opcode, register, a, shifted(opcode, register[a], amount, a == b), 0, flags);
+    }
+
+    /**
+     * this method calculates the result of a shift with a shift amount greater than 0
+     * when both registers are the same, the shift amount changes with every shifted bit (the amount is re-read each step)
+     * @param opcode OP_SHL, OP_SHR or OP_ASHR
+     * @param value value to shift
+     * @param amount number of bits to shift (greater than 0)
+     * @param sameRegister true if the value and the amount come from the same register
+     * @return shifted value
+     */
+    public static short shifted(int opcode, short value, short amount, boolean sameRegister) {
+        if (!sameRegister) {
+            //shifting 16 or more bits leaves only zeros (or only copies of the sign bit)
+            int bits = Math.min(amount, 16);
+            if (opcode == CommandDecoder.OP_SHL) return (short) ((value << bits) & 0xFFFF);
+            if (opcode == CommandDecoder.OP_SHR) return (short) ((value & 0xFFFF) >>> bits);
+            return (short) (value >> Math.min(bits, 15));
+        }
+        //the value doubles or halves every step, so this loop ends within 16 steps
+        for (int i = 0; i < value; i++) {
+            if (opcode == CommandDecoder.OP_SHL) value = (short) (value << 1);
+            else if (opcode == CommandDecoder.OP_SHR) value = (short) ((value & 0xFFFF) >>> 1);
+            else value = (short) (value >> 1);
+        }
+        return value;
+    }
+
+    //stores the result in register a and packs it with the flags (the kept flags come from the old flags)
+    private static int store(int opcode, short[] register, int a, int result, int newFlags, int flags) {
+        register[a] = (short) result;
+        return RESULT_WRITTEN | ((newFlags | (flags & KEPT_FLAGS[opcode])) << 16) | (result & 0xFFFF);
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+
+/*
+Two-pass assembler: turns Moncky-2 source code into 16-bit instruction words without running it.
+- pass one: SymbolTable reads the labels (the value of a label is the address of the instruction before it)
+- pass two: every instruction is decoded with CommandDecoder and encoded with InstructionEncoder, one word per instruction
+Word i of the result is instruction i of the program, so labels loaded with li point to the right address in the image.
+Both passes look at every line once, the registers, memory, and flags of a processor are never used.
+ */
+public class Moncky2Assembler {
+
+    private final String[] codeLines;
+    private final SymbolTable symbolTable;
+    private final ArrayList<String> errors = new ArrayList<>();
+    private final Moncky2Lexer lexer = new Moncky2Lexer();
+    private short[] words = new short[0];
+    //source line number (starting at 1) of every word
+    private int[] wordLines = new int[0];
+
+    /**
+     * constructor, runs pass one (labels)
+     * @param moncky2Code raw code with labels, comments, and empty lines
+     */
+    public Moncky2Assembler(String moncky2Code) {
+        codeLines = moncky2Code.split("\n");
+        symbolTable = new SymbolTable(codeLines);
+    }
+
+    /**
+     * this method runs pass two: it encodes every instruction into one 16-bit word
+     * lines that can't be encoded are collected in getErrors (the word 0x0000 takes their place, so later addresses don't move)
+     * @return the instruction words, word i is instruction i of the program
+     */
+    public short[] assemble() {
+        errors.clear();
+        short[] assembled = new short[codeLines.length];
+        int[] lines = new int[codeLines.length];
+        int address = 0;
+        for (int i = 0; i < codeLines.length; i++) {
+            if (!Moncky2Lexer.isInstruction(codeLines[i])) continue;
+            String line = codeLines[i].strip();
+            assembled[address] = (short) encodeLine(line, i + 1);
+            lines[address] = i + 1;
+            address++;
+        }
+        words = new short[address];
+        wordLines = new int[address];
+        System.arraycopy(assembled, 0, words, 0, address);
+        System.arraycopy(lines, 0, wordLines, 0, address);
+        return words;
+    }
+
+    /**
+     * this method assembles code and fails on the first problem, for callers that only want a valid image
+     * @param moncky2Code raw code with labels, comments, and empty lines
+     * @return the instruction words, word i is instruction i of the program
+     */
+    public static short[] assemble(String moncky2Code) {
+        Moncky2Assembler assembler = new Moncky2Assembler(moncky2Code);
+        short[] words = assembler.assemble();
+        if (!assembler.getErrors().isEmpty()) {
+            throw new RuntimeException("code can't be assembled:\n" + String.join("\n", assembler.getErrors()));
+        }
+        return words;
+    }
+
+    //encodes one instruction, or reports it and returns 0
+    private int encodeLine(String line, int lineNumber) {
+        try {
+            return encodeInstruction(lexer, line, symbolTable);
+        } catch (RuntimeException e) {
+            return error(lineNumber, e.getMessage());
+        }
+    }
+
+    /**
+     * this method encodes one instruction into its 16-bit word
+     * @param line stripped line with one instruction (not a label, comment, or empty line)
+     * @param symbolTable labels of the program
+     * @return the instruction word (0-65535)
+     * @throws RuntimeException with the reason when the instruction can't be encoded
+     */
+    public static int encodeInstruction(String line, SymbolTable symbolTable) {
+        return encodeInstruction(new Moncky2Lexer(), line, symbolTable);
+    }
+
+    /**
+     * this method encodes one instruction with a lexer that is reused for every line (see encodeInstruction)
+     * @param lexer the shared lexer
+     * @param line stripped line with one instruction
+     * @param symbolTable labels of the program
+     * @return the instruction word (0-65535)
+     */
+    public static int encodeInstruction(Moncky2Lexer lexer, String line, SymbolTable symbolTable) {
+        //missing labels throw their own RuntimeException
+        int instruction = CommandDecoder.decodeCommand(lexer, line, symbolTable);
+        int opcode = instruction & 0xFF;
+        if (opcode == CommandDecoder.OP_LEGACY) throw new RuntimeException("invalid instruction \"" + line + "\"");
+        if (opcode == CommandDecoder.OP_SKIP) throw new RuntimeException("unknown instruction \"" + line + "\"");
+        if (opcode == CommandDecoder.OP_LI) {
+            //li has 8 bits for its value, larger values (and labels after address 255) have to be built with shifts
+            int value = instruction >> 16;
+            if (value < 0 || value > 255) throw new RuntimeException("value " + value + " in \"" + line + "\" does not fit in 8 bits (0-255)");
+        }
+        return InstructionEncoder.encode(instruction);
+    }
+
+    private int error(int lineNumber, String message) {
+        errors.add("line " + lineNumber + ": " + message);
+        return 0;
+    }
+
+    //getter for the problems found by the last assemble call, as "line N: message"
+    public ArrayList<String> getErrors() {
+        return errors;
+    }
+
+    //getter for the words of the last assemble call
+    public short[] getWords() {
+        return words;
+    }
+
+    //getter for the source line number (starting at 1) of every word of the last assemble call
+    public int[] getWordLines() {
+        return wordLines;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+}
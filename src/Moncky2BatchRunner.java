@@ -0,0 +1,216 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+
+/*
+Runs many programs at once, each on its own interpreter (its own registers and memory).
+The programs are taken from a directory (all files, also in sub directories) or from a manifest file
+with one path per line (relative to the manifest, empty lines and lines starting with '#' are skipped).
+Source files are loaded with loadCode, .hex files with loadImage.
+
+A fixed pool of worker threads runs the programs (see Moncky2Scheduler). The results are written to one file in the order the programs finish:
+for every program its path, status, instruction count, wall time, registers, and non-zero memory.
+
+Programs run in slices on Moncky2Scheduler, so a program that never halts can't keep a worker busy:
+"-budget N" stops a program after N instructions, "-timeout ms" after that many milliseconds.
+
+usage: Moncky2BatchRunner <directory or manifest> [-threads N] [-out file] [-jit] [-budget N] [-timeout ms] [-slice N]
+ */
+public class Moncky2BatchRunner {
+
+    //default location of the results file
+    public static final Path DEFAULT_OUTPUT = Path.of("moncky2out/batchResults.txt");
+    //largest time limit in milliseconds that can be counted in nanoseconds, a larger one is no limit
+    private static final long MAX_MILLIS = Long.MAX_VALUE / 1_000_000;
+
+    //result text of a finished program, and whether it halted normally
+    private static class Result {
+        final String text;
+        final boolean halted;
+
+        Result(String text, boolean halted) {
+            this.text = text;
+            this.halted = halted;
+        }
+    }
+
+    private final int threads;
+    //compile every program to JVM bytecode before running it (see Moncky2BytecodeCompiler)
+    private final boolean bytecodeCompilation;
+    //limits of every program: number of instructions and wall time in nanoseconds (Long.MAX_VALUE for no limit)
+    private final long budget;
+    private final long timeLimit;
+    //number of instructions a program runs before its worker switches to another program
+    private long sliceSize = Moncky2Scheduler.DEFAULT_SLICE_SIZE;
+
+    /**
+     * constructor
+     * @param threads number of worker threads (programs run at the same time)
+     * @param bytecodeCompilation true to run every program with the bytecode compiler instead of the interpreter loop
+     * @param budget maximum number of instructions of every program (Long.MAX_VALUE for no limit)
+     * @param timeLimitMillis maximum run time of every program in milliseconds (Long.MAX_VALUE for no limit)
+     */
+    public Moncky2BatchRunner(int threads, boolean bytecodeCompilation, long budget, long timeLimitMillis) {
+        if (threads < 1) throw new IllegalArgumentException("number of threads must be at least 1");
+        this.threads = threads;
+        this.bytecodeCompilation = bytecodeCompilation;
+        this.budget = budget;
+        this.timeLimit = timeLimitMillis >= MAX_MILLIS ? Long.MAX_VALUE : timeLimitMillis * 1_000_000;
+    }
+
+    //setter for the number of instructions a program runs before its worker switches to another program
+    public void setSliceSize(long sliceSize) {
+        this.sliceSize = sliceSize;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("usage: Moncky2BatchRunner <directory or manifest> [-threads N] [-out file] [-jit] [-budget N] [-timeout ms] [-slice N]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path output = DEFAULT_OUTPUT;
+        boolean jit = false;
+        long budget = Long.MAX_VALUE;
+        long timeLimit = Long.MAX_VALUE;
+        long sliceSize = Moncky2Scheduler.DEFAULT_SLICE_SIZE;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-out": output = Path.of(args[++i]); break;
+                case "-jit": jit = true; break;
+                case "-budget": budget = Long.parseLong(args[++i]); break;
+                case "-timeout": timeLimit = Long.parseLong(args[++i]); break;
+                case "-slice": sliceSize = Long.parseLong(args[++i]); break;
+                default: throw new RuntimeException("unknown option " + args[i]);
+            }
+        }
+        try {
+            List<Path> programs = findPrograms(Path.of(args[0]));
+            long start = System.nanoTime();
+            Moncky2BatchRunner batchRunner = new Moncky2BatchRunner(threads, jit, budget, timeLimit);
+            batchRunner.setSliceSize(sliceSize);
+            int failed = batchRunner.run(programs, output);
+            System.out.printf("ran %d programs (%d failed or stopped) on %d threads in %.1f ms, results in %s%n",
+                    programs.size(), failed, threads, (System.nanoTime() - start) / 1e6, output);
+        } catch (IOException e) {
+            System.out.println("could not read programs from " + args[0] + " or write results to " + output);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * this method lists the programs of a batch
+     * @param source directory with programs, or manifest file with one program path per line
+     * @return paths of the programs, sorted when they come from a directory
+     * @throws IOException when the directory or manifest can't be read
+     */
+    public static List<Path> findPrograms(Path source) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> files = Files.walk(source)) {
+                files.filter(Files::isRegularFile).sorted().forEach(programs::add);
+            }
+            return programs;
+        }
+        Path directory = source.toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(source)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            programs.add(directory.resolve(line));
+        }
+        return programs;
+    }
+
+    /**
+     * this method runs all programs on the scheduler and streams the results to the output file
+     * at most two programs per worker thread are submitted at a time, so a time limit counts from (about) the start of a program
+     * @param programs paths of the programs (source code or .hex memory images)
+     * @param output file that receives the results
+     * @return number of programs that did not halt normally
+     * @throws IOException when the output file can't be written
+     */
+    public int run(List<Path> programs, Path output) throws IOException {
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        int failed = 0;
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        try (Moncky2Scheduler scheduler = new Moncky2Scheduler(threads, sliceSize, Moncky2Scheduler.Policy.ROUND_ROBIN);
+             BufferedWriter writer = Files.newBufferedWriter(output)) {
+            int submitted = 0;
+            for (int written = 0; written < programs.size(); written++) {
+                while (submitted < programs.size() && submitted - written < 2 * threads) {
+                    //the result text is built by the worker that finishes the job, this thread only writes
+                    //a result is always queued, also when building it fails, so take() can't wait forever
+                    Moncky2Job job = createJob(programs.get(submitted++), scheduler);
+                    job.getCompletion().handle((finished, error) -> result(job, error)).thenAccept(results::add);
+                }
+                Result result = results.take();
+                if (!result.halted) failed++;
+                writer.write(result.text);
+                writer.newLine();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("batch interrupted", e);
+        }
+        return failed;
+    }
+
+    //submits the job that runs one program, errors of the program are part of the result, they do not stop the batch
+    private Moncky2Job createJob(Path program, Moncky2Scheduler scheduler) {
+        long deadline = timeLimit == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeLimit;
+        Moncky2Job job = new Moncky2Job(program.toString(), m2i -> {
+            m2i.setBytecodeCompilation(bytecodeCompilation);
+            if (program.toString().endsWith(".hex")) m2i.loadImage(HexImage.read(program));
+            else m2i.loadCode(Files.readString(program));
+        }, 0, budget, deadline);
+        return scheduler.submit(job);
+    }
+
+    //result of a finished job, a failure to describe it is reported as a failed program
+    private Result result(Moncky2Job job, Throwable error) {
+        if (error == null) {
+            try {
+                return new Result(describe(job), job.getStatus() == Moncky2Job.Status.HALTED);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+        return new Result("program " + job.getName() + "\nstatus failed: could not describe the result: " + error + "\n", false);
+    }
+
+    /**
+     * this method describes the result of a finished job
+     * @param job finished job
+     * @return result text, ending with a newline
+     */
+    private String describe(Moncky2Job job) {
+        StringBuilder result = new StringBuilder();
+        result.append("program ").append(job.getName()).append('\n');
+        switch (job.getStatus()) {
+            case HALTED: result.append("status ok\n"); break;
+            case FAILED: result.append("status failed: ").append(job.getError()).append('\n'); break;
+            case BUDGET_EXCEEDED: result.append("status stopped: instruction budget of ").append(budget).append(" exceeded\n"); break;
+            case CANCELLED: result.append("status stopped: cancelled\n"); break;
+            default: result.append("status stopped: time limit of ").append(timeLimit / 1_000_000).append(" ms exceeded\n"); break;
+        }
+        Moncky2Interpreter m2i = job.getInterpreter();
+        result.append("instructions ").append(m2i.getInstructionCount()).append('\n');
+        result.append(String.format("time %.3f ms%n", job.getRunTime() / 1e6));
+        short[] register = m2i.getRegister();
+        for (int i = 0; i < register.length; i++) {
+            result.append("register ").append(i).append(": ").append(register[i]).append('\n');
+        }
+        Moncky2Memory memory = m2i.getMemory();
+        for (int i = 0; i < Moncky2Memory.WORDS; i++) {
+            if (memory.read(i) != 0) result.append("memory at #").append(i).append(": ").append(memory.read(i)).append('\n');
+        }
+        return result.toString();
+    }
+}
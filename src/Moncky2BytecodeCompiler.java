@@ -0,0 +1,328 @@
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Compiles a decoded program (see CommandDecoder) into a JVM class, so HotSpot can compile the Moncky-2 program to machine code.
+The program is translated into Java source and compiled in memory by the JDK compiler (javax.tools),
+then loaded as a hidden class that extends Moncky2CompiledProgram.
+
+Layout of the generated class:
+- the instructions are split into blocks of BLOCK_SIZE instructions, one method per block
+  (HotSpot does not compile very large methods)
+- a block method copies registers 0-14 into local variables and runs a switch on the program counter.
+  Every instruction is a case and falls through to the next one, so straight-line code stays straight-line code
+  and every instruction can still be the target of a jump
+- a jump sets the program counter and goes back to the switch. A jump outside the block returns to execute,
+  which calls the method of the block that contains the target. Jumps also stop the program once it ran its
+  maximum number of instructions (see Moncky2CompiledProgram.run)
+- register 15 is never stored while running: when instruction i runs, register 15 is always i
+ */
+public class Moncky2BytecodeCompiler {
+
+    //number of instructions compiled into one method
+    public static final int BLOCK_SIZE = 64;
+    private static final String CLASS_NAME = "Moncky2CompiledCode";
+    //end of every jump: leave the block when the instruction limit is reached, otherwise continue at pc
+    //(code without jumps always ends, so checking the limit at jumps is enough to stop every program)
+    private static final String JUMP = "if (count >= limit) break dispatch; continue dispatch;";
+
+    //the last compiled program, so running the same code again does not compile it again
+    private int[] lastProgram = null;
+    private Moncky2CompiledProgram lastCompiled = null;
+
+    /**
+     * this method checks if a decoded program can be compiled
+     * commands the decoder could not read (OP_LEGACY) only run in the interpreter
+     * @param program decoded program
+     * @return true if every instruction can be compiled
+     */
+    public static boolean canCompile(int[] program) {
+        for (int instruction : program) {
+            int opcode = instruction & 0xFF;
+            if (opcode == CommandDecoder.OP_LEGACY || opcode == CommandDecoder.OP_INVALID || opcode > CommandDecoder.OP_INVALID) return false;
+        }
+        return true;
+    }
+
+    /**
+     * this method compiles a decoded program into a class and loads it
+     * the result is reused when the same program is compiled again
+     * @param program decoded program (see canCompile)
+     * @return runnable compiled program
+     */
+    public Moncky2CompiledProgram compile(int[] program) {
+        if (lastCompiled != null && Arrays.equals(program, lastProgram)) return lastCompiled;
+        if (!canCompile(program)) throw new RuntimeException("program contains instructions that can only be interpreted");
+        byte[] classBytes = compileSource(generateSource(program));
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            lastCompiled = (Moncky2CompiledProgram) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new RuntimeException("could not load compiled program", e);
+        }
+        lastProgram = program.clone();
+        return lastCompiled;
+    }
+
+    /**
+     * this method translates a decoded program into the Java source of a Moncky2CompiledProgram
+     * @param program decoded program (see canCompile)
+     * @return source code of the class
+     */
+    public static String generateSource(int[] program) {
+        StringBuilder source = new StringBuilder();
+        int blocks = (program.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        source.append("public final class ").append(CLASS_NAME).append(" extends Moncky2CompiledProgram {\n");
+        source.append("    public ").append(CLASS_NAME).append("() { super(").append(program.length).append("); }\n\n");
+
+        source.append("    protected int execute(int pc) {\n");
+        source.append("        while (pc >= 0 && pc < ").append(program.length).append(" && count < limit) {\n");
+        source.append("            switch (pc / ").append(BLOCK_SIZE).append(") {\n");
+        for (int block = 0; block < blocks; block++) {
+            source.append("                case ").append(block).append(": pc = block").append(block).append("(pc); break;\n");
+        }
+        source.append("            }\n        }\n        return pc;\n    }\n");
+
+        for (int block = 0; block < blocks; block++) {
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(start + BLOCK_SIZE, program.length);
+            appendBlock(source, program, block, start, end);
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private static void appendBlock(StringBuilder source, int[] program, int block, int start, int end) {
+        source.append("\n    private int block").append(block).append("(int pc) {\n");
+        source.append("        final short[] register = this.register;\n");
+        source.append("        final Moncky2Memory memory = this.memory;\n");
+        for (int r = 0; r < 15; r++) {
+            source.append("        short r").append(r).append(" = register[").append(r).append("];\n");
+        }
+        source.append("        short alu = this.alu;\n");
+        source.append("        int flags = this.flags;\n");
+        source.append("        long count = this.count;\n");
+        source.append("        final long limit = this.limit;\n");
+        source.append("        boolean halted = false;\n");
+        source.append("        try {\n");
+        source.append("            dispatch:\n");
+        source.append("            while (true) {\n");
+        source.append("                switch (pc) {\n");
+        source.append("                    default: break dispatch;\n");
+        boolean completesNormally = true;
+        for (int i = start; i < end; i++) {
+            source.append("                    case ").append(i).append(":\n");
+            source.append("                        count++;\n");
+            completesNormally = appendInstruction(source, program[i], i);
+        }
+        source.append("                }\n");
+        //javac rejects unreachable statements, so this is left out when the last instruction always jumps or halts
+        if (completesNormally) source.append("                pc = ").append(end).append(";\n");
+        source.append("            }\n");
+        source.append("        } catch (RuntimeException e) {\n");
+        appendStore(source, "            ");
+        source.append("            throw e;\n");
+        source.append("        }\n");
+        appendStore(source, "        ");
+        source.append("        if (!halted) return pc;\n");
+        source.append("        register[15] = (short) pc;\n");
+        source.append("        return HALTED;\n");
+        source.append("    }\n");
+    }
+
+    //writes the local variables back to the cpu state
+    private static void appendStore(StringBuilder source, String indent) {
+        for (int r = 0; r < 15; r++) {
+            source.append(indent).append("register[").append(r).append("] = r").append(r).append(";\n");
+        }
+        source.append(indent).append("this.alu = alu;\n");
+        source.append(indent).append("this.flags = flags;\n");
+        source.append(indent).append("this.count = count;\n");
+    }
+
+    /**
+     * this method appends the statements of instruction i, they do exactly what Moncky2Interpreter.runProgram does
+     * @param source source code of the class
+     * @param instruction decoded instruction
+     * @param i index of the instruction
+     * @return false if the instruction always jumps or halts, true if it can continue with the next instruction
+     */
+    private static boolean appendInstruction(StringBuilder source, int instruction, int i) {
+        String indent = "                        ";
+        int opcode = instruction & 0xFF;
+        int a = CommandDecoder.registerA(instruction);
+        int b = CommandDecoder.registerB(instruction);
+        String valueA = read(a, i);
+        String valueB = read(b, i);
+        switch (opcode) {
+            case CommandDecoder.OP_HALT:
+                source.append(indent).append("pc = ").append(i).append("; halted = true; break dispatch;\n");
+                break;
+            case CommandDecoder.OP_LI:
+                source.append(indent).append(write(a, "(short) " + CommandDecoder.immediate(instruction))).append('\n');
+                break;
+            case CommandDecoder.OP_LD:
+                source.append(indent).append(write(a, "memory.read(" + valueB + ")")).append('\n');
+                break;
+            case CommandDecoder.OP_ST:
+                source.append(indent).append("memory.write(").append(valueB).append(", ").append(valueA).append(");\n");
+                break;
+            case CommandDecoder.OP_JP:
+                //jp sets register 15 to the target before it continues at the line after the target
+                source.append(indent).append("{ int target = ").append(valueA).append(";\n");
+                source.append(indent).append("  if (target < 0) { pc = target; halted = true; break dispatch; }\n");
+                source.append(indent).append("  pc = (short) (target + 1); " + JUMP + " }\n");
+                break;
+            case CommandDecoder.OP_JPC:
+            case CommandDecoder.OP_JPNC:
+            case CommandDecoder.OP_JPZ:
+            case CommandDecoder.OP_JPNZ:
+            case CommandDecoder.OP_JPS:
+            case CommandDecoder.OP_JPNS:
+            case CommandDecoder.OP_JPO:
+            case CommandDecoder.OP_JPNO:
+                //a taken jump to line 0 does nothing, a negative target halts at the jump
+                source.append(indent).append("if (").append(condition(opcode)).append(") { int target = ").append(valueA).append(";\n");
+                source.append(indent).append("  if (target < 0) { pc = ").append(i).append("; halted = true; break dispatch; }\n");
+                source.append(indent).append("  if (target > 0) { pc = (short) (target + 1); " + JUMP + " } }\n");
+                break;
+            case CommandDecoder.OP_NOP:
+                source.append(indent).append("{ short value = ").append(valueB).append("; alu = 0; flags = 0; ")
+                        .append(write(a, "value")).append(" }\n");
+                break;
+            case CommandDecoder.OP_OR:
+                appendALU(source, indent, a, "(short) (" + valueA + " | " + valueB + ")", "flags = 0;");
+                break;
+            case CommandDecoder.OP_AND:
+                appendALU(source, indent, a, "(short) (" + valueA + " & " + valueB + ")", "flags &= Moncky2ALU.FLAG_ZERO;");
+                break;
+            case CommandDecoder.OP_XOR:
+                appendALU(source, indent, a, "(short) (" + valueA + " ^ " + valueB + ")", "flags &= Moncky2ALU.FLAG_ZERO;");
+                break;
+            case CommandDecoder.OP_ADD:
+                source.append(indent).append("{ int sum = ").append(valueA).append(" + ").append(valueB).append("; short value = (short) sum;\n");
+                source.append(indent).append("  flags = (sum > Short.MAX_VALUE ? Moncky2ALU.FLAG_OVERFLOW : 0) | (value == 0 ? Moncky2ALU.FLAG_ZERO : 0);\n");
+                source.append(indent).append("  alu = value; ").append(write(a, "value")).append(" }\n");
+                break;
+            case CommandDecoder.OP_SUB:
+                appendALU(source, indent, a, "(short) (" + valueA + " - " + valueB + ")",
+                        "flags = value == 0 ? Moncky2ALU.FLAG_ZERO | (flags & Moncky2ALU.FLAG_SIGN) : (value < 0 ? Moncky2ALU.FLAG_SIGN : 0);");
+                break;
+            case CommandDecoder.OP_SHL:
+            case CommandDecoder.OP_SHR:
+            case CommandDecoder.OP_ASHR:
+                //a shift amount of 0 or less changes nothing
+                source.append(indent).append("if (").append(valueB).append(" > 0) ");
+                appendALU(source, "", a, "Moncky2ALU.shifted(" + opcode + ", " + valueA + ", " + valueB + ", " + (a == b) + ")", "");
+                break;
+            case CommandDecoder.OP_NOT:
+                appendALU(source, indent, a, "(short) ~" + valueB, "");
+                break;
+            case CommandDecoder.OP_NEG:
+                appendALU(source, indent, a, "(short) -" + valueB, "");
+                break;
+            default:
+                //OP_SKIP
+                break;
+        }
+        //halt and jp never continue with the next instruction, and neither does an instruction that always writes register 15
+        if (opcode == CommandDecoder.OP_HALT || opcode == CommandDecoder.OP_JP) return false;
+        boolean writesRegisterA = opcode == CommandDecoder.OP_LI || opcode == CommandDecoder.OP_LD
+                || (opcode >= CommandDecoder.OP_NOP && opcode <= CommandDecoder.OP_NEG && opcode != CommandDecoder.OP_SHL
+                && opcode != CommandDecoder.OP_SHR && opcode != CommandDecoder.OP_ASHR);
+        return !(writesRegisterA && a == 15);
+    }
+
+    //appends an ALU operation that stores value in register a and the ALU value
+    private static void appendALU(StringBuilder source, String indent, int a, String value, String flagUpdate) {
+        source.append(indent).append("{ short value = ").append(value).append("; ");
+        if (!flagUpdate.isEmpty()) source.append(flagUpdate).append(' ');
+        source.append("alu = value; ").append(write(a, "value")).append(" }\n");
+    }
+
+    //register 15 always holds the index of the running instruction
+    private static String read(int registerNumber, int i) {
+        if (registerNumber == 15) return "((short) " + i + ")";
+        return "r" + registerNumber;
+    }
+
+    //writing register 15 is a jump to the line after the written value
+    private static String write(int registerNumber, String value) {
+        if (registerNumber == 15) return "{ pc = (short) (" + value + " + 1); " + JUMP + " }";
+        return "r" + registerNumber + " = " + value + ";";
+    }
+
+    private static String condition(int opcode) {
+        switch (opcode) {
+            case CommandDecoder.OP_JPC: return "(flags & Moncky2ALU.FLAG_CARRY) != 0";
+            case CommandDecoder.OP_JPNC: return "(flags & Moncky2ALU.FLAG_CARRY) == 0";
+            case CommandDecoder.OP_JPZ: return "(flags & Moncky2ALU.FLAG_ZERO) != 0";
+            case CommandDecoder.OP_JPNZ: return "(flags & Moncky2ALU.FLAG_ZERO) == 0";
+            case CommandDecoder.OP_JPS: return "(flags & Moncky2ALU.FLAG_SIGN) != 0";
+            case CommandDecoder.OP_JPNS: return "(flags & Moncky2ALU.FLAG_SIGN) == 0";
+            case CommandDecoder.OP_JPO: return "(flags & Moncky2ALU.FLAG_OVERFLOW) != 0";
+            default: return "(flags & Moncky2ALU.FLAG_OVERFLOW) == 0";
+        }
+    }
+
+    /**
+     * this method compiles Java source code in memory with the compiler of the JDK
+     * @param source source code of the class CLASS_NAME
+     * @return contents of the class file
+     */
+    private static byte[] compileSource(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new RuntimeException("no Java compiler found, bytecode compilation needs a JDK");
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        JavaFileManager fileManager = new ForwardingJavaFileManager<>(compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("memory:///" + className + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classBytes;
+                    }
+                };
+            }
+        };
+        JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        StringWriter errors = new StringWriter();
+        //the generated class needs Moncky2CompiledProgram and Moncky2ALU, also when they were not loaded from the class path
+        String classPath = System.getProperty("java.class.path");
+        CodeSource codeSource = Moncky2CompiledProgram.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            try {
+                classPath += File.pathSeparator + Path.of(codeSource.getLocation().toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                //keep the class path of the JVM
+            }
+        }
+        List<String> options = List.of("-classpath", classPath, "-g:none", "-proc:none");
+        if (!compiler.getTask(errors, fileManager, null, options, null, List.of(sourceFile)).call()) {
+            throw new RuntimeException("could not compile program:\n" + errors);
+        }
+        return classBytes.toByteArray();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+Base class of the programs generated by Moncky2BytecodeCompiler.
+A generated program keeps registers 0-14, the ALU value, and the flags in local variables while it runs,
+and only writes them back to the register array when it leaves a block of code, halts, or fails.
+Register 15 is not stored while running: the program counter is the position in the generated code.
+ */
+public abstract class Moncky2CompiledProgram {
+
+    //returned by execute when a halt instruction (or a jump to a negative line) ended the program
+    protected static final int HALTED = Integer.MIN_VALUE;
+
+    //number of decoded instructions the program was compiled from
+    private final int length;
+
+    //cpu state, set by run and updated by the generated code
+    protected short[] register;
+    protected Moncky2Memory memory;
+    protected short alu;
+    protected int flags;
+    protected long count;
+    //the program stops at the next jump once count reaches limit
+    protected long limit;
+
+    protected Moncky2CompiledProgram(int length) {
+        this.length = length;
+    }
+
+    /**
+     * this method runs the compiled program from the instruction in register 15 until a halt instruction
+     * the results are the same as Moncky2Interpreter.runProgram for the decoded program
+     * when an instruction fails, registers 0-14 and memory are up to date but register 15 is not
+     * the run stops early at the first jump after maxInstructions instructions, register 15 then points at the next instruction
+     * (code without jumps always ends, so at most one pass over the program runs past maxInstructions)
+     * @param register the 16 registers of the cpu
+     * @param memory the memory of the cpu
+     * @param alu ALU value before running
+     * @param flags packed flags before running (see Moncky2ALU)
+     * @param maxInstructions number of instructions after which the run stops (Long.MAX_VALUE to run until halt)
+     * @return true if the program halted, false if it stopped because of maxInstructions
+     */
+    public boolean run(short[] register, Moncky2Memory memory, short alu, int flags, long maxInstructions) {
+        this.register = register;
+        this.memory = memory;
+        this.alu = alu;
+        this.flags = flags;
+        count = 0;
+        limit = maxInstructions;
+        int pc = execute(register[15]);
+        if (pc == HALTED) return true;
+        register[15] = (short) pc;
+        if (pc >= 0 && pc < length) return false;
+        //the interpreter fails the same way when it runs past the last instruction
+        throw new ArrayIndexOutOfBoundsException("Index " + pc + " out of bounds for length " + length);
+    }
+
+    /**
+     * this method is generated: it runs the instructions starting at pc
+     * @param pc index of the first instruction to run
+     * @return HALTED, the index of an instruction outside the program, or the next instruction when count reached limit
+     */
+    protected abstract int execute(int pc);
+
+    /**
+     * this method creates another instance of the generated class, so two interpreters can run it at the same time
+     * (an instance keeps the cpu state of the run it is doing)
+     * @return new instance of the same compiled program
+     */
+    public Moncky2CompiledProgram copy() {
+        try {
+            return getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("could not copy compiled program", e);
+        }
+    }
+
+    //getter for the ALU value after the last run
+    public short getALU() {
+        return alu;
+    }
+
+    //getter for the packed flags after the last run
+    public int getFlags() {
+        return flags;
+    }
+
+    //getter for the number of instructions executed by the last run
+    public long getInstructionCount() {
+        return count;
+    }
+
+    //getter for the number of decoded instructions the program was compiled from
+    public int getLength() {
+        return length;
+    }
+}
@@ -1,5 +1,3 @@
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -7,7 +5,10 @@ import java.util.ArrayList;
 
 public class Moncky2Compiler {
 
-    private ArrayList<String> compiledBinaryCommands = new ArrayList<>();
+    //16-bit instruction words of the compiled program
+    private short[] compiledWords = new short[0];
+    //compiling again with the same compiler only encodes the lines that changed
+    private final IncrementalAssembler assembler = new IncrementalAssembler();
     public static void main(String[] args) {
         String codeContent;
         try {
@@ -19,68 +20,82 @@ public class Moncky2Compiler {
             throw new RuntimeException(e);
         }
 
-        Moncky2Interpreter m2i = new Moncky2Interpreter(codeContent);
         Moncky2Compiler m2c = new Moncky2Compiler();
-        m2c.compileCode(m2i, codeContent);
-        m2c.setCompiledBinaryCommands(m2i.getCompiledBinaryCommands());
-        m2c.parseHexCommands();
+        m2c.compileCode(codeContent);
+        //"-format raw|intel|bin|bin-be" chooses the image format, the default is Digital's "v2.0 raw" (compiledCode.hex)
+        if (args.length > 1 && args[0].equals("-format")) {
+            MemoryImageWriter.Format format = MemoryImageWriter.parseFormat(args[1]);
+            m2c.writeImage(Path.of("moncky2out/compiledCode" + MemoryImageWriter.getExtension(format)), format);
+        } else {
+            m2c.parseHexCommands();
+        }
     }
 
     public void setCompiledBinaryCommands(ArrayList<String> compiledBinaryCommands) {
-        this.compiledBinaryCommands = compiledBinaryCommands;
+        compiledWords = new short[compiledBinaryCommands.size()];
+        for (int i = 0; i < compiledWords.length; i++) {
+            compiledWords[i] = (short) NumberConverter.binaryStringToDecimal(compiledBinaryCommands.get(i));
+        }
     }
 
     public void parseHexCommands() {
+        writeImage(Path.of("moncky2out/compiledCode.hex"), MemoryImageWriter.Format.RAW);
+    }
 
-        File myObj = new File("moncky2out/compiledCode.hex");
-        if (myObj.delete()) {
-            System.out.println("Deleting file: " + myObj.getName() + "...");
-        } else {
-            System.out.println("No existing file found...");
-        }
-
+    /**
+     * this method writes the compiled program as a memory image (see MemoryImageWriter), an existing file is replaced
+     * when this compiler wrote the file before, only the part of the file that changed is written again
+     * @param path location of the image file
+     * @param format format of the file
+     */
+    public void writeImage(Path path, MemoryImageWriter.Format format) {
         try {
-            if (myObj.createNewFile()) {
-                System.out.println("Generating new file...");
-                System.out.println("File created: " + myObj.getName());
-            } else {
-                System.out.println("File already exists.");
-            }
+            if (compiledWords == assembler.getWords()) assembler.writeImage(path, format);
+            else MemoryImageWriter.write(path, compiledWords, format);
+            System.out.println("Successfully wrote binary commands to " + path);
         } catch (IOException e) {
             System.out.println("An error occurred.");
             e.printStackTrace();
         }
+    }
 
-        try {
-            FileWriter myWriter = new FileWriter("moncky2out/compiledCode.hex");
-            int hexCounter = 0;
-            myWriter.write("v2.0 raw\n");
-            for (String compiledCommand : compiledBinaryCommands) {
-                hexCounter++;
-                int commandDecimal = Integer.parseInt(compiledCommand, 2);
-                String hexCommand = Integer.toString(commandDecimal, 16);
-                myWriter.write(("0000" + hexCommand).substring(hexCommand.length()) + " ");
-                if(hexCounter == 8) {
-                    myWriter.write("\n");
-                    hexCounter = 0;
-                }
-            }
-            myWriter.close();
-            System.out.println("Successfully wrote binary commands");
-        } catch (IOException e) {
-            System.out.println("An error occurred.");
-            e.printStackTrace();
-        }
+    //getter for the compiled program as 16-bit instruction words
+    public short[] getCompiledWords() {
+        return compiledWords;
     }
 
-    public void compileCode(Moncky2Interpreter m2i, String moncky2Code) {
-        String[] commands = m2i.getCommands();
+    /**
+     * this method assembles the code (see Moncky2Assembler), the program is not run
+     * only the lines that changed since the last call of this compiler are encoded again (see IncrementalAssembler)
+     * @param moncky2Code raw code with labels, comments, and empty lines
+     */
+    public void compileCode(String moncky2Code) {
+        short[] words = assembler.assemble(moncky2Code);
 
-        int commandLine = 0;
-        while (true) {
-            int commandResult = m2i.executeCommand(commands[commandLine]);
-            if (commandResult < 0) break;
-            commandLine++;
+        //report label problems once, before anything is compiled
+        SymbolTable symbolTable = assembler.getSymbolTable();
+        for (int i = 0; i < symbolTable.getDuplicateLabels().size(); i++) {
+            String label = symbolTable.getDuplicateLabels().get(i);
+            System.out.println("duplicate label " + label + " at line " + symbolTable.getDuplicateLines().get(i) + ", using the definition at line " + symbolTable.getLine(label));
+        }
+        if (!assembler.getErrors().isEmpty()) {
+            throw new RuntimeException("code can't be compiled:\n" + String.join("\n", assembler.getErrors()));
         }
+        compiledWords = words;
+    }
+
+    //getter for the assembler, it tells how many lines the last compileCode call encoded and which words changed
+    public IncrementalAssembler getAssembler() {
+        return assembler;
+    }
+
+    /**
+     * this method compiles the code, the interpreter is not used anymore (the assembler doesn't run the program)
+     * it is kept for callers of the old compiler
+     * @param m2i not used
+     * @param moncky2Code raw code with labels, comments, and empty lines
+     */
+    public void compileCode(Moncky2Interpreter m2i, String moncky2Code) {
+        compileCode(moncky2Code);
     }
 }
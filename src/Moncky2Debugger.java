@@ -0,0 +1,513 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+Debug session on a Moncky2Interpreter: breakpoints on instruction addresses, watchpoints on registers and memory,
+single-step, continue, and run-to-label.
+
+Breakpoints and memory watchpoints are bitmaps over the 64K address space (one bit per address), so checking one
+costs a shift and a mask. The interpreter itself has no debug hooks:
+- while no breakpoints or watchpoints are set, resume runs the program with run (the fast path, with
+  superinstructions and bytecode compilation when they are enabled)
+- otherwise resume steps through the program with step and checks the breakpoints and watchpoints between
+  two instructions (the instrumented path)
+So the same interpreter serves normal runs and debugging, and a run that is not being debugged pays nothing.
+
+A watchpoint stops the program after an instruction that changed the watched register or memory address.
+Breakpoints stop before the instruction at the address runs, resume never stops at the address it starts from.
+
+With enableTimeTravel the session keeps checkpoints (see Moncky2TimeTravel) and can also run backwards:
+stepBack undoes instructions, and reverseResume goes back to the last breakpoint or watchpoint the program passed,
+for example to the instruction that wrote a wrong value in memory.
+
+Usage: Moncky2Debugger [code file or .hex image] [-checkpoint N], then commands on standard input:
+    b <address or :label>   set or remove a breakpoint      w r<n>      watch or unwatch a register
+    m <address>             watch or unwatch memory         s [n]       step n instructions (default 1)
+    c                       continue                        u :label    run to a label
+    r                       print the registers             x <address> [n]   print n memory words
+    rs [n]                  step n instructions back        rc          continue backwards
+    q                       quit
+-checkpoint N takes a checkpoint every N instructions for rs and rc (default 10000, 0 turns reverse execution off)
+ */
+public class Moncky2Debugger {
+
+    public enum StopReason {
+        STEP, BREAKPOINT, REGISTER_WATCHPOINT, MEMORY_WATCHPOINT, LIMIT, HALTED
+    }
+
+    //instructions between two checkpoints of the command line debugger
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = 10_000;
+    //one bit per address, 65536 addresses
+    private static final int BITMAP_LONGS = Moncky2Memory.WORDS / 64;
+
+    private final Moncky2Interpreter interpreter;
+    private final long[] breakpoints = new long[BITMAP_LONGS];
+    private final long[] memoryWatches = new long[BITMAP_LONGS];
+    //bit n is set when register n is watched
+    private int registerWatches = 0;
+    private int breakpointCount = 0;
+    private int memoryWatchCount = 0;
+    //registers before the instruction that is being stepped, used by the register watchpoints
+    private final short[] before = new short[16];
+
+    //what stopped the last step or resume
+    private StopReason stopReason = null;
+    private int watchedRegister = -1;
+    private int watchedAddress = -1;
+    private short oldValue = 0;
+    private short newValue = 0;
+    //checkpoints for reverse execution, null when it is off
+    private Moncky2TimeTravel timeTravel = null;
+
+    /**
+     * constructor, starts a debug session on an interpreter with loaded code (loadCode or loadImage)
+     * @param interpreter interpreter to debug, its program continues from register 15
+     */
+    public Moncky2Debugger(Moncky2Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    public static void main(String[] args) {
+        String file = args.length > 0 && !args[0].startsWith("-") ? args[0] : "moncky2in/code.txt";
+        long interval = DEFAULT_CHECKPOINT_INTERVAL;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("-checkpoint")) interval = Long.parseLong(args[i + 1]);
+        }
+        Moncky2Interpreter m2i = new Moncky2Interpreter();
+        try {
+            if (file.endsWith(".hex")) m2i.loadImage(HexImage.read(Path.of(file)));
+            else m2i.loadCode(Files.readString(Path.of(file)));
+        }
+        catch (IOException e) {
+            System.out.println("no code file found at " + file);
+            throw new RuntimeException(e);
+        }
+        Moncky2Debugger debugger = new Moncky2Debugger(m2i);
+        if (interval > 0) debugger.enableTimeTravel(interval);
+        System.out.println(debugger.describeNext());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            System.out.print("(debug) ");
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts[0].equals("q")) break;
+                try {
+                    debugger.runCommand(parts);
+                }
+                catch (RuntimeException e) {
+                    System.out.println(e.getMessage());
+                }
+                System.out.print("(debug) ");
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //runs one command of the interactive debugger
+    private void runCommand(String[] parts) {
+        String argument = parts.length > 1 ? parts[1] : null;
+        switch (parts[0]) {
+            case "b": {
+                int address = address(argument);
+                if (hasBreakpoint(address)) removeBreakpoint(address);
+                else addBreakpoint(address);
+                System.out.println((hasBreakpoint(address) ? "breakpoint at " : "removed breakpoint at ") + address);
+                break;
+            }
+            case "w": {
+                int number = registerNumber(argument);
+                if (isWatched(number)) unwatchRegister(number);
+                else watchRegister(number);
+                System.out.println((isWatched(number) ? "watching r" : "stopped watching r") + number);
+                break;
+            }
+            case "m": {
+                int address = address(argument);
+                if (isWatchedMemory(address)) unwatchMemory(address);
+                else watchMemory(address);
+                System.out.println((isWatchedMemory(address) ? "watching memory at " : "stopped watching memory at ") + address);
+                break;
+            }
+            case "s":
+                step(argument == null ? 1 : Long.parseLong(argument));
+                System.out.println(describeStop());
+                break;
+            case "c":
+                resume();
+                System.out.println(describeStop());
+                break;
+            case "u":
+                runToLabel(argument);
+                System.out.println(describeStop());
+                break;
+            case "rs":
+                stepBack(argument == null ? 1 : Long.parseLong(argument));
+                System.out.println(describeStop());
+                break;
+            case "rc":
+                reverseResume();
+                System.out.println(describeStop());
+                break;
+            case "r": {
+                short[] register = interpreter.getRegister();
+                for (int i = 0; i < register.length; i++) System.out.println("r" + i + " = " + register[i]);
+                System.out.println("flags = " + interpreter.getFlags() + ", instructions = " + interpreter.getInstructionCount());
+                break;
+            }
+            case "x": {
+                int address = address(argument);
+                int count = parts.length > 2 ? Integer.parseInt(parts[2]) : 1;
+                for (int i = 0; i < count; i++) {
+                    int at = (address + i) & 0xFFFF;
+                    System.out.println("memory at #" + at + ": " + interpreter.getMemory().read(at));
+                }
+                break;
+            }
+            default:
+                System.out.println("unknown command " + parts[0] + " (b, w, m, s, c, u, r, x, rs, rc, q)");
+        }
+    }
+
+    //reads a register as r0 to r15
+    private static int registerNumber(String argument) {
+        if (argument == null || !argument.startsWith("r")) throw new RuntimeException("expected a register r0-r15");
+        int number = Integer.parseInt(argument.substring(1));
+        if (number < 0 || number > 15) throw new RuntimeException("no register with number " + number);
+        return number;
+    }
+
+    //reads an address as a number (10, 0x1f) or a label
+    private int address(String argument) {
+        if (argument == null) throw new RuntimeException("missing address");
+        if (argument.startsWith(":")) return labelAddress(argument);
+        return Integer.decode(argument) & 0xFFFF;
+    }
+
+    /**
+     * this method finds the address of the first instruction after a label of the loaded code
+     * @param label label including the ':'
+     * @return instruction address
+     */
+    public int labelAddress(String label) {
+        SymbolTable symbolTable = interpreter.getSymbolTable();
+        if (symbolTable == null || !symbolTable.contains(label)) throw new RuntimeException("label " + label + " not found in code");
+        //the value of a label is the instruction before it (jumps add one)
+        return (symbolTable.getValue(label) + 1) & 0xFFFF;
+    }
+
+    public void addBreakpoint(int address) {
+        if (setBit(breakpoints, address, true)) breakpointCount++;
+    }
+
+    public void removeBreakpoint(int address) {
+        if (setBit(breakpoints, address, false)) breakpointCount--;
+    }
+
+    public boolean hasBreakpoint(int address) {
+        return getBit(breakpoints, address);
+    }
+
+    public void watchRegister(int number) {
+        registerWatches |= 1 << number;
+    }
+
+    public void unwatchRegister(int number) {
+        registerWatches &= ~(1 << number);
+    }
+
+    public boolean isWatched(int number) {
+        return (registerWatches & (1 << number)) != 0;
+    }
+
+    public void watchMemory(int address) {
+        if (setBit(memoryWatches, address, true)) memoryWatchCount++;
+    }
+
+    public void unwatchMemory(int address) {
+        if (setBit(memoryWatches, address, false)) memoryWatchCount--;
+    }
+
+    public boolean isWatchedMemory(int address) {
+        return getBit(memoryWatches, address);
+    }
+
+    //removes every breakpoint and watchpoint, resume uses the fast path again
+    public void clear() {
+        Arrays.fill(breakpoints, 0);
+        Arrays.fill(memoryWatches, 0);
+        breakpointCount = 0;
+        memoryWatchCount = 0;
+        registerWatches = 0;
+    }
+
+    //true when resume has to check every instruction
+    public boolean isInstrumented() {
+        return breakpointCount > 0 || memoryWatchCount > 0 || registerWatches != 0;
+    }
+
+    /**
+     * this method runs one instruction
+     * @return HALTED, a watchpoint the instruction triggered, or STEP
+     */
+    public StopReason step() {
+        return step(1);
+    }
+
+    /**
+     * this method runs instructions one by one, it does not stop at breakpoints but does stop at watchpoints
+     * @param count number of instructions to run
+     * @return HALTED, a watchpoint, or STEP after count instructions
+     */
+    public StopReason step(long count) {
+        for (long i = 0; i < count; i++) {
+            if (stepChecked()) return stopReason;
+        }
+        return stop(StopReason.STEP);
+    }
+
+    /**
+     * this method continues the program until it halts or hits a breakpoint or watchpoint
+     * @return the reason it stopped
+     */
+    public StopReason resume() {
+        return resume(Long.MAX_VALUE);
+    }
+
+    /**
+     * this method continues the program until it halts, hits a breakpoint or watchpoint, or ran maxInstructions
+     * @param maxInstructions maximum number of instructions to run
+     * @return the reason it stopped
+     */
+    public StopReason resume(long maxInstructions) {
+        if (interpreter.isHalted()) return stop(StopReason.HALTED);
+        if (!isInstrumented()) {
+            //nothing to check: the fast path, without any per-instruction hook
+            boolean halted = timeTravel != null ? timeTravel.run(maxInstructions) : interpreter.run(maxInstructions);
+            return stop(halted ? StopReason.HALTED : StopReason.LIMIT);
+        }
+        for (long i = 0; i < maxInstructions; i++) {
+            //the breakpoint at the address the program continues from was already reported
+            if (i > 0 && breakpointCount > 0 && getBit(breakpoints, interpreter.getRegister()[15] & 0xFFFF)) {
+                return stop(StopReason.BREAKPOINT);
+            }
+            if (stepChecked()) return stopReason;
+        }
+        return stop(StopReason.LIMIT);
+    }
+
+    /**
+     * this method continues the program until it reaches the first instruction after a label
+     * @param label label including the ':'
+     * @return BREAKPOINT when it reached the label, or another reason it stopped first
+     */
+    public StopReason runToLabel(String label) {
+        int address = labelAddress(label);
+        boolean existing = hasBreakpoint(address);
+        addBreakpoint(address);
+        try {
+            return resume();
+        } finally {
+            if (!existing) removeBreakpoint(address);
+        }
+    }
+
+    /**
+     * this method turns on reverse execution: from now on the session keeps checkpoints of the program
+     * @param interval instructions between two checkpoints (see Moncky2TimeTravel)
+     */
+    public void enableTimeTravel(long interval) {
+        timeTravel = new Moncky2TimeTravel(interpreter, interval);
+    }
+
+    //getter for the checkpoints of the session, null when reverse execution is off
+    public Moncky2TimeTravel getTimeTravel() {
+        return timeTravel;
+    }
+
+    /**
+     * this method undoes instructions, breakpoints and watchpoints are not checked
+     * @param count number of instructions to go back, it stops at the first checkpoint when there aren't that many
+     * @return STEP, or LIMIT when it reached the first checkpoint before count instructions
+     */
+    public StopReason stepBack(long count) {
+        Moncky2TimeTravel timeTravel = requireTimeTravel();
+        long target = timeTravel.getPosition() - count;
+        timeTravel.stepBack(count);
+        return stop(target < timeTravel.getFirstPosition() ? StopReason.LIMIT : StopReason.STEP);
+    }
+
+    /**
+     * this method runs the program backwards to the last breakpoint or watchpoint it passed
+     * a breakpoint stops before its instruction, a watchpoint after the instruction that changed the value,
+     * the same states resume stops at
+     * @return the reason of the stop, or LIMIT when nothing was found back to the first checkpoint
+     */
+    public StopReason reverseResume() {
+        Moncky2TimeTravel timeTravel = requireTimeTravel();
+        long end = timeTravel.getPosition();
+        if (!isInstrumented()) {
+            //nothing can stop the program, so it goes back to the start
+            timeTravel.goTo(timeTravel.getFirstPosition());
+            return stop(StopReason.LIMIT);
+        }
+        //every stretch between a checkpoint and end is run again, newest stretch first, until it contains a stop
+        while (end > timeTravel.getFirstPosition()) {
+            long start = timeTravel.rewindBefore(end);
+            long found = -1;
+            StopReason foundReason = null;
+            int foundRegister = -1;
+            int foundAddress = -1;
+            short foundOld = 0;
+            short foundNew = 0;
+            if (hasBreakpoint(interpreter.getRegister()[15] & 0xFFFF)) {
+                found = start;
+                foundReason = StopReason.BREAKPOINT;
+            }
+            while (timeTravel.getPosition() < end) {
+                StopReason reason = resume(end - timeTravel.getPosition());
+                if (reason == StopReason.LIMIT || reason == StopReason.HALTED || timeTravel.getPosition() >= end) break;
+                found = timeTravel.getPosition();
+                foundReason = reason;
+                foundRegister = watchedRegister;
+                foundAddress = watchedAddress;
+                foundOld = oldValue;
+                foundNew = newValue;
+            }
+            if (foundReason != null) {
+                timeTravel.goTo(found);
+                stop(foundReason);
+                watchedRegister = foundRegister;
+                watchedAddress = foundAddress;
+                oldValue = foundOld;
+                newValue = foundNew;
+                return foundReason;
+            }
+            end = start;
+        }
+        timeTravel.goTo(timeTravel.getFirstPosition());
+        return stop(StopReason.LIMIT);
+    }
+
+    private Moncky2TimeTravel requireTimeTravel() {
+        if (timeTravel == null) throw new RuntimeException("reverse execution is off (see enableTimeTravel)");
+        return timeTravel;
+    }
+
+    //runs one instruction and checks the watchpoints, returns true when the program has to stop
+    private boolean stepChecked() {
+        short[] register = interpreter.getRegister();
+        int address = -1;
+        short memoryBefore = 0;
+        if (memoryWatchCount > 0) {
+            int instruction = interpreter.getNextInstruction();
+            if ((instruction & 0xFF) == CommandDecoder.OP_ST) {
+                address = register[CommandDecoder.registerB(instruction)] & 0xFFFF;
+                if (getBit(memoryWatches, address)) memoryBefore = interpreter.getMemory().read(address);
+                else address = -1;
+            }
+        }
+        if (registerWatches != 0) System.arraycopy(register, 0, before, 0, before.length);
+        boolean halted = timeTravel != null ? timeTravel.step() : interpreter.step();
+        if (address >= 0 && interpreter.getMemory().read(address) != memoryBefore) {
+            watchedAddress = address;
+            oldValue = memoryBefore;
+            newValue = interpreter.getMemory().read(address);
+            stop(StopReason.MEMORY_WATCHPOINT);
+            return true;
+        }
+        for (int watches = registerWatches; watches != 0; watches &= watches - 1) {
+            int number = Integer.numberOfTrailingZeros(watches);
+            if (register[number] != before[number]) {
+                watchedRegister = number;
+                oldValue = before[number];
+                newValue = register[number];
+                stop(StopReason.REGISTER_WATCHPOINT);
+                return true;
+            }
+        }
+        if (halted) {
+            stop(StopReason.HALTED);
+            return true;
+        }
+        return false;
+    }
+
+    private StopReason stop(StopReason reason) {
+        if (reason != StopReason.REGISTER_WATCHPOINT) watchedRegister = -1;
+        if (reason != StopReason.MEMORY_WATCHPOINT) watchedAddress = -1;
+        stopReason = reason;
+        return reason;
+    }
+
+    //sets or clears a bit, returns true when the bit changed
+    private static boolean setBit(long[] bitmap, int address, boolean value) {
+        address &= 0xFFFF;
+        boolean old = getBit(bitmap, address);
+        if (value) bitmap[address >>> 6] |= 1L << address;
+        else bitmap[address >>> 6] &= ~(1L << address);
+        return old != value;
+    }
+
+    private static boolean getBit(long[] bitmap, int address) {
+        return (bitmap[(address & 0xFFFF) >>> 6] & (1L << address)) != 0;
+    }
+
+    /**
+     * this method describes why the program stopped and which instruction runs next
+     * @return text like "breakpoint at 6: st r10, (r11)"
+     */
+    public String describeStop() {
+        String reason;
+        switch (stopReason == null ? StopReason.STEP : stopReason) {
+            case BREAKPOINT: reason = "breakpoint"; break;
+            case REGISTER_WATCHPOINT: reason = "r" + watchedRegister + " changed from " + oldValue + " to " + newValue + ","; break;
+            case MEMORY_WATCHPOINT: reason = "memory at #" + watchedAddress + " changed from " + oldValue + " to " + newValue + ","; break;
+            case LIMIT: reason = "stopped"; break;
+            case HALTED: return "halted after " + interpreter.getInstructionCount() + " instructions";
+            default: reason = "stepped";
+        }
+        return reason + " " + describeNext();
+    }
+
+    //the next instruction as "at 6: st r10, (r11)"
+    public String describeNext() {
+        return "at " + (interpreter.getRegister()[15] & 0xFFFF) + ": " + CommandDecoder.toText(interpreter.getNextInstruction());
+    }
+
+    //getter for the reason the last step or resume stopped, null before the first one
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    //getter for the register that triggered the last register watchpoint, -1 otherwise
+    public int getWatchedRegister() {
+        return watchedRegister;
+    }
+
+    //getter for the address that triggered the last memory watchpoint, -1 otherwise
+    public int getWatchedAddress() {
+        return watchedAddress;
+    }
+
+    //getter for the value before the instruction that triggered the last watchpoint
+    public short getOldValue() {
+        return oldValue;
+    }
+
+    //getter for the value after the instruction that triggered the last watchpoint
+    public short getNewValue() {
+        return newValue;
+    }
+
+    //getter for the interpreter of this session
+    public Moncky2Interpreter getInterpreter() {
+        return interpreter;
+    }
+}
@@ -2,27 +2,45 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
 
 public class Moncky2Interpreter {
 
     //a list of registers for the cpu. r0-r15
     private final short[] register = new short[16];
-    //"ram" memory storing 65536 16-bit numbers
-    private final short[] memory = new short[65536];
+    //"ram" memory storing 65536 16-bit numbers (an array by default, see setMemory for a memory-mapped file, and fork)
+    private Moncky2Memory memory;
     //stores the result of the previous ALU operation
     private short ALU = 0;
-    //flags for the 4 ALU outputs. can either be 1 or 0
-    private short FLAG_carry = 0;
-    private short FLAG_zero = 0;
-    private short FLAG_sign = 0;
-    private short FLAG_overflow = 0;
+    //flags for the 4 ALU outputs, packed into one number (Moncky2ALU.FLAG_CARRY, FLAG_ZERO, FLAG_SIGN, FLAG_OVERFLOW)
+    private int flags = 0;
 
     //list of commands/instructions without any blank lines, comments, or labels
     private String[] commands;
     //list of Commands/instructions including all the spaces comments and labels
-    //used when checking for position of a label and stores all the raw code
     private String[] commandsWithLabels;
-    public ArrayList<String> compiledBinaryCommands = new ArrayList<>();
+    //value and line of every label, built once when the code is loaded
+    private SymbolTable symbolTable;
+    //commands decoded into instruction words (see CommandDecoder), so running them needs no text parsing
+    private int[] program;
+    //optional superinstruction stage (null when disabled) and the program it produced
+    private SuperinstructionOptimizer optimizer = null;
+    private int[] fusedProgram;
+    //optional bytecode compiler (null when disabled), used instead of the run loop when the program can be compiled
+    private Moncky2BytecodeCompiler bytecodeCompiler = null;
+    private Moncky2CompiledProgram compiled = null;
+    //state of the loaded program: fetched from memory (loadImage) or decoded (loadCode), and whether it has halted
+    private boolean fetchFromMemory = false;
+    private boolean halted = false;
+    //optional profiler (null when disabled), counts every instruction the run loop executes
+    private Moncky2Profiler profiler = null;
+    //optional tracer (null when disabled), writes a record of every instruction the run loop executes
+    private Moncky2Tracer tracer = null;
+    //number of instructions executed by the last interpretCode call
+    private long instructionCount = 0;
+    //receives the 16-bit instruction word of every executed instruction, only when a recording mode is enabled
+    private IntConsumer recorder = null;
 
     /**
      * constructor with code parameter
@@ -30,13 +48,22 @@ public class Moncky2Interpreter {
      * @param code raw code text from source code file
      */
     public Moncky2Interpreter(String code){
+        memory = new ArrayMemory();
+        symbolTable = new SymbolTable(code.split("\n"));
         commandsWithLabels = code.split("\n");
         commandsWithLabels = stripEmptyCommands(commandsWithLabels);
         commands = removeLabelsAndComments(commandsWithLabels);
     }
 
     //default constructor
-    public Moncky2Interpreter(){}
+    public Moncky2Interpreter(){
+        memory = new ArrayMemory();
+    }
+
+    //constructor for fork, the memory is a fork of the memory of the original (no array is allocated)
+    private Moncky2Interpreter(Moncky2Memory memory) {
+        this.memory = memory;
+    }
 
 
     /*
@@ -46,8 +73,29 @@ public class Moncky2Interpreter {
     - Create a new interpreter instance
     - run .interpretCode to read the raw commands
     - after all code is simulated, print the CPU and memory information
+    When a .hex file is given as argument, that memory image is loaded and run instead of moncky2in/code.txt
+    "-ram file" (after the other arguments) runs on a memory-mapped RAM image file that keeps the memory after the run
+    "-trace file" (after the other arguments) writes a binary trace of every instruction, see Moncky2TraceDecoder
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].endsWith(".hex")) {
+            short[] image;
+            try {
+                image = HexImage.read(Path.of(args[0]));
+            }
+            catch (IOException e) {
+                System.out.println("no memory image found at " + args[0]);
+                throw new RuntimeException(e);
+            }
+            Moncky2Interpreter m2i = new Moncky2Interpreter();
+            useRamImage(m2i, args);
+            useTracer(m2i, args);
+            m2i.interpretImage(image);
+            closeTracer(m2i);
+            m2i.printCPU();
+            return;
+        }
+
         String codeContent;
         try {
             Path filePath = Path.of("moncky2in/code.txt");
@@ -59,37 +107,407 @@ public class Moncky2Interpreter {
         }
 
         Moncky2Interpreter m2i = new Moncky2Interpreter();
+        useRamImage(m2i, args);
+        useTracer(m2i, args);
+        //"-fuse" runs the code with superinstructions and prints how much each one was used
+        boolean fuse = args.length > 0 && args[0].equals("-fuse");
+        m2i.setSuperinstructions(fuse);
+        //"-jit" compiles the code to JVM bytecode before running it
+        m2i.setBytecodeCompilation(args.length > 0 && args[0].equals("-jit"));
+        //"-profile" counts every instruction and writes moncky2out/profile.txt and moncky2out/profile.json
+        boolean profile = args.length > 0 && args[0].equals("-profile");
+        if (profile) m2i.setProfiler(new Moncky2Profiler());
         m2i.interpretCode(codeContent);
+        closeTracer(m2i);
         m2i.printCPU();
+        if (fuse) System.out.print(m2i.getSuperinstructionOptimizer().getReport(m2i.getInstructionCount()));
+        if (profile) {
+            System.out.print(m2i.getProfiler().getReport());
+            try {
+                m2i.getProfiler().writeReports(Path.of("moncky2out/profile.txt"), Path.of("moncky2out/profile.json"));
+            }
+            catch (IOException e) {
+                System.out.println("could not write profile to moncky2out directory");
+                throw new RuntimeException(e);
+            }
+        }
 
     }
 
+    //sets a MappedFileMemory as memory when the arguments contain "-ram file"
+    private static void useRamImage(Moncky2Interpreter m2i, String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (!args[i].equals("-ram")) continue;
+            try {
+                m2i.setMemory(new MappedFileMemory(Path.of(args[i + 1])));
+            }
+            catch (IOException e) {
+                System.out.println("could not map RAM image " + args[i + 1]);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    //sets a Moncky2Tracer when the arguments contain "-trace file"
+    private static void useTracer(Moncky2Interpreter m2i, String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (!args[i].equals("-trace")) continue;
+            try {
+                m2i.setTracer(new Moncky2Tracer(Path.of(args[i + 1])));
+            }
+            catch (IOException e) {
+                System.out.println("could not create trace file " + args[i + 1]);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    //writes the rest of the trace and closes the trace file
+    private static void closeTracer(Moncky2Interpreter m2i) {
+        if (m2i.getTracer() == null) return;
+        try {
+            m2i.getTracer().close();
+        }
+        catch (IOException e) {
+            System.out.println("could not write trace file");
+            throw new RuntimeException(e);
+        }
+        System.out.println("trace: " + m2i.getTracer().getRecordCount() + " instructions");
+    }
+
     /**
      * this method goes through every single command and updates the registers and memory accordingly
      * it also resets the ALU variable and register 15
      * @param moncky2Code raw code that needs to be executed/simulated
      */
     public void interpretCode(String moncky2Code) {
+        loadCode(moncky2Code);
+        run(Long.MAX_VALUE);
+    }
+
+    /**
+     * this method loads code without running it, run executes it (in one go or in slices)
+     * it resets the ALU variable, the flags, register 15, and the instruction count
+     * @param moncky2Code raw code that needs to be executed/simulated
+     */
+    public void loadCode(String moncky2Code) {
         //reset the code attributes
+        symbolTable = new SymbolTable(moncky2Code.split("\n"));
         commandsWithLabels = moncky2Code.split("\n");
         commandsWithLabels = stripEmptyCommands(commandsWithLabels);
         commands = removeLabelsAndComments(commandsWithLabels);
+        //labels are resolved before running, so a missing label is reported once instead of when the instruction runs
+        ArrayList<String> missingLabels = symbolTable.findMissingLabels(commands);
+        if (!missingLabels.isEmpty()) {
+            throw new RuntimeException("label(s) not found in code: " + String.join(", ", missingLabels));
+        }
         //reset ALU and register 15 to start code at line 0
         ALU = 0;
-        FLAG_overflow = 0;
-        FLAG_sign = 0;
-        FLAG_zero = 0;
-        FLAG_carry = 0;
+        flags = 0;
         register[15] = 0;
-        //halt command returns -1, ending the simulation
-        //jump commands/instructions return positive numbers, which will update the current code line that's executed
-        //all other commands/instructions return 0, which leads to the next command to be read as normal
+        //decode all commands once. The loop below only works with the decoded instruction words
+        program = CommandDecoder.decode(commands, symbolTable);
+        if (optimizer != null) fusedProgram = optimizer.optimize(program);
+        instructionCount = 0;
+        fetchFromMemory = false;
+        halted = false;
+        if (profiler != null) profiler.reset(program.length, moncky2Code.split("\n"));
+        //commands that can only run as text, recording, and profiling need the run loop
+        compiled = null;
+        if (bytecodeCompiler != null && recorder == null && profiler == null && tracer == null && Moncky2BytecodeCompiler.canCompile(program)) {
+            compiled = bytecodeCompiler.compile(program);
+        }
+    }
+
+    /**
+     * this method continues the loaded program (loadCode or loadImage) for at most maxInstructions instructions
+     * a program can be run in slices: every call continues where the previous one stopped
+     * superinstructions can make a slice a few instructions longer than maxInstructions
+     * @param maxInstructions maximum number of instructions to run in this slice (Long.MAX_VALUE to run until halt)
+     * @return true if the program halted, false if the slice ended first
+     */
+    public boolean run(long maxInstructions) {
+        if (halted) return true;
+        if (compiled != null) halted = runCompiled(compiled, maxInstructions);
+        else halted = runProgram(fetchFromMemory, true, maxInstructions);
+        return halted;
+    }
+
+    /**
+     * this method runs exactly one instruction of the loaded program in the run loop
+     * superinstructions and bytecode compilation are not used, so register 15 always points at the next single instruction
+     * this is the instrumented path of Moncky2Debugger, run stays the fast path
+     * @return true if the program halted
+     */
+    public boolean step() {
+        if (halted) return true;
+        halted = runProgram(fetchFromMemory, false, 1);
+        return halted;
+    }
+
+    /**
+     * this method decodes the instruction register 15 points at, without running it
+     * @return decoded instruction (see CommandDecoder), OP_LEGACY for commands that are executed as text
+     */
+    public int getNextInstruction() {
+        if (fetchFromMemory) return CommandDecoder.WORD_DECODE_TABLE[memory.read(register[15] & 0xFFFF) & 0xFFFF];
+        return program[register[15]];
+    }
+
+    //true when the loaded program has halted
+    public boolean isHalted() {
+        return halted;
+    }
+
+    /**
+     * this method runs a program compiled by Moncky2BytecodeCompiler on the registers and memory of this interpreter
+     * @param compiled compiled version of the decoded program
+     * @param maxInstructions maximum number of instructions to run
+     * @return true if the program halted
+     */
+    private boolean runCompiled(Moncky2CompiledProgram compiled, long maxInstructions) {
+        try {
+            return compiled.run(register, memory, ALU, flags, maxInstructions);
+        } finally {
+            ALU = compiled.getALU();
+            flags = compiled.getFlags();
+            instructionCount += compiled.getInstructionCount();
+        }
+    }
+
+    /**
+     * this method loads a compiled memory image (see HexImage) at address 0 and runs it like the Moncky-2 does:
+     * every instruction is fetched from memory as a 16-bit word and decoded with CommandDecoder.WORD_DECODE_TABLE
+     * jumps work the same as in interpretCode, so images written by Moncky2Compiler give the same results
+     * memory addresses are unsigned 16-bit numbers, and a program can overwrite its own instructions
+     * @param image 16-bit words to load into memory, starting at address 0
+     */
+    public void interpretImage(short[] image) {
+        loadImage(image);
+        run(Long.MAX_VALUE);
+    }
+
+    /**
+     * this method loads a memory image at address 0 without running it, run executes it (in one go or in slices)
+     * @param image 16-bit words to load into memory, starting at address 0
+     */
+    public void loadImage(short[] image) {
+        memory.load(image);
+        program = null;
+        compiled = null;
+        ALU = 0;
+        flags = 0;
+        register[15] = 0;
+        instructionCount = 0;
+        fetchFromMemory = true;
+        halted = false;
+        if (profiler != null) profiler.reset(Moncky2Memory.WORDS, null);
+    }
+
+    /**
+     * this method runs the decoded program from the instruction in register 15 until a halt instruction
+     * every case does exactly what executeCommand does for the same command, without any parsing or allocation
+     * halt (or a jump to a negative line) ends the simulation
+     * jumps update register 15 to the line before the target, all other instructions continue with the next line
+     * @param fetchFromMemory true to fetch and decode instructions from memory (interpretImage) instead of the decoded program
+     * @param fuse false to run single instructions even when the superinstruction stage is enabled
+     * @param maxInstructions the loop stops before the next instruction once this many instructions ran
+     * @return true if the program halted, false if it stopped because of maxInstructions
+     */
+    private boolean runProgram(boolean fetchFromMemory, boolean fuse, long maxInstructions) {
+        final int[] program = this.program;
+        final IntConsumer recorder = this.recorder;
+        final Moncky2Profiler profiler = this.profiler;
+        final Moncky2Tracer tracer = this.tracer;
+        //superinstructions are only used for decoded source code (memory images can change while they run)
+        //and not while recording, profiling or tracing, so every executed instruction is recorded and counted
+        final int[] dispatchProgram = fuse && optimizer != null && !fetchFromMemory && recorder == null && profiler == null && tracer == null ? fusedProgram : program;
+        final long[] fusionCounts = optimizer != null ? optimizer.getExecutions() : null;
+        final short[] register = this.register;
+        final Moncky2Memory memory = this.memory;
+        final int[] decodeTable = CommandDecoder.WORD_DECODE_TABLE;
+        //memory images use unsigned 16-bit addresses, source code keeps failing on negative addresses like it always did
+        final int addressMask = fetchFromMemory ? 0xFFFF : -1;
+        long count = 0;
         while (true) {
-            int commandResult = executeCommand(commands[register[15]]);
-            if (commandResult < 0) break;
-            if (commandResult > 0) register[15] = (short) (commandResult);
+            //register 15 already points at the next instruction, so the next slice starts there
+            if (count >= maxInstructions) {
+                instructionCount += count;
+                return false;
+            }
+            int instruction;
+            if (fetchFromMemory) instruction = decodeTable[memory.read(register[15] & 0xFFFF) & 0xFFFF];
+            else instruction = dispatchProgram[register[15]];
+            if (profiler != null) profiler.record(register[15] & 0xFFFF, instruction, flags, register);
+            //commands executed as text (OP_LEGACY) are recorded by executeCommand
+            if (recorder != null && (instruction & 0xFF) != CommandDecoder.OP_LEGACY) {
+                int word = InstructionEncoder.encode(instruction);
+                if (word >= 0) recorder.accept(word);
+            }
+            int a = (instruction >> 8) & 0xF;
+            int b = (instruction >> 12) & 0xF;
+            int jumpTarget = 0;
+            //the tracer needs the address of the instruction and the memory address before the instruction changes them
+            int tracedPc = 0;
+            int tracedAddress = 0;
+            if (tracer != null) {
+                tracedPc = register[15] & 0xFFFF;
+                tracedAddress = register[b] & addressMask;
+            }
+            count++;
+            switch (instruction & 0xFF) {
+                case CommandDecoder.OP_HALT:
+                    if (tracer != null) tracer.record(tracedPc, instruction, tracedAddress, register, flags);
+                    instructionCount += count;
+                    return true;
+                case CommandDecoder.OP_LI:
+                    register[a] = (short) (instruction >> 16);
+                    break;
+                case CommandDecoder.OP_LD:
+                    register[a] = memory.read(register[b] & addressMask);
+                    break;
+                case CommandDecoder.OP_ST:
+                    memory.write(register[b] & addressMask, register[a]);
+                    break;
+                case CommandDecoder.OP_JP:
+                    register[15] = register[a];
+                    jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPC:
+                    if ((flags & Moncky2ALU.FLAG_CARRY) != 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPNC:
+                    if ((flags & Moncky2ALU.FLAG_CARRY) == 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPZ:
+                    if ((flags & Moncky2ALU.FLAG_ZERO) != 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPNZ:
+                    if ((flags & Moncky2ALU.FLAG_ZERO) == 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPS:
+                    if ((flags & Moncky2ALU.FLAG_SIGN) != 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPNS:
+                    if ((flags & Moncky2ALU.FLAG_SIGN) == 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPO:
+                    if ((flags & Moncky2ALU.FLAG_OVERFLOW) != 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_JPNO:
+                    if ((flags & Moncky2ALU.FLAG_OVERFLOW) == 0) jumpTarget = register[a];
+                    break;
+                case CommandDecoder.OP_NOP:
+                    applyALU(Moncky2ALU.nop(register, a, b));
+                    break;
+                case CommandDecoder.OP_OR:
+                    applyALU(Moncky2ALU.or(register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_AND:
+                    applyALU(Moncky2ALU.and(register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_XOR:
+                    applyALU(Moncky2ALU.xor(register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_ADD:
+                    applyALU(Moncky2ALU.add(register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_SUB:
+                    applyALU(Moncky2ALU.sub(register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_SHL:
+                case CommandDecoder.OP_SHR:
+                case CommandDecoder.OP_ASHR:
+                    applyALU(Moncky2ALU.shift(instruction & 0xFF, register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_NOT:
+                    applyALU(Moncky2ALU.not(register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_NEG:
+                    applyALU(Moncky2ALU.neg(register, a, b, flags));
+                    break;
+                case CommandDecoder.OP_SKIP:
+                    break;
+                //superinstructions: run every instruction of the sequence, then continue after its last instruction
+                case SuperinstructionOptimizer.OP_LI_SHL: {
+                    int pc = register[15];
+                    int li = program[pc];
+                    int shl = program[pc + 1];
+                    register[(li >> 8) & 0xF] = (short) (li >> 16);
+                    applyALU(Moncky2ALU.shift(CommandDecoder.OP_SHL, register, (shl >> 8) & 0xF, (shl >> 12) & 0xF, flags));
+                    register[15] = (short) (pc + 1);
+                    count += 1;
+                    fusionCounts[SuperinstructionOptimizer.OP_LI_SHL - SuperinstructionOptimizer.FIRST_FUSED]++;
+                    break;
+                }
+                case SuperinstructionOptimizer.OP_LI_LI_SHL: {
+                    int pc = register[15];
+                    int li1 = program[pc];
+                    int li2 = program[pc + 1];
+                    int shl = program[pc + 2];
+                    register[(li1 >> 8) & 0xF] = (short) (li1 >> 16);
+                    register[(li2 >> 8) & 0xF] = (short) (li2 >> 16);
+                    applyALU(Moncky2ALU.shift(CommandDecoder.OP_SHL, register, (shl >> 8) & 0xF, (shl >> 12) & 0xF, flags));
+                    register[15] = (short) (pc + 2);
+                    count += 2;
+                    fusionCounts[SuperinstructionOptimizer.OP_LI_LI_SHL - SuperinstructionOptimizer.FIRST_FUSED]++;
+                    break;
+                }
+                case SuperinstructionOptimizer.OP_SUB_JUMP: {
+                    int pc = register[15];
+                    int sub = program[pc];
+                    applyALU(Moncky2ALU.sub(register, (sub >> 8) & 0xF, (sub >> 12) & 0xF, flags));
+                    register[15] = (short) (pc + 1);
+                    jumpTarget = jump(program[pc + 1]);
+                    count += 1;
+                    fusionCounts[SuperinstructionOptimizer.OP_SUB_JUMP - SuperinstructionOptimizer.FIRST_FUSED]++;
+                    break;
+                }
+                case SuperinstructionOptimizer.OP_LI_JUMP: {
+                    int pc = register[15];
+                    register[a] = (short) (program[pc] >> 16);
+                    register[15] = (short) (pc + 1);
+                    jumpTarget = jump(program[pc + 1]);
+                    count += 1;
+                    fusionCounts[SuperinstructionOptimizer.OP_LI_JUMP - SuperinstructionOptimizer.FIRST_FUSED]++;
+                    break;
+                }
+                case SuperinstructionOptimizer.OP_LI_SUB_JUMP: {
+                    int pc = register[15];
+                    int sub = program[pc + 1];
+                    register[a] = (short) (program[pc] >> 16);
+                    applyALU(Moncky2ALU.sub(register, (sub >> 8) & 0xF, (sub >> 12) & 0xF, flags));
+                    register[15] = (short) (pc + 2);
+                    jumpTarget = jump(program[pc + 2]);
+                    count += 2;
+                    fusionCounts[SuperinstructionOptimizer.OP_LI_SUB_JUMP - SuperinstructionOptimizer.FIRST_FUSED]++;
+                    break;
+                }
+                case SuperinstructionOptimizer.OP_ALU_ALU: {
+                    int pc = register[15];
+                    int first = program[pc];
+                    int second = program[pc + 1];
+                    applyALU(Moncky2ALU.execute(first & 0xFF, register, (first >> 8) & 0xF, (first >> 12) & 0xF, flags));
+                    applyALU(Moncky2ALU.execute(second & 0xFF, register, (second >> 8) & 0xF, (second >> 12) & 0xF, flags));
+                    register[15] = (short) (pc + 1);
+                    count += 1;
+                    fusionCounts[SuperinstructionOptimizer.OP_ALU_ALU - SuperinstructionOptimizer.FIRST_FUSED]++;
+                    break;
+                }
+                case CommandDecoder.OP_INVALID:
+                    throw new RuntimeException("invalid instruction 0x" + Integer.toHexString((instruction >> 16) & 0xFFFF) + " at address " + (register[15] & 0xFFFF));
+                default:
+                    //commands the decoder could not read are executed as text, so they fail the same way as before
+                    jumpTarget = executeCommand(commands[register[15]]);
+                    break;
+            }
+            if (tracer != null) tracer.record(tracedPc, instruction, tracedAddress, register, flags);
+            if (jumpTarget < 0) break;
+            if (jumpTarget > 0) register[15] = (short) jumpTarget;
             register[15]++; //register 15 stores the current command executed
         }
+        instructionCount += count;
+        return true;
     }
 
     /**
@@ -98,19 +516,7 @@ public class Moncky2Interpreter {
      * @return - list of instructions Strings without empty lines, comments, and labels
      */
     public static String[] removeLabelsAndComments(String[] rawCommands){
-        ArrayList<String> commandsList = new ArrayList<>();
-        for (String command : rawCommands) {
-            command = command.strip();
-            if (!command.startsWith(":") && !command.startsWith(";") && !command.isEmpty()){
-                commandsList.add(command);
-            }
-        }
-        //convert ArrayList back to array
-        String[] commands = new String[commandsList.size()];
-        for (int i = 0; i < commands.length; i++) {
-            commands[i] = commandsList.get(i);
-        }
-        return commands;
+        return keepLines(rawCommands, true, true);
     }
 
     /**
@@ -119,39 +525,110 @@ public class Moncky2Interpreter {
      * @return - list of instructions Strings without empty lines
      */
     public static String[] stripEmptyCommands(String[] rawCommands){
-        rawCommands = stripComments(rawCommands);
-        ArrayList<String> commandsList = new ArrayList<>();
-        for (String command : rawCommands) {
-            command = command.strip();
-            if (!command.isEmpty()){
-                commandsList.add(command);
-            }
-        }
-        //convert ArrayList back to array
-        String[] commands = new String[commandsList.size()];
-        for (int i = 0; i < commands.length; i++) {
-            commands[i] = commandsList.get(i);
-        }
-        return commands;
+        return keepLines(rawCommands, false, true);
     }
     public static String[] stripComments(String[] rawCommands){
-        ArrayList<String> commandsList = new ArrayList<>();
+        return keepLines(rawCommands, false, false);
+    }
+
+    //strips every line and keeps the ones the lexer does not see as a comment (or a label, or empty)
+    private static String[] keepLines(String[] rawCommands, boolean removeLabels, boolean removeEmpty){
+        String[] commands = new String[rawCommands.length];
+        int count = 0;
         for (String command : rawCommands) {
-            command = command.strip();
-            if (!command.startsWith(";")){
-                commandsList.add(command);
-            }
+            int kind = Moncky2Lexer.firstKind(command);
+            if (kind == Moncky2Lexer.COMMENT) continue;
+            if (removeLabels && kind == Moncky2Lexer.LABEL) continue;
+            if (removeEmpty && kind == Moncky2Lexer.NONE) continue;
+            commands[count++] = command.strip();
         }
-        //convert ArrayList back to array
-        String[] commands = new String[commandsList.size()];
-        for (int i = 0; i < commands.length; i++) {
-            commands[i] = commandsList.get(i);
+        return Arrays.copyOf(commands, count);
+    }
+    //getter for the symbol table of the loaded code
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * this method runs a decoded jump instruction (jp or a conditional jump) the same way the run loop does
+     * @param instruction decoded jump instruction
+     * @return the line to jump to, or 0 when the condition is false
+     */
+    private int jump(int instruction) {
+        int target = register[(instruction >> 8) & 0xF];
+        switch (instruction & 0xFF) {
+            case CommandDecoder.OP_JP:
+                register[15] = (short) target;
+                return target;
+            case CommandDecoder.OP_JPC: return (flags & Moncky2ALU.FLAG_CARRY) != 0 ? target : 0;
+            case CommandDecoder.OP_JPNC: return (flags & Moncky2ALU.FLAG_CARRY) == 0 ? target : 0;
+            case CommandDecoder.OP_JPZ: return (flags & Moncky2ALU.FLAG_ZERO) != 0 ? target : 0;
+            case CommandDecoder.OP_JPNZ: return (flags & Moncky2ALU.FLAG_ZERO) == 0 ? target : 0;
+            case CommandDecoder.OP_JPS: return (flags & Moncky2ALU.FLAG_SIGN) != 0 ? target : 0;
+            case CommandDecoder.OP_JPNS: return (flags & Moncky2ALU.FLAG_SIGN) == 0 ? target : 0;
+            case CommandDecoder.OP_JPO: return (flags & Moncky2ALU.FLAG_OVERFLOW) != 0 ? target : 0;
+            default: return (flags & Moncky2ALU.FLAG_OVERFLOW) == 0 ? target : 0;
         }
-        return commands;
     }
-    //getter for compiledBinaryCommands. Only used in compiler
-    public ArrayList<String> getCompiledBinaryCommands() {
-        return compiledBinaryCommands;
+
+    /**
+     * this method turns the superinstruction stage on or off for the next interpretCode call
+     * @param enabled true to merge common instruction sequences into superinstructions (see SuperinstructionOptimizer)
+     */
+    public void setSuperinstructions(boolean enabled) {
+        optimizer = enabled ? new SuperinstructionOptimizer() : null;
+    }
+
+    /**
+     * this method turns compilation to JVM bytecode on or off for the next interpretCode call
+     * programs with commands the decoder could not read, and runs with a recorder, still use the run loop
+     * @param enabled true to compile programs with Moncky2BytecodeCompiler before running them
+     */
+    public void setBytecodeCompilation(boolean enabled) {
+        bytecodeCompiler = enabled ? new Moncky2BytecodeCompiler() : null;
+    }
+
+    /**
+     * this method sets the profiler for the next loadCode/loadImage call (and the runs after it)
+     * a profiled program always runs in the run loop, without superinstructions or bytecode compilation
+     * @param profiler profiler that counts every executed instruction, or null to stop profiling (the default)
+     */
+    public void setProfiler(Moncky2Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    //getter for the profiler, null when profiling is disabled
+    public Moncky2Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * this method sets the tracer for the next loadCode/loadImage call (and the runs after it)
+     * a traced program always runs in the run loop, without superinstructions or bytecode compilation
+     * the caller closes the tracer after the last run
+     * @param tracer tracer that writes a record of every executed instruction, or null to stop tracing (the default)
+     */
+    public void setTracer(Moncky2Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    //getter for the tracer, null when tracing is disabled
+    public Moncky2Tracer getTracer() {
+        return tracer;
+    }
+
+    //getter for the superinstruction stage and its statistics, null when it is disabled
+    public SuperinstructionOptimizer getSuperinstructionOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * this method enables recording: every executed instruction is passed to the recorder as a 16-bit instruction word
+     * use a bounded or streaming recorder (RecentInstructionBuffer, HexStreamRecorder) for long runs
+     * @param recorder receiver of the instruction words, or null to stop recording (the default)
+     */
+    public void setRecorder(IntConsumer recorder) {
+        this.recorder = recorder;
     }
 
     //this method prints registers 0-15 and all memory/ram locations not equal to 0
@@ -159,13 +636,97 @@ public class Moncky2Interpreter {
         for (int i = 0; i < register.length; i++) {
             System.out.println("register " + i + ": " + register[i]);
         }
-        for (int i = 0; i < memory.length; i++) {
-            if (memory[i] != 0) {
-                System.out.println("memory at #" + i + ": " + memory[i]);
+        for (int i = 0; i < Moncky2Memory.WORDS; i++) {
+            if (memory.read(i) != 0) {
+                System.out.println("memory at #" + i + ": " + memory.read(i));
             }
         }
     }
 
+    //getter for the 16 registers of the cpu
+    public short[] getRegister() {
+        return register;
+    }
+
+    //getter for the memory of the cpu
+    public Moncky2Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * this method replaces the memory of the cpu, the next runs read and write this memory
+     * @param memory new memory, for example a MappedFileMemory to start from and keep a RAM image on disk
+     */
+    public void setMemory(Moncky2Memory memory) {
+        this.memory = memory;
+    }
+
+    //getter for the value of the last ALU operation
+    public short getALU() {
+        return ALU;
+    }
+
+    //getter for the packed ALU flags (see Moncky2ALU.FLAG_CARRY, FLAG_ZERO, FLAG_SIGN, FLAG_OVERFLOW)
+    public int getFlags() {
+        return flags;
+    }
+
+    //getter for the number of instructions executed by the last interpretCode call
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * this method clones a paused interpreter: the fork has the same loaded program, registers, flags, and memory,
+     * and continues from the same instruction. Memory is shared copy-on-write (see PagedMemory), so forking
+     * copies no memory words and each instance only copies the pages it writes
+     * the default ArrayMemory is replaced by a PagedMemory with the same words on the first fork
+     * the profiler, tracer, and recorder are not copied, the fork runs without them
+     * @return the fork, it can run on another thread than this interpreter
+     */
+    public Moncky2Interpreter fork() {
+        if (memory instanceof ArrayMemory) memory = PagedMemory.copyOf(memory);
+        if (!(memory instanceof PagedMemory)) {
+            throw new RuntimeException("can't fork an interpreter with a " + memory.getClass().getSimpleName() + ", only with ArrayMemory or PagedMemory");
+        }
+        Moncky2Interpreter fork = new Moncky2Interpreter(((PagedMemory) memory).fork());
+        System.arraycopy(register, 0, fork.register, 0, register.length);
+        fork.ALU = ALU;
+        fork.flags = flags;
+        fork.commands = commands;
+        fork.commandsWithLabels = commandsWithLabels;
+        fork.symbolTable = symbolTable;
+        //the decoded program is never changed after loading, so it is shared
+        fork.program = program;
+        if (optimizer != null) {
+            fork.optimizer = new SuperinstructionOptimizer();
+            fork.fusedProgram = program != null ? fork.optimizer.optimize(program) : null;
+        }
+        if (bytecodeCompiler != null) fork.bytecodeCompiler = new Moncky2BytecodeCompiler();
+        fork.compiled = compiled != null ? compiled.copy() : null;
+        fork.fetchFromMemory = fetchFromMemory;
+        fork.halted = halted;
+        fork.instructionCount = instructionCount;
+        return fork;
+    }
+
+    /**
+     * this method puts the cpu back in an earlier state of the loaded program, memory is not changed
+     * the program continues from register 15, so the state has to come from the same program (see Moncky2TimeTravel)
+     * @param registers values of registers 0-15
+     * @param alu value of the last ALU operation
+     * @param flags packed ALU flags
+     * @param instructionCount number of instructions executed so far
+     * @param halted true if the program had halted
+     */
+    public void setState(short[] registers, short alu, int flags, long instructionCount, boolean halted) {
+        System.arraycopy(registers, 0, register, 0, register.length);
+        this.ALU = alu;
+        this.flags = flags;
+        this.instructionCount = instructionCount;
+        this.halted = halted;
+    }
+
     //getter for returning stripped command list
     public String[] getCommands() {
         return commands;
@@ -177,11 +738,19 @@ public class Moncky2Interpreter {
      * @return -1 to terminate code, positive number to jump to another instruction, or 0 for nothing
      */
     public int executeCommand(String command) {
-        String[] commandParts = CommandReader.getCommandParts(command);
+        int commandResult = executeCommandParts(CommandReader.getCommandParts(command));
+        //only commands that ran without errors are recorded
+        if (recorder != null) {
+            int word = InstructionEncoder.encode(CommandDecoder.decodeCommand(command, symbolTable));
+            if (word >= 0) recorder.accept(word);
+        }
+        return commandResult;
+    }
+
+    private int executeCommandParts(String[] commandParts) {
 
         //halt command. Stops execution (halt)
         if (commandParts[0].equalsIgnoreCase("halt")) {
-            compiledBinaryCommands.add("0000000000000000");
             return -1;
         }
         //load immediate command (li r, i)
@@ -199,24 +768,7 @@ public class Moncky2Interpreter {
             //- find label in code
             //- set the value to the place where the label is found
             if (commandParts[2].charAt(0) == ':'){
-                String label = commandParts[2];
-                immediateValue = -1;
-                int count = 0;
-                boolean found = false;
-                for (String commandWithLabel : commandsWithLabels) {
-                    if (!commandWithLabel.strip().startsWith(":") && !commandWithLabel.strip().startsWith(";")) {
-                        count++;
-                    }
-                    if (commandWithLabel.strip().startsWith(label)) {
-                        immediateValue = (short) (count-1);
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
-                    //throw an exception when no label is found in code
-                    throw new RuntimeException("label not found in code");
-                }
+                immediateValue = symbolTable.getValue(commandParts[2]);
             } else if (commandParts[2].startsWith("0x")) {
                 //load hex value
                 immediateValue = (short) NumberConverter.hexStringToDecimal(commandParts[2].substring(2));
@@ -237,8 +789,6 @@ public class Moncky2Interpreter {
             //load immediateValue into the register
             register[registerNumber] = immediateValue;
 
-            //add command to compiler
-            compiledBinaryCommands.add("0001" + NumberConverter.decimalToBinaryString(immediateValue, 8) + NumberConverter.decimalToBinaryString(registerNumber, 4));
             return 0;
         }
         if (commandParts[0].equals("ld")) {
@@ -247,10 +797,7 @@ public class Moncky2Interpreter {
             int secondRegisterNumber = getMemoryRegister2(commandParts[2]);
 
             //store value in RAM
-            register[firstRegisterNumber] = memory[register[secondRegisterNumber]];
-
-            //add the command to compiler
-            compiledBinaryCommands.add("10000000" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+            register[firstRegisterNumber] = memory.read(register[secondRegisterNumber]);
 
             return 0;
         }
@@ -260,10 +807,7 @@ public class Moncky2Interpreter {
             int secondRegisterNumber = getMemoryRegister2(commandParts[2]);
 
             //store value in RAM
-            memory[register[secondRegisterNumber]] = register[firstRegisterNumber];
-
-            //add the command to compiler
-            compiledBinaryCommands.add("10100000" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+            memory.write(register[secondRegisterNumber], register[firstRegisterNumber]);
 
             return 0;
         }
@@ -275,9 +819,6 @@ public class Moncky2Interpreter {
             //I will leave this just in case it breaks something again. Debugging jumps is a pain
             register[15] = register[registerNumber];
 
-            //add the command to compiler
-            compiledBinaryCommands.add("110000000000" + NumberConverter.decimalToBinaryString(registerNumber, 4));
-
             //return the code line to jump to
             return register[registerNumber];
         }
@@ -288,63 +829,47 @@ public class Moncky2Interpreter {
             switch (commandParts[0].substring(2)){
                 //carry flag
                 case "c":
-                    if (FLAG_carry == (short) 1){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "000" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_CARRY) != 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "000" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 case "nc":
-                    if (FLAG_carry == (short) 0){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "001" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_CARRY) == 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "001" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 //zero flag
                 case "z":
-                    if (FLAG_zero == (short) 1){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "010" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_ZERO) != 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "010" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 case "nz":
-                    if (FLAG_zero == (short) 0){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "011" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_ZERO) == 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "011" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 //sign flag
                 case "s":
-                    if (FLAG_sign == (short) 1){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "100" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_SIGN) != 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "100" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 case "ns":
-                    if (FLAG_sign == (short) 0){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "101" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_SIGN) == 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "101" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 //overflow flag
                 case "o":
-                    if (FLAG_overflow == (short) 1){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "110" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_OVERFLOW) != 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "110" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 case "no":
-                    if (FLAG_overflow == (short) 0){
-                        compiledBinaryCommands.add("111100000" + /*flag bits*/ "111" + NumberConverter.decimalToBinaryString(registerNumber, 4));
+                    if ((flags & Moncky2ALU.FLAG_OVERFLOW) == 0){
                         return register[registerNumber];
                     }
-                    compiledBinaryCommands.add("111100000" + /*flag bits*/ "111" + NumberConverter.decimalToBinaryString(registerNumber, 4));
                     return 0;
                 //when jp + any other character than previous options
                 default:
@@ -370,220 +895,57 @@ public class Moncky2Interpreter {
 
             //ALU OPERATIONS
             if (commandParts[0].equalsIgnoreCase("nop")) {
-                //stupid command that does nothing
-                register[firstRegisterNumber] = register[secondRegisterNumber];
-                //save ALU result
-                ALU = 0;
-                FLAG_carry = 0;
-                FLAG_zero = 0;
-                FLAG_sign = 0;
-                FLAG_overflow = 0;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01000000" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_NOP, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("or")) {
-                //or operation on every bit of the number inside the register
-                String reg1 = NumberConverter.decimalToBinaryString(register[firstRegisterNumber], 16);
-                String reg2 = NumberConverter.decimalToBinaryString(register[secondRegisterNumber], 16);
-                StringBuilder ALUResult = new StringBuilder();
-
-                //do the operation on each bit of the register
-                for (int i = 0; i < 16; i++){
-                    if (reg1.charAt(i) == '1' || reg2.charAt(i) == '1') ALUResult.append("1");
-                    else ALUResult.append("0");
-                }
-
-                //save result of operation in the correct register
-                register[firstRegisterNumber] = (short) NumberConverter.binaryStringToDecimal(ALUResult.toString());
-
-                //save ALU result
-                ALU = register[firstRegisterNumber];
-                FLAG_carry = 0;
-                FLAG_zero = 0;
-                FLAG_sign = 0;
-                FLAG_overflow = 0;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01000001" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_OR, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("and")) {
-                //and operation on every bit of the number inside the register
-                String reg1 = NumberConverter.decimalToBinaryString(register[firstRegisterNumber], 16);
-                String reg2 = NumberConverter.decimalToBinaryString(register[secondRegisterNumber], 16);
-                StringBuilder ALUResult = new StringBuilder();
-
-                //do the operation on each bit of the register
-                for (int i = 0; i < 16; i++){
-                    if (reg1.charAt(i) == '1' && reg2.charAt(i) == '1') ALUResult.append("1");
-                    else ALUResult.append("0");
-                }
-
-                //save result of operation in the correct register
-                register[firstRegisterNumber] = (short) NumberConverter.binaryStringToDecimal(ALUResult.toString());
-
-                //save ALU result
-                ALU = register[firstRegisterNumber];
-                FLAG_carry = 0;
-                FLAG_sign = 0;
-                FLAG_overflow = 0;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("010000010" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_AND, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("xor")) {
-                //xor operation on every bit of the number inside the register
-                String reg1 = NumberConverter.decimalToBinaryString(register[firstRegisterNumber], 16);
-                String reg2 = NumberConverter.decimalToBinaryString(register[secondRegisterNumber], 16);
-                StringBuilder ALUResult = new StringBuilder();
-
-                //do the operation on each bit of the register
-                for (int i = 0; i < 16; i++){
-                    if ((reg1.charAt(i) == '1' || reg2.charAt(i) == '1') && (reg1.charAt(i) != reg2.charAt(i))) ALUResult.append("1");
-                    else ALUResult.append("0");
-                }
-
-                //save result of operation in the correct register
-                register[firstRegisterNumber] = (short) NumberConverter.binaryStringToDecimal(ALUResult.toString());
-
-                //save ALU result
-                ALU = register[firstRegisterNumber];
-                FLAG_carry = 0;
-                FLAG_sign = 0;
-                FLAG_overflow = 0;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01000011" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_XOR, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("add")) {
-                //add the 2 register values and store them in the first register
-                ALU = (short) (register[firstRegisterNumber] + register[secondRegisterNumber]);
-                //set flags
-                if ( (register[firstRegisterNumber] + register[secondRegisterNumber]) > Short.MAX_VALUE) { FLAG_overflow = 1; }
-                else FLAG_overflow = 0;
-                if (ALU == 0) FLAG_zero = 1;
-                else FLAG_zero = 0;
-                FLAG_carry = 0;
-                FLAG_sign = 0;
-
-                //save result of operation in the correct register
-                register[firstRegisterNumber] = ALU;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01000100" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_ADD, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("sub")) {
-                //subtract the 2 register values and store them in the first register
-                ALU = (short) (register[firstRegisterNumber] - register[secondRegisterNumber]);
-
-                //set flags
-                if (ALU == 0 ) {
-                    FLAG_zero = 1;
-                }
-                else {
-                    if (ALU > 0) FLAG_sign = 0;
-                    else FLAG_sign = 1;
-                    FLAG_zero = 0;
-                }
-                FLAG_carry = 0;
-                FLAG_overflow = 0;
-
-                //save result of operation in the correct register
-                register[firstRegisterNumber] = ALU;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01000101" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_SUB, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("shl")) {
-                //shift all bits left by a specified number of bits
-                //the right-most (low-order) bit is turned into a 0
-                //the left-most (high-order) bit is discarded
-                for (int i = 0; i < register[secondRegisterNumber]; i++) {
-                    String binary = NumberConverter.decimalToBinaryString(register[firstRegisterNumber], 16);
-                    binary = binary.substring(1) + "0";
-                    ALU = (short) NumberConverter.binaryStringToDecimal(binary);
-                    register[firstRegisterNumber] = ALU;
-                }
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01000110" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_SHL, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("shr")) {
-                //shift all bits right by a specified number of bits
-                //the right-most (low-order) bit is discarded
-                //the left-most (high-order) bit is turned into a 0
-                for (int i = 0; i < register[secondRegisterNumber]; i++) {
-                    String binary = NumberConverter.decimalToBinaryString(register[firstRegisterNumber], 16);
-                    binary = "0" + binary.substring(0, binary.length() - 1);
-                    ALU = (short) NumberConverter.binaryStringToDecimal(binary);
-                    register[firstRegisterNumber] = ALU;
-                }
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01000111" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_SHR, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("ashr")) {
-                //shift all bits right by a specified number of bits (and keep the sign bit)
-                //the right-most (low-order) bit is discarded
-                //the left-most (high-order) bit is copied
-                for (int i = 0; i < register[secondRegisterNumber]; i++) {
-                    String binary = NumberConverter.decimalToBinaryString(register[firstRegisterNumber], 16);
-                    binary = binary.charAt(0) + binary.substring(0, binary.length() - 1);
-                    ALU = register[firstRegisterNumber] = (short) NumberConverter.binaryStringToDecimal(binary);
-                    register[firstRegisterNumber] = ALU;
-                }
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01001001" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_ASHR, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("not")) {
-                //1-complement
-                String bitValue = NumberConverter.decimalToBinaryString(register[secondRegisterNumber], 16);
-                String reverseBitValue = NumberConverter.invertBinary(bitValue);
-
-                //save result of operation in the ALU
-                ALU = (short) NumberConverter.binaryStringToDecimal(reverseBitValue);
-
-                //save result of operation in the correct register
-                register[firstRegisterNumber] = ALU;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01001001" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_NOT, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
             if (commandParts[0].equalsIgnoreCase("neg")) {
-
-                //2-complement
-                String bitValue = NumberConverter.decimalToBinaryString(register[secondRegisterNumber], 16);
-                String reverseBitValue = NumberConverter.invertBinary(bitValue);
-
-                //save result of operation in the ALU
-                ALU = (short) (NumberConverter.binaryStringToDecimal(reverseBitValue) + 1);
-
-                //save result of operation in the correct register
-                register[firstRegisterNumber] = ALU;
-
-                //add the command to compiler
-                compiledBinaryCommands.add("01001010" + NumberConverter.decimalToBinaryString(firstRegisterNumber, 4) + NumberConverter.decimalToBinaryString(secondRegisterNumber, 4));
+                executeALU(CommandDecoder.OP_NEG, firstRegisterNumber, secondRegisterNumber);
 
                 return 0;
             }
@@ -592,6 +954,22 @@ public class Moncky2Interpreter {
         return 0;
     }//executeCommand
 
+    /**
+     * this method runs an ALU operation and stores its result in the first register, the ALU value, and the flags
+     * @param opcode ALU opcode from CommandDecoder (OP_NOP to OP_NEG)
+     * @param firstRegisterNumber number of the register that receives the result
+     * @param secondRegisterNumber number of the second register
+     */
+    private void executeALU(int opcode, int firstRegisterNumber, int secondRegisterNumber) {
+        applyALU(Moncky2ALU.execute(opcode, register, firstRegisterNumber, secondRegisterNumber, flags));
+    }
+
+    //stores the ALU value and flags returned by a Moncky2ALU operation
+    private void applyALU(int result) {
+        if ((result & Moncky2ALU.RESULT_WRITTEN) != 0) ALU = (short) result;
+        flags = (result >> 16) & Moncky2ALU.ALL_FLAGS;
+    }
+
     /**
      * this method reads the register number from a jump instruction "jp/jpc r__"
      * @param commandPart part of the jump command containing the register "r__"
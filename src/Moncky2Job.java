@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/*
+A program that runs on Moncky2Scheduler, with its own interpreter (registers and memory).
+The job is loaded by the first worker that runs it, then runs in slices until it halts, fails, or runs out of budget or time.
+ */
+public class Moncky2Job {
+
+    //state of a job, every state except WAITING and RUNNING is final
+    //CANCELLED: the scheduler was closed before the job finished
+    public enum Status {
+        WAITING, RUNNING, HALTED, FAILED, BUDGET_EXCEEDED, DEADLINE_EXCEEDED, CANCELLED
+    }
+
+    //loads the program into the interpreter of the job (for example with loadCode or loadImage)
+    public interface Loader {
+        void load(Moncky2Interpreter m2i) throws IOException;
+    }
+
+    private final String name;
+    private final Loader loader;
+    private final int priority;
+    private final long budget;
+    private final long deadline;
+    private final Moncky2Interpreter interpreter = new Moncky2Interpreter();
+    private final CompletableFuture<Moncky2Job> completion = new CompletableFuture<>();
+
+    private volatile Status status = Status.WAITING;
+    private boolean loaded = false;
+    private Throwable error = null;
+    private long slices = 0;
+    private long startTime = 0;
+    private long runTime = 0;
+    //position in the ready queue of the scheduler, jobs with the same priority take turns
+    long sequence;
+
+    /**
+     * constructor
+     * @param name name of the job in reports (for example the path of the program)
+     * @param loader loads the program into the interpreter of the job
+     * @param priority jobs with a higher priority run first when the scheduler uses priority scheduling
+     * @param budget maximum number of instructions the program may run (Long.MAX_VALUE for no limit)
+     * @param deadline System.nanoTime() value after which the program is stopped (Long.MAX_VALUE for no deadline)
+     */
+    public Moncky2Job(String name, Loader loader, int priority, long budget, long deadline) {
+        this.name = name;
+        this.loader = loader;
+        this.priority = priority;
+        this.budget = budget;
+        this.deadline = deadline;
+    }
+
+    /**
+     * this method runs the next slice of the job, it is called by one worker at a time
+     * @param sliceSize maximum number of instructions in the slice
+     * @return true if the job has finished, false if it needs another slice
+     */
+    boolean runSlice(long sliceSize) {
+        if (!loaded) {
+            startTime = System.nanoTime();
+            status = Status.RUNNING;
+        }
+        long start = System.nanoTime();
+        try {
+            if (!loaded) {
+                loader.load(interpreter);
+                loaded = true;
+            }
+            if (start - deadline > 0) return finish(Status.DEADLINE_EXCEEDED);
+            long remaining = budget - interpreter.getInstructionCount();
+            if (remaining <= 0) return finish(Status.BUDGET_EXCEEDED);
+            slices++;
+            if (interpreter.run(Math.min(sliceSize, remaining))) return finish(Status.HALTED);
+            if (interpreter.getInstructionCount() >= budget) return finish(Status.BUDGET_EXCEEDED);
+            if (System.nanoTime() - deadline > 0) return finish(Status.DEADLINE_EXCEEDED);
+            return false;
+        } catch (Throwable e) {
+            //also errors (for example a StackOverflowError or a LinkageError of the bytecode compiler):
+            //they fail this job only, the worker keeps running and the completion still completes
+            error = e;
+            return finish(Status.FAILED);
+        }
+    }
+
+    //finishes a job no worker runs any more (the scheduler is closed), its completion completes as CANCELLED
+    void cancel() {
+        if (completion.isDone()) return;
+        if (status == Status.WAITING) startTime = System.nanoTime();
+        finish(Status.CANCELLED);
+    }
+
+    private boolean finish(Status finalStatus) {
+        runTime = System.nanoTime() - startTime;
+        status = finalStatus;
+        completion.complete(this);
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    //getter for the exception or error of a FAILED job, null for other jobs
+    public Throwable getError() {
+        return error;
+    }
+
+    //getter for the interpreter of the job, only read it after the job finished
+    public Moncky2Interpreter getInterpreter() {
+        return interpreter;
+    }
+
+    //getter for the number of slices the job ran
+    public long getSlices() {
+        return slices;
+    }
+
+    //getter for the time between the start of the first slice and the end of the job, in nanoseconds
+    public long getRunTime() {
+        return runTime;
+    }
+
+    //completes with this job when it has finished
+    public CompletableFuture<Moncky2Job> getCompletion() {
+        return completion;
+    }
+}
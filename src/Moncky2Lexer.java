@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+/*
+Lexer for one line of Moncky-2 code, shared by the interpreter, the assemblers, and the linter so they all read a
+line the same way.
+The line is scanned in place: no split, no substrings, no lists. For every token the lexer stores its start and end
+offset, its kind, and its value in int arrays that are reused for the next line, so lexing does not allocate
+(the arrays only grow when a line has more tokens than any line before it).
+
+- tokens are separated by whitespace (spaces and tabs) and commas, a comma is remembered on the token before it
+- ';' starts a comment that runs to the end of the line, also right after a token ("halt;end")
+- values are read the same way the interpreter reads them: registers "rN" and "(rN)" give N, numbers are decimal
+  or start with 0x, 0b, or 0o (the sign comes after the prefix: "0x-5")
+
+Kinds:
+- MNEMONIC: word starting with a letter (li, add, jpnz, ...), value 0
+- REGISTER: r0, r15, ... value: register number
+- MEMORY_REGISTER: (r0), (r15), ... value: register number
+- IMMEDIATE: 42, -3, 0xff, 0b101, 0o17, value: the number
+- LABEL: ":name", value 0
+- COMMENT: ";" up to the end of the line, value 0
+- INVALID: anything else ("(r1", "0xfg", "5x", a number that does not fit in an int, ...), value 0
+ */
+public class Moncky2Lexer {
+
+    public static final int NONE = -1;
+    public static final int MNEMONIC = 0;
+    public static final int REGISTER = 1;
+    public static final int MEMORY_REGISTER = 2;
+    public static final int IMMEDIATE = 3;
+    public static final int LABEL = 4;
+    public static final int COMMENT = 5;
+    public static final int INVALID = 6;
+
+    private CharSequence line = "";
+    private int count = 0;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int[] kinds = new int[8];
+    private int[] values = new int[8];
+    private boolean[] commas = new boolean[8];
+
+    /**
+     * this method splits a line into tokens, the tokens of the previous line are forgotten
+     * @param line one line of code (with or without surrounding whitespace)
+     * @return number of tokens
+     */
+    public int lex(CharSequence line) {
+        this.line = line;
+        count = 0;
+        int length = line.length();
+        int position = 0;
+        while (position < length) {
+            char c = line.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+                continue;
+            }
+            if (c == ',') {
+                if (count > 0) commas[count - 1] = true;
+                position++;
+                continue;
+            }
+            int start = position;
+            if (c == ';') {
+                position = length;
+                add(start, position, COMMENT, 0);
+                continue;
+            }
+            while (position < length && !isSeparator(line.charAt(position))) position++;
+            lexWord(start, position);
+        }
+        return count;
+    }
+
+    /**
+     * this method finds the kind of the first token of a line without lexing the rest of it
+     * @param line one line of code
+     * @return kind of the first token, or NONE for an empty line
+     */
+    public static int firstKind(CharSequence line) {
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) continue;
+            if (c == ';') return COMMENT;
+            if (c == ':') return LABEL;
+            return MNEMONIC;
+        }
+        return NONE;
+    }
+
+    /**
+     * this method tells if a line is an instruction, the same lines that take an address in the program
+     * @param line one line of code
+     * @return false for empty lines, comments, and labels
+     */
+    public static boolean isInstruction(CharSequence line) {
+        int kind = firstKind(line);
+        return kind != NONE && kind != COMMENT && kind != LABEL;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ',' || c == ';' || Character.isWhitespace(c);
+    }
+
+    private void lexWord(int start, int end) {
+        char c = line.charAt(start);
+        if (c == ':') {
+            add(start, end, LABEL, 0);
+        } else if ((c == 'r' || c == 'R') && end - start > 1 && isDigits(start + 1, end)) {
+            addNumber(start, end, REGISTER, start + 1, end, 10);
+        } else if (c == '(' && end - start > 3 && (line.charAt(start + 1) == 'r' || line.charAt(start + 1) == 'R')
+                && line.charAt(end - 1) == ')' && isDigits(start + 2, end - 1)) {
+            addNumber(start, end, MEMORY_REGISTER, start + 2, end - 1, 10);
+        } else if (Character.isLetter(c)) {
+            add(start, end, MNEMONIC, 0);
+        } else if (c == '0' && end - start > 2 && radix(line.charAt(start + 1)) != 0) {
+            addNumber(start, end, IMMEDIATE, start + 2, end, radix(line.charAt(start + 1)));
+        } else {
+            addNumber(start, end, IMMEDIATE, start, end, 10);
+        }
+    }
+
+    private static int radix(char prefix) {
+        switch (prefix) {
+            case 'x': return 16;
+            case 'b': return 2;
+            case 'o': return 8;
+            default: return 0;
+        }
+    }
+
+    private boolean isDigits(int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    //reads the digits between digitStart and digitEnd like Integer.parseInt, the token is INVALID when that would fail
+    private void addNumber(int start, int end, int kind, int digitStart, int digitEnd, int radix) {
+        boolean negative = false;
+        if (digitStart < digitEnd && (line.charAt(digitStart) == '-' || line.charAt(digitStart) == '+')) {
+            negative = line.charAt(digitStart) == '-';
+            digitStart++;
+        }
+        if (digitStart == digitEnd) {
+            add(start, end, INVALID, 0);
+            return;
+        }
+        long value = 0;
+        for (int i = digitStart; i < digitEnd; i++) {
+            int digit = Character.digit(line.charAt(i), radix);
+            if (digit < 0) {
+                add(start, end, INVALID, 0);
+                return;
+            }
+            value = value * radix + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                add(start, end, INVALID, 0);
+                return;
+            }
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) {
+            add(start, end, INVALID, 0);
+            return;
+        }
+        add(start, end, kind, (int) value);
+    }
+
+    private void add(int start, int end, int kind, int value) {
+        if (count == starts.length) grow();
+        starts[count] = start;
+        ends[count] = end;
+        kinds[count] = kind;
+        values[count] = value;
+        commas[count] = false;
+        count++;
+    }
+
+    private void grow() {
+        int length = starts.length * 2;
+        starts = Arrays.copyOf(starts, length);
+        ends = Arrays.copyOf(ends, length);
+        kinds = Arrays.copyOf(kinds, length);
+        values = Arrays.copyOf(values, length);
+        commas = Arrays.copyOf(commas, length);
+    }
+
+    //getter for the number of tokens of the last line
+    public int getCount() {
+        return count;
+    }
+
+    //kind of token i, or NONE when the line has fewer tokens
+    public int kind(int token) {
+        return token < count ? kinds[token] : NONE;
+    }
+
+    //value of token i (register number or number, see the kinds above)
+    public int value(int token) {
+        return values[token];
+    }
+
+    //offset of the first character of token i in the line
+    public int start(int token) {
+        return starts[token];
+    }
+
+    //offset after the last character of token i in the line
+    public int end(int token) {
+        return ends[token];
+    }
+
+    //true when token i is followed by a comma
+    public boolean hasComma(int token) {
+        return commas[token];
+    }
+
+    /**
+     * @param token index of an IMMEDIATE token
+     * @return true when the number is written in decimal (without 0x, 0b, or 0o)
+     */
+    public boolean isDecimal(int token) {
+        return charAt(token, 0) != '0' || ends[token] - starts[token] <= 2 || radix(charAt(token, 1)) == 0;
+    }
+
+    //character i of a token, or 0 after its end
+    private char charAt(int token, int index) {
+        int position = starts[token] + index;
+        return position < ends[token] ? line.charAt(position) : 0;
+    }
+
+    /**
+     * this method compares a token with a word without making a String of the token
+     * @param token index of the token
+     * @param word the expected text
+     * @return true when the token has exactly the same characters
+     */
+    public boolean is(int token, String word) {
+        return token < count && ends[token] - starts[token] == word.length() && startsWith(token, word);
+    }
+
+    //same as is, but upper and lower case letters are equal
+    public boolean isIgnoreCase(int token, String word) {
+        if (token >= count || ends[token] - starts[token] != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = line.charAt(starts[token] + i);
+            if (Character.toLowerCase(c) != Character.toLowerCase(word.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    //true when the token starts with the given characters
+    public boolean startsWith(int token, String prefix) {
+        if (token >= count || ends[token] - starts[token] < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(starts[token] + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    //true when the token ends with the given characters (the comma after a token is not part of it)
+    public boolean endsWith(int token, String suffix) {
+        if (token >= count || ends[token] - starts[token] < suffix.length()) return false;
+        int start = ends[token] - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            if (line.charAt(start + i) != suffix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * this method makes a String of a token, for callers that need one (labels in the symbol table, messages)
+     * @param token index of the token
+     * @return the characters of the token, without the comma after it
+     */
+    public String text(int token) {
+        return line.subSequence(starts[token], ends[token]).toString();
+    }
+}
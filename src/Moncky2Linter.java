@@ -2,77 +2,155 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/*
+Checks syntax, values, and good practices in Moncky-2 code without running it.
+Problems are collected as LintDiagnostic records (line, column, severity, code, message) and printed at the end
+by LintReporter, as colored text, plain text, JSON, or SARIF.
+Programs of PARALLEL_LINES lines or more are checked in blocks of CHUNK_LINES lines on all processors. Every block
+has its own lexer and list of problems, and the lists are joined in the order of the blocks, so the report is the
+same as when the lines are checked one by one.
+
+usage: Moncky2Linter [code file] [-format color|text|json|sarif] [-sequential]
+ */
 public class Moncky2Linter {
     //TODO add:
     // - * extra * count spaces in each line and mark the line as warning if too much whitespace used
     public static void main(String[] args) {
-        System.out.println(ANSI_RESET); //set console/terminal text color to white
-        Moncky2Linter m2l = new Moncky2Linter();
-        m2l.runCheck();
+        String file = "moncky2in/code.txt";
+        LintReporter.Format format = LintReporter.Format.COLOR;
+        boolean parallel = true;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-format") && i + 1 < args.length) format = LintReporter.parseFormat(args[++i]);
+            else if (args[i].equals("-sequential")) parallel = false;
+            else file = args[i];
+        }
+        if (format == LintReporter.Format.COLOR) System.out.println(ANSI_RESET); //set console/terminal text color to white
+        Moncky2Linter m2l = new Moncky2Linter(readCode(Path.of(file)), file);
+        m2l.setParallel(parallel);
+        m2l.runCheck(format);
     }
 
+    //programs with at least this many lines are checked in parallel
+    public static final int PARALLEL_LINES = 8192;
+    //lines checked by one task when checking in parallel
+    private static final int CHUNK_LINES = 2048;
+
     private final String[] commands;
+    //labels defined in the code, shared with the interpreter and compiler
+    private final SymbolTable symbolTable;
+    //name of the checked file in JSON and SARIF reports
+    private final String fileName;
+    //problems found by the last runCheck or check call, in the order of the lines
+    private final ArrayList<LintDiagnostic> diagnostics = new ArrayList<>();
+    //checks the lines given to checkCommand, and the lines of check when it does not run in parallel
+    private final LineChecker lineChecker = new LineChecker(diagnostics);
+    private boolean parallel = true;
 
     /**
      * this default constructor loads commands from input file in moncky2in folder
      */
     public Moncky2Linter() {
-        String codeContent;
+        this(readCode(Path.of("moncky2in/code.txt")), "moncky2in/code.txt");
+    }
+
+    /**
+     * this constructor loads code from a string block rather than a file. This is good for checking small pieces of code
+     * @param codeContent String code block with instructions that need to be checked
+     */
+    public Moncky2Linter(String codeContent){
+        this(codeContent, "code.txt");
+    }
+
+    /**
+     * this constructor loads code from a string block that was read from a file
+     * @param codeContent String code block with instructions that need to be checked
+     * @param fileName name of the file, used in JSON and SARIF reports
+     */
+    public Moncky2Linter(String codeContent, String fileName){
+        //split code String block into separate lines and store them in an array
+        commands = codeContent.split("\n");
+        symbolTable = new SymbolTable(commands);
+        this.fileName = fileName;
+    }
+
+    private static String readCode(Path filePath) {
         try {
             //open the input file
-            Path filePath = Path.of("moncky2in/code.txt");
-            codeContent = Files.readString(filePath);
+            return Files.readString(filePath);
         }
         catch (IOException e) {
             //if no file is found, throw an error.
-            System.out.println("no code file in moncky2in directory (code.txt)");
+            System.out.println("no code file " + filePath);
             throw new RuntimeException(e);
         }
-        commands = codeContent.split("\n");
     }
 
     /**
-     * this constructor loads code from a string block rather than a file. This is good for checking small pieces of code
-     * @param codeContent String code block with instructions that need to be checked
+     * this method checks every line of the code and prints the problems in color
+     * labels are looked up in the symbol table the constructor built in one pass over the code (definition line of
+     * every label and every duplicate definition), so checking takes time linear in the number of lines
      */
-    public Moncky2Linter(String codeContent){
-        //split code String block into separate lines and store them in an array
-        commands = codeContent.split("\n");
+    public void runCheck() {
+        runCheck(LintReporter.Format.COLOR);
     }
 
-    public void runCheck() {
-        //go through every line of source code and check it (syntax, values, good practices)
-        for (int i = 0; i < commands.length; i++){
-            checkCommand(commands[i], i+1);
-        }
+    /**
+     * this method checks every line of the code and prints the problems with one call to System.out
+     * @param format format of the report
+     */
+    public void runCheck(LintReporter.Format format) {
+        LintReporter.write(System.out, check(), format, fileName);
     }
 
     /**
-     * this method makes sure that a label exists and does not have duplicates
-     * @param label the String value of a label that the method looks for
+     * this method checks every line of the code (syntax, values, good practices) without printing anything
+     * @return the problems, ordered by line
      */
-    public void checkForLabel(String label, int lineNumber) {
-        boolean found = false;
-        //go through each line of source code (instruction), check if it's a label and compare it to target label
-        for (int i = 0; i < commands.length; i++){
-            if (commands[i].startsWith(":")){
-                if (found){
-                    //give a warning if there is a duplicate label
-                    if (commands[i].strip().equals(label)) {
-                        System.out.println(lineNumber + WARNING_LABEL + " : duplicate label \"" + label + "\" found in the code at line " + (i +1) );
-                    }
-                }
-                if (commands[i].strip().equals(label)) {
-                    found = true;
-                }
+    public ArrayList<LintDiagnostic> check() {
+        diagnostics.clear();
+        if (!parallel || commands.length < PARALLEL_LINES) {
+            for (int i = 0; i < commands.length; i++){
+                lineChecker.checkCommand(commands[i], i+1);
             }
+            return diagnostics;
         }
-
-        if (!found) {
-            //give an error warning if there is no matching label in code
-            System.out.println(lineNumber + ERROR_LABEL + " : label " + label + " not found in code");
+        int chunks = (commands.length + CHUNK_LINES - 1) / CHUNK_LINES;
+        List<ArrayList<LintDiagnostic>> found = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            LineChecker checker = new LineChecker(new ArrayList<>());
+            int end = Math.min(commands.length, (chunk + 1) * CHUNK_LINES);
+            for (int i = chunk * CHUNK_LINES; i < end; i++) {
+                checker.checkCommand(commands[i], i + 1);
+            }
+            return checker.found;
+        }).collect(Collectors.toList());
+        for (ArrayList<LintDiagnostic> chunkDiagnostics : found) {
+            diagnostics.addAll(chunkDiagnostics);
         }
+        return diagnostics;
+    }
+
+    /**
+     * this method checks syntax, values, and good practices in one line of code
+     * the problems are added to getDiagnostics
+     * @param codeLine the String value of a line of code
+     * @param lineNumber the current instruction index
+     */
+    public void checkCommand(String codeLine, int lineNumber) {
+        lineChecker.checkCommand(codeLine, lineNumber);
+    }
+
+    //getter for the problems found by the last check, runCheck, and the checkCommand calls after it
+    public ArrayList<LintDiagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    //setter for checking large programs on all processors (true by default)
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
     }
 
     //terminal colors
@@ -80,349 +158,323 @@ public class Moncky2Linter {
     public static final String ANSI_YELLOW = "\u001B[33m";
     public static final String ANSI_RED = "\u001B[31m";
     public static final String ANSI_GREEN = "\u001B[32m";
-    //warning and error messages
-    private final String ERROR_SYNTAX = String.format(": [%sSYNTAX%s]", ANSI_RED, ANSI_RESET );
-    private final String ERROR_VALUE = String.format(": [%sVALUE%s]", ANSI_RED, ANSI_RESET );
-    private final String ERROR_ARGUMENT = String.format(": [%sARGUMENT%s]", ANSI_RED, ANSI_RESET );
-    private final String ERROR_UNKNOWN = String.format(": [%sUNKNOWN INSTRUCTION%s]", ANSI_RED, ANSI_RESET);
-    private final String ERROR_LABEL = String.format(": [%sMISSING LABEL%s]", ANSI_RED, ANSI_RESET);
-    private final String WARNING_LABEL = String.format(": [%sDUPLICATE LABEL%s]", ANSI_YELLOW, ANSI_RESET);
-    private final String WARNING = String.format(": [%sWARNING%s]", ANSI_YELLOW, ANSI_RESET );
-    //private final String WARNING_MINOR = String.format(": [%sMINOR WARNING%s]", ANSI_YELLOW, ANSI_RESET );
 
-    /**
-     * this method checks syntax, values, and good practices in assembly code
-     * @param codeLine the String value of a line of code
-     * @param lineNumber the current instruction index
-     */
-    public void checkCommand(String codeLine, int lineNumber) {
+    //register and value results that are not a number (any number outside the range of a short)
+    private static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+    //instructions that check the same way
+    private static final String[] CONDITIONAL_JUMPS = {"jps", "jpns", "jpz", "jpnz", "jpo", "jpno", "jpc", "jpnc"};
+    private static final String[] ALU_INSTRUCTIONS = {"nop", "or", "and", "xor", "add", "sub", "shl", "shr", "ashr", "not", "neg"};
+
+    //checks lines one at a time, every thread that checks lines has its own (the lexer holds the tokens of one line)
+    private class LineChecker {
+        private final Moncky2Lexer lexer = new Moncky2Lexer();
+        private final ArrayList<LintDiagnostic> found;
+        //line the lexer holds the tokens of
+        private String line = "";
 
-        if (codeLine.isBlank()) {
-            return;
+        LineChecker(ArrayList<LintDiagnostic> found) {
+            this.found = found;
         }
-        System.out.println(lineNumber);
-
-        //split each instruction into words/parts
-        String[] codeLineParts = codeLine.split(" ");
-        ArrayList<String> code = new ArrayList<>();
-        for (String codeLinePart : codeLineParts) {
-            if (!codeLinePart.isEmpty()) {
-                code.add(codeLinePart);
+
+        /**
+         * this method makes sure that a label exists
+         * duplicate labels are reported once, at the line where they are defined again
+         * @param label the String value of a label that the method looks for
+         */
+        private void checkForLabel(String label, int lineNumber) {
+            if (!symbolTable.contains(label)) {
+                //give an error warning if there is no matching label in code
+                report(lineNumber, 2, LintDiagnostic.Code.MISSING_LABEL, "label " + label + " not found in code");
             }
         }
-        codeLineParts = new String[code.size()];
-        for (int i = 0; i < codeLineParts.length; i++){
-            codeLineParts[i] = code.get(i);
+
+        private void report(int lineNumber, int token, LintDiagnostic.Code code, String message) {
+            found.add(new LintDiagnostic(lineNumber, column(token), code, message, null, false));
         }
 
-        //ignore empty lines of code
-        if (codeLineParts[0].isEmpty()) return;
-        //ignore comments
-        if (codeLineParts[0].startsWith(";")) { //comment, ignore
-            return;
+        //problem with its reason after the message
+        private void report(int lineNumber, int token, LintDiagnostic.Code code, String message, String hint) {
+            found.add(new LintDiagnostic(lineNumber, column(token), code, message, hint, false));
         }
-        //ignore labels. They don't need to be checked unless loaded into a register
-        if (codeLineParts[0].startsWith(":")) { // label, check if used somewhere else
-            return;
+
+        //problem with a way to fix it after the message
+        private void advise(int lineNumber, int token, LintDiagnostic.Code code, String message, String hint) {
+            found.add(new LintDiagnostic(lineNumber, column(token), code, message, hint, true));
+        }
+
+        //column (starting at 1) of a token of the current line, a missing token is placed right after the last one
+        private int column(int token) {
+            if (token < lexer.getCount()) return lexer.start(token) + 1;
+            return lexer.getCount() == 0 ? 1 : lexer.end(lexer.getCount() - 1) + 1;
         }
-        //check the halt instruction.
-        if (codeLineParts[0].equals("halt")){ // halt
-            //try-catch block to avoid crashes
-            try {
+
+        /**
+         * this method checks syntax, values, and good practices in assembly code
+         * the checks read the kinds, values, and commas of the tokens the lexer found, a String is only made for a message
+         * @param codeLine the String value of a line of code
+         * @param lineNumber the current instruction index
+         */
+        private void checkCommand(String codeLine, int lineNumber) {
+            //split each instruction into tokens, with the same lexer the interpreter and the assemblers use
+            //(a line of only whitespace and commas has no tokens)
+            line = codeLine;
+            if (lexer.lex(codeLine) == 0) {
+                return;
+            }
+
+            //ignore comments
+            if (lexer.kind(0) == Moncky2Lexer.COMMENT) { //comment, ignore
+                return;
+            }
+            //labels don't need to be checked unless loaded into a register, but a label can only be defined once
+            if (lexer.kind(0) == Moncky2Lexer.LABEL) { // label, check if used somewhere else
+                String label = lexer.text(0);
+                if (symbolTable.getLine(label) != lineNumber) {
+                    //give a warning if there is a duplicate label
+                    report(lineNumber, 0, LintDiagnostic.Code.DUPLICATE_LABEL, "duplicate label \"" + label + "\" is already defined at line " + symbolTable.getLine(label));
+                }
+                return;
+            }
+            //check the halt instruction.
+            if (isPart(0, "halt")) { // halt
                 //give warning if arguments are used with the halt instruction
-                if (!codeLineParts[1].isEmpty() && !codeLineParts[1].startsWith(";")){
-                    System.out.println(lineNumber + ERROR_ARGUMENT + " : unknown argument after halt instruction");
+                if (lexer.kind(1) != Moncky2Lexer.NONE && lexer.kind(1) != Moncky2Lexer.COMMENT) {
+                    report(lineNumber, 1, LintDiagnostic.Code.ARGUMENT, "unknown argument after halt instruction");
+                }
+                return;
+            }
+            if (isPart(0, "li")) { // li rxx, x...
+                checkFirstRegister(lineNumber, "li", "register number", "register \"%s\" in li instruction does not contain a valid register number", true);
+                //second argument for 'li' instruction
+                if (lexer.kind(2) == Moncky2Lexer.NONE) {
+                    //not enough arguments for instruction
+                    report(lineNumber, 2, LintDiagnostic.Code.ARGUMENT, "missing second argument in li instruction (immediate value)");
                     return;
                 }
+                if (lexer.startsWith(2, ":")) {
+                    //check if the loaded label exists in the code
+                    checkForLabel(part(2), lineNumber);
+                    return;
+                }
+                int number;
+                if (lexer.startsWith(2, "0x") || lexer.startsWith(2, "0b") || lexer.startsWith(2, "0o")) {
+                    //the lexer read the digits after the prefix as an int, the instruction keeps 16 bits of it
+                    number = lexer.kind(2) == Moncky2Lexer.IMMEDIATE && !lexer.hasComma(2) ? (short) lexer.value(2) : NOT_A_NUMBER;
+                } else {
+                    //a decimal value has to be a short
+                    number = lexer.kind(2) == Moncky2Lexer.IMMEDIATE && !lexer.hasComma(2) ? toShort(lexer.value(2)) : NOT_A_NUMBER;
+                }
+                if (number == NOT_A_NUMBER) {
+                    //invalid numerical value in instruction
+                    report(lineNumber, 2, LintDiagnostic.Code.VALUE, "value \"" + part(2) + "\" in li instruction does not contain a valid number");
+                } else if (number > 255) {
+                    //li instructions can only take 8 bits as input. 8 bits have a range from 0 to 255. Anything greater than that will not fit in an 'li' instruction and shouldn't work
+                    report(lineNumber, 2, LintDiagnostic.Code.VALUE, "value \"" + part(2) + "\" in li instruction is too great.", "value is more than 8 bits");
+                }
+                return;
             }
-            catch (IndexOutOfBoundsException ignored) {}
-            return;
-        }
-        if (codeLineParts[0].equals("li")){ // li rxx, x...
-            try {
-                //checking for first register syntax
-                if (!codeLineParts[1].startsWith("r")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] +"\" in st/ld instruction. Should be a register followed by a comma \"r??,\"");
+            if (isPart(0, "ld") || isPart(0, "st")) { // ld rxx, (rxx) // st rxx, (rxx)
+                checkFirstRegister(lineNumber, "st/ld", "first register number", "first register \"%s\" in st/ld instruction does not contain a valid number", isPart(0, "ld"));
+                if (lexer.kind(2) == Moncky2Lexer.NONE) {
+                    //not enough arguments for instruction
+                    report(lineNumber, 2, LintDiagnostic.Code.ARGUMENT, "missing first argument in ld/st instruction (register)");
+                    return;
                 }
-                //checking for first register syntax (comma after register number)
-                if (!codeLineParts[1].endsWith(",")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] +"\" in li instruction. Missing a comma after register \"r??,\"");
+                //checking for second register syntax (opening parenthesis)
+                if (!lexer.startsWith(2, "(")) {
+                    report(lineNumber, 2, LintDiagnostic.Code.SYNTAX, "invalid second argument \"" + part(2) + "\" in st/ld instruction. Register is missing an opening parenthesis \"(r??)\"");
+                }
+                //checking for second register syntax (closing parenthesis, a comma after it is too much)
+                boolean closed = lexer.endsWith(2, ")") && !lexer.hasComma(2);
+                if (!closed) {
+                    report(lineNumber, 2, LintDiagnostic.Code.SYNTAX, "invalid second argument \"" + part(2) + "\" in st/ld instruction. Register is missing a closing parenthesis \"(r??)\"");
                 }
                 //checking if the instruction contains a valid register number (real number and in range)
-                if (codeLineParts[1].startsWith("r") && codeLineParts[1].endsWith(",")){
-                    //check if number of register 1 is valid
-                    short number = Short.parseShort(codeLineParts[1].substring(1, codeLineParts[1].length()-1));
-                    if (number > 15){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in li instruction is too high (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number < 0){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in li instruction is too low (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number == 15){
-                        System.out.println(lineNumber + WARNING + " : changing register number 15 will change the index of the next executed instruction. " + ANSI_GREEN +"Use 'jp' instead to jump to a instruction" + ANSI_RESET);
+                if (lexer.startsWith(2, "(r") && closed) {
+                    int number = lexer.kind(2) == Moncky2Lexer.MEMORY_REGISTER ? toShort(lexer.value(2))
+                            : shortValue(2, 2, lexer.end(2) - lexer.start(2) - 1);
+                    if (number == NOT_A_NUMBER) {
+                        //invalid numerical value in instruction
+                        report(lineNumber, 2, LintDiagnostic.Code.VALUE, "second register \"" + part(1) + "\" in st/ld instruction does not contain a valid number");
+                    } else {
+                        checkRange(lineNumber, 2, number, "second register number", "st/ld");
                     }
                 }
-
-            } catch (IndexOutOfBoundsException ignored) {
-                //not enough arguments for instruction
-                System.out.println(lineNumber + ERROR_ARGUMENT + " : missing first argument in li instruction (register)");
-            } catch (NumberFormatException ignored){
-                //invalid numerical value in instruction
-                System.out.println(lineNumber + ERROR_VALUE + " : register \"" + codeLineParts[1] + "\" in li instruction does not contain a valid register number");
+                return;
             }
-            //second argument for 'li' instruction
-            try {
-                if (codeLineParts[2].startsWith("0x")){
-                    short number = (short) NumberConverter.hexStringToDecimal(codeLineParts[2].substring(2));
-                    //li instructions can only take 8 bits as input. 8 bits have a range from 0 to 255. Anything greater than that will not fit in an 'li' instruction and shouldn't work
-                    if (number > 255){
-                        System.out.println(lineNumber + ERROR_VALUE + " : value \"" + codeLineParts[2] + "\" in li instruction is too great. " + ANSI_RED + "value is more than 8 bits" + ANSI_RESET);
+            if (lexer.startsWith(0, "jp")) { //jp rxx, jpz rxx, ...
+                String name = "jp";
+                if (!isPart(0, "jp")) {
+                    //check if the conditional jump uses the correct flag, if not, give an error warning
+                    name = find(CONDITIONAL_JUMPS);
+                    if (name == null) {
+                        //any conditional jump that uses a non-default flag will give an error warning
+                        report(lineNumber, 0, LintDiagnostic.Code.UNKNOWN_INSTRUCTION, "conditional jump instruction \"" + part(0) + "\" does not exist");
+                        return;
                     }
-                    return;
                 }
-                if (codeLineParts[2].startsWith("0b")){
-                    short number = (short) NumberConverter.binaryStringToDecimal(codeLineParts[2].substring(2));
-                    //li instructions can only take 8 bits as input. 8 bits have a range from 0 to 255. Anything greater than that will not fit in an 'li' instruction and shouldn't work
-                    if (number > 255){
-                        System.out.println(lineNumber + ERROR_VALUE + " : value \"" + codeLineParts[2] + "\" in li instruction is too great. " + ANSI_RED + "value is more than 8 bits" + ANSI_RESET);
-                    }
+                if (lexer.kind(1) == Moncky2Lexer.NONE) {
+                    //not enough arguments for instruction
+                    report(lineNumber, 1, LintDiagnostic.Code.ARGUMENT, "missing argument in " + name + " instruction (register)");
                     return;
                 }
-                if (codeLineParts[2].startsWith("0o")){
-                    short number = (short) NumberConverter.octalStringToDecimal(codeLineParts[2].substring(2));
-                    //li instructions can only take 8 bits as input. 8 bits have a range from 0 to 255. Anything greater than that will not fit in an 'li' instruction and shouldn't work
-                    if (number > 255){
-                        System.out.println(lineNumber + ERROR_VALUE + " : value \"" + codeLineParts[2] + "\" in li instruction is too great. " + ANSI_RED + "value is more than 8 bits" + ANSI_RESET);
-                    }
+                //checking for register syntax
+                if (!lexer.startsWith(1, "r")) {
+                    report(lineNumber, 1, LintDiagnostic.Code.SYNTAX, "invalid argument \"" + part(1) + "\" in " + name + " instruction. Should be a register followed by a comma \"r??,\"");
                     return;
                 }
-                if (codeLineParts[2].startsWith(":")){
-                    //check if the loaded label exists in the code
-                    checkForLabel(codeLineParts[2], lineNumber);
+                //checking if the instruction contains a valid register number (real number and in range)
+                int number = registerNumber(1, false);
+                if (number == NOT_A_NUMBER) {
+                    //invalid numerical value in instruction
+                    report(lineNumber, 1, LintDiagnostic.Code.VALUE, "register \"" + part(1) + "\" in " + name + " instruction does not contain a valid number");
                     return;
                 }
-
-                short number = Short.parseShort(codeLineParts[2]);
-                //li instructions can only take 8 bits as input. 8 bits have a range from 0 to 255. Anything greater than that will not fit in an 'li' instruction and shouldn't work
-                if (number > 255){
-                    System.out.println(lineNumber + ERROR_VALUE + " : value \"" + codeLineParts[2] + "\" in li instruction is too great. " + ANSI_RED + "value is more than 8 bits" + ANSI_RESET);
+                checkRange(lineNumber, 1, number, "register number", name);
+                if (number == 15) {
+                    report(lineNumber, 1, LintDiagnostic.Code.PRACTICE, "using register 15 with jp instruction will jump to current instruction and result in an infinite loop.", "AVOID");
                 }
-            } catch (IndexOutOfBoundsException ignored) {
-                //not enough arguments for instruction
-                System.out.println(lineNumber + ERROR_ARGUMENT + " : missing second argument in li instruction (immediate value)");
-            } catch (NumberFormatException ignored){
-                //invalid numerical value in instruction
-                System.out.println(lineNumber + ERROR_VALUE + " : value \"" + codeLineParts[2] + "\" in li instruction does not contain a valid number");
+                return;
             }
-            return;
-        }
-        if (codeLineParts[0].equals("ld") || codeLineParts[0].equals("st")){ // ld rxx, (rxx) // st rxx, (rxx)
-            try {
-                //checking for first register syntax
-                if (!codeLineParts[1].startsWith("r")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] +"\" in st/ld instruction. Should be a register followed by a comma \"r??,\"");
+            //all the ALU operation instructions use the same syntax
+            String name = find(ALU_INSTRUCTIONS);
+            if (name != null) {
+                checkFirstRegister(lineNumber, name, "register number", "register \"%s\" in " + name + " instruction does not contain a valid register number", true);
+                if (lexer.kind(2) == Moncky2Lexer.NONE) {
+                    //not enough arguments for instruction
+                    report(lineNumber, 2, LintDiagnostic.Code.ARGUMENT, "missing second argument in " + name + " instruction (register)");
+                    return;
                 }
-                //checking for first register syntax (comma after register number)
-                if (!codeLineParts[1].endsWith(",")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] +"\" in st/ld instruction. Missing a comma after register \"r??,\"");
+                //checking for second register syntax
+                if (!lexer.startsWith(2, "r")) {
+                    report(lineNumber, 2, LintDiagnostic.Code.SYNTAX, "invalid second argument \"" + part(2) + "\" in " + name + " instruction. Should be a register \"r??\"");
+                    return;
                 }
                 //checking if the instruction contains a valid register number (real number and in range)
-                if (codeLineParts[1].startsWith("r") && codeLineParts[1].endsWith(",")){
-                    //check if number of register 1 is valid
-                    short number = Short.parseShort(codeLineParts[1].substring(1, codeLineParts[1].length() - 1));
-                    if (number > 15){
-                        System.out.println(lineNumber + ERROR_VALUE + " : first register number \"" + codeLineParts[1] + "\" in st/ld instruction is too high (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number < 0){
-                        System.out.println(lineNumber + ERROR_VALUE + " : first register number \"" + codeLineParts[1] + "\" in st/ld instruction is too low (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number == 15 && codeLineParts[0].equals("ld")){
-                        System.out.println(lineNumber + WARNING + " : changing register number 15 will change the index of the next executed instruction. " + ANSI_GREEN +"Use 'jp' instead to jump to a instruction" + ANSI_RESET);
-                    }
+                int number = registerNumber(2, false);
+                if (number == NOT_A_NUMBER) {
+                    //invalid numerical value in instruction
+                    report(lineNumber, 2, LintDiagnostic.Code.VALUE, "second register \"" + part(2) + "\" in " + name + " instruction does not contain a valid register number");
+                } else {
+                    checkRange(lineNumber, 2, number, "register number", name);
                 }
+                return;
+            }
+            //command not recognized by linter
+            report(lineNumber, 0, LintDiagnostic.Code.UNKNOWN_INSTRUCTION, "unknown command \"" + part(0) + "\".");
+        }
 
-            } catch (IndexOutOfBoundsException ignored) {
+        /**
+         * this method checks the first argument of li, ld, st, and the ALU instructions: a register followed by a comma
+         * @param lineNumber the current instruction index
+         * @param instruction name of the instruction in messages
+         * @param description name of the argument in range messages
+         * @param invalidMessage message for a register without a valid number, %s is the argument
+         * @param writesRegister true when the instruction changes the register (a change of register 15 is a jump)
+         */
+        private void checkFirstRegister(int lineNumber, String instruction, String description, String invalidMessage, boolean writesRegister) {
+            if (lexer.kind(1) == Moncky2Lexer.NONE) {
                 //not enough arguments for instruction
-                System.out.println(lineNumber + ERROR_ARGUMENT + " : missing first argument in ld/st instruction (register)");
-            } catch (NumberFormatException ignored){
-                //invalid numerical value in instruction
-                System.out.println(lineNumber + ERROR_VALUE + " : first register \"" + codeLineParts[1] + "\" in st/ld instruction does not contain a valid number");
+                String name = instruction.equals("st/ld") ? "ld/st" : instruction;
+                report(lineNumber, 1, LintDiagnostic.Code.ARGUMENT, "missing first argument in " + name + " instruction (register)");
+                return;
             }
-            try {
-                //checking for second register syntax (opening parenthesis)
-                if (!codeLineParts[2].startsWith("(")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid second argument \"" + codeLineParts[2] +"\" in st/ld instruction. Register is missing an opening parenthesis \"(r??)\"");
-                }
-                //checking for second register syntax (closing parenthesis)
-                if (!codeLineParts[2].endsWith(")")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid second argument \"" + codeLineParts[2] +"\" in st/ld instruction. Register is missing a closing parenthesis \"(r??)\"");
-                }
-                //checking if the instruction contains a valid register number (real number and in range)
-                if (codeLineParts[2].startsWith("(r") && codeLineParts[2].endsWith(")")){
-                    //check if number of register 1 is valid
-                    short number = Short.parseShort(codeLineParts[2].substring(2, codeLineParts[2].length() - 1));
-                    if (number > 15){
-                        System.out.println(lineNumber + ERROR_VALUE + " : second register number \"" + codeLineParts[2] + "\" in st/ld instruction is too high (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number < 0){
-                        System.out.println(lineNumber + ERROR_VALUE + " : second register number \"" + codeLineParts[2] + "\" in st/ld instruction is too low (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                }
-            } catch (IndexOutOfBoundsException ignored) {
-                //not enough arguments for instruction
-                System.out.println(lineNumber + ERROR_ARGUMENT + " : missing first argument in ld/st instruction (register)");
-            } catch (NumberFormatException ignored){
-                //invalid numerical value in instruction
-                System.out.println(lineNumber + ERROR_VALUE + " : second register \"" + codeLineParts[1] + "\" in st/ld instruction does not contain a valid number");
+            //checking for first register syntax
+            boolean register = lexer.startsWith(1, "r");
+            if (!register) {
+                //the li message names st/ld too
+                String name = instruction.equals("li") ? "st/ld" : instruction;
+                report(lineNumber, 1, LintDiagnostic.Code.SYNTAX, "invalid argument \"" + part(1) + "\" in " + name + " instruction. Should be a register followed by a comma \"r??,\"");
             }
-            return;
-        }
-        if (codeLineParts[0].equals("jp")){ //jp rxx
-            try {
-                //checking for register syntax
-                if (!codeLineParts[1].startsWith("r")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] +"\" in jp instruction. Should be a register followed by a comma \"r??,\"");
-                }
-                //checking if the instruction contains a valid register number (real number and in range)
-                if (codeLineParts[1].startsWith("r")){
-                    //check if number of register 1 is valid
-                    short number = Short.parseShort(codeLineParts[1].substring(1));
-                    if (number > 15){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in jp instruction is too high (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number < 0){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in jp instruction is too low (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number == 15){
-                        System.out.println(lineNumber + WARNING + " : using register 15 with jp instruction will jump to current instruction and result in an infinite loop. " + ANSI_RED + "AVOID" + ANSI_RESET);
-                    }
-                }
-            } catch (IndexOutOfBoundsException ignored) {
-                //not enough arguments for instruction
-                System.out.println(lineNumber + ERROR_ARGUMENT + " : missing argument in jp instruction (register)");
-            } catch (NumberFormatException ignored){
+            //checking for first register syntax (comma after register number)
+            boolean comma = endsWithComma(1);
+            if (!comma) {
+                report(lineNumber, 1, LintDiagnostic.Code.SYNTAX, "invalid argument \"" + part(1) + "\" in " + instruction + " instruction. Missing a comma after register \"r??,\"");
+            }
+            if (!register || !comma) {
+                return;
+            }
+            //checking if the instruction contains a valid register number (real number and in range)
+            int number = registerNumber(1, true);
+            if (number == NOT_A_NUMBER) {
                 //invalid numerical value in instruction
-                System.out.println(lineNumber + ERROR_VALUE + " : register \"" + codeLineParts[1] + "\" in jp instruction does not contain a valid number");
+                report(lineNumber, 1, LintDiagnostic.Code.VALUE, String.format(invalidMessage, part(1)));
+                return;
+            }
+            checkRange(lineNumber, 1, number, description, instruction);
+            if (number == 15 && writesRegister) {
+                advise(lineNumber, 1, LintDiagnostic.Code.PRACTICE, "changing register number 15 will change the index of the next executed instruction.", "Use 'jp' instead to jump to a instruction");
             }
-            return;
         }
-        else if (codeLineParts[0].startsWith("jp")){
-            //check if the conditional jump uses the correct flag, if not, give an error warning
-            if (codeLineParts[0].equals("jps") ||
-                    codeLineParts[0].equals("jpns") ||
-                    codeLineParts[0].equals("jpz") ||
-                    codeLineParts[0].equals("jpnz") ||
-                    codeLineParts[0].equals("jpo") ||
-                    codeLineParts[0].equals("jpno") ||
-                    codeLineParts[0].equals("jpc") ||
-                    codeLineParts[0].equals("jpnc")
-            ) {
-                String i = codeLineParts[0]; // save the instruction name to avoid repeating codeLineParts[0] (readability)
-                try {
-                    //checking for register syntax
-                    if (!codeLineParts[1].startsWith("r")) {
-                        System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] + "\" in " + i + " instruction. Should be a register followed by a comma \"r??,\"");
-                    }
-                    //checking if the instruction contains a valid register number (real number and in range)
-                    if (codeLineParts[1].startsWith("r")) {
-                        //check if number of register 1 is valid
-                        short number = Short.parseShort(codeLineParts[1].substring(1));
-                        if (number > 15) {
-                            System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in " + i + " instruction is too high (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                        }
-                        if (number < 0) {
-                            System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in " + i + " instruction is too low (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                        }
-                        if (number == 15) {
-                            System.out.println(lineNumber + WARNING + " : using register 15 with jp instruction will jump to current instruction and result in an infinite loop. " + ANSI_RED + "AVOID" + ANSI_RESET);
-                        }
-                    }
 
-                } catch (IndexOutOfBoundsException ignored) {
-                    //not enough arguments for instruction
-                    System.out.println(lineNumber + ERROR_ARGUMENT + " : missing argument in " + i + " instruction (register)");
-                } catch (NumberFormatException ignored) {
-                    //invalid numerical value in instruction
-                    System.out.println(lineNumber + ERROR_VALUE + " : register \"" + codeLineParts[1] + "\" in " + i + " instruction does not contain a valid number");
-                }
+        //reports a register number outside 0-15
+        private void checkRange(int lineNumber, int token, int number, String description, String instruction) {
+            if (number > 15) {
+                report(lineNumber, token, LintDiagnostic.Code.VALUE, description + " \"" + part(token) + "\" in " + instruction + " instruction is too high (0-15).", "No register with number " + number);
             }
-            else {
-                //any conditional jump that uses a non-default flag will give an error warning
-                System.out.println(lineNumber + ERROR_UNKNOWN + " : conditional jump instruction \"" + codeLineParts[0] + "\" does not exist");
+            if (number < 0) {
+                report(lineNumber, token, LintDiagnostic.Code.VALUE, description + " \"" + part(token) + "\" in " + instruction + " instruction is too low (0-15).", "No register with number " + number);
             }
-            return;
         }
-        //funny long if statement that covers all the ALU operation instructions as they use the same syntax
-        if (codeLineParts[0].equals("nop") ||
-                codeLineParts[0].equals("or") ||
-                codeLineParts[0].equals("and") ||
-                codeLineParts[0].equals("xor") ||
-                codeLineParts[0].equals("add") ||
-                codeLineParts[0].equals("sub") ||
-                codeLineParts[0].equals("shl") ||
-                codeLineParts[0].equals("shr") ||
-                codeLineParts[0].equals("ashr") ||
-                codeLineParts[0].equals("not") ||
-                codeLineParts[0].equals("neg")
-        ){
-            try {
-                //checking for first register syntax
-                if (!codeLineParts[1].startsWith("r")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] +"\" in " + codeLineParts[0] + " instruction. Should be a register followed by a comma \"r??,\"");
-                }
-                //checking for first register syntax (comma after register number)
-                if (!codeLineParts[1].endsWith(",")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid argument \"" + codeLineParts[1] +"\" in " + codeLineParts[0] + " instruction. Missing a comma after register \"r??,\"");
-                }
-                //checking if the instruction contains a valid register number (real number and in range)
-                if (codeLineParts[1].startsWith("r") && codeLineParts[1].endsWith(",")){
-                    //check if number of register 1 is valid
-                    short number = Short.parseShort(codeLineParts[1].substring(1, codeLineParts[1].length()-1));
-                    if (number > 15){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in " + codeLineParts[0] + " instruction is too high (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number < 0){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[1] + "\" in " + codeLineParts[0] + " instruction is too low (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number == 15){
-                        System.out.println(lineNumber + WARNING + " : changing register number 15 will change the index of the next executed instruction. " + ANSI_GREEN +"Use 'jp' instead to jump to a instruction" + ANSI_RESET);
-                    }
-                }
 
-            } catch (IndexOutOfBoundsException ignored) {
-                //not enough arguments for instruction
-                System.out.println(lineNumber + ERROR_ARGUMENT + " : missing first argument in " + codeLineParts[0] + " instruction (register)");
-            } catch (NumberFormatException ignored){
-                //invalid numerical value in instruction
-                System.out.println(lineNumber + ERROR_VALUE + " : register \"" + codeLineParts[1] + "\" in " + codeLineParts[0] + " instruction does not contain a valid register number");
+        /**
+         * this method reads the number of a register token "rN"
+         * @param token index of a token that starts with "r"
+         * @param commaExpected true when a comma after the register belongs to the syntax, otherwise it makes the number invalid
+         * @return the number as Short.parseShort reads it (a sign is allowed), or NOT_A_NUMBER
+         */
+        private int registerNumber(int token, boolean commaExpected) {
+            if (!commaExpected && lexer.hasComma(token)) return NOT_A_NUMBER;
+            if (lexer.kind(token) == Moncky2Lexer.REGISTER) return toShort(lexer.value(token));
+            return shortValue(token, 1, lexer.end(token) - lexer.start(token));
+        }
+
+        //reads characters from to to (offsets in the token) like Short.parseShort, NOT_A_NUMBER when it would fail
+        private int shortValue(int token, int from, int to) {
+            int position = lexer.start(token) + from;
+            int end = lexer.start(token) + to;
+            boolean negative = false;
+            if (position < end && (line.charAt(position) == '-' || line.charAt(position) == '+')) {
+                negative = line.charAt(position) == '-';
+                position++;
             }
-            try {
-                //checking for second register syntax
-                if (!codeLineParts[2].startsWith("r")){
-                    System.out.println(lineNumber + ERROR_SYNTAX + " : invalid second argument \"" + codeLineParts[2] +"\" in " + codeLineParts[0] + " instruction. Should be a register \"r??\"");
-                }
-                //checking if the instruction contains a valid register number (real number and in range)
-                if (codeLineParts[2].startsWith("r")){
-                    //check if number of register 2 is valid
-                    short number = Short.parseShort(codeLineParts[2].substring(1));
-                    if (number > 15){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[2] + "\" in " + codeLineParts[0] + " instruction is too high (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                    if (number < 0){
-                        System.out.println(lineNumber + ERROR_VALUE + " : register number \"" + codeLineParts[2] + "\" in " + codeLineParts[0] + " instruction is too low (0-15). " + ANSI_RED + "No register with number " + number + ANSI_RESET);
-                    }
-                }
+            if (position >= end) return NOT_A_NUMBER;
+            int value = 0;
+            for (; position < end; position++) {
+                int digit = Character.digit(line.charAt(position), 10);
+                //more than 5 digits only fit with leading zeros, the check below catches larger values
+                if (digit < 0 || value > Short.MAX_VALUE + 1) return NOT_A_NUMBER;
+                value = value * 10 + digit;
+            }
+            return toShort(negative ? -value : value);
+        }
 
-            } catch (IndexOutOfBoundsException ignored) {
-                //not enough arguments for instruction
-                System.out.println(lineNumber + ERROR_ARGUMENT + " : missing second argument in " + codeLineParts[0] + " instruction (register)");
-            } catch (NumberFormatException ignored){
-                //invalid numerical value in instruction
-                System.out.println(lineNumber + ERROR_VALUE + " : second register \"" + codeLineParts[2] + "\" in " + codeLineParts[0] + " instruction does not contain a valid register number");
+        //the value when it fits in a short, otherwise NOT_A_NUMBER
+        private int toShort(int value) {
+            return value < Short.MIN_VALUE || value > Short.MAX_VALUE ? NOT_A_NUMBER : value;
+        }
+
+        //true when the text of a token in messages ends with a comma (a comment keeps the commas in it)
+        private boolean endsWithComma(int token) {
+            return lexer.hasComma(token) || lexer.endsWith(token, ",");
+        }
+
+        //true when token i is the word, without a comma after it
+        private boolean isPart(int token, String word) {
+            return lexer.is(token, word) && !lexer.hasComma(token);
+        }
+
+        //the word of the list token 0 is, or null
+        private String find(String[] words) {
+            for (String word : words) {
+                if (isPart(0, word)) return word;
             }
-            return;
+            return null;
+        }
+
+        //text of a token for messages, with the comma after it
+        private String part(int token) {
+            return lexer.hasComma(token) ? lexer.text(token) + "," : lexer.text(token);
         }
-        //command not recognized by linter
-        System.out.println(lineNumber + ERROR_UNKNOWN + " : unknown command \"" + codeLineParts[0] + "\".");
     }
 }
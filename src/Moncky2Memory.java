@@ -0,0 +1,35 @@
+/*
+RAM of the Moncky-2: 65536 16-bit words.
+ArrayMemory keeps the words in a short array (the default), MappedFileMemory keeps them in a memory-mapped image file.
+Addresses outside 0-65535 throw an ArrayIndexOutOfBoundsException in every implementation,
+so programs fail the same way whatever memory they run on.
+ */
+public interface Moncky2Memory {
+
+    //number of 16-bit words in memory
+    int WORDS = 65536;
+
+    /**
+     * this method reads a word from memory
+     * @param address address of the word (0-65535)
+     * @return the word
+     */
+    short read(int address);
+
+    /**
+     * this method writes a word to memory
+     * @param address address of the word (0-65535)
+     * @param value new value of the word
+     */
+    void write(int address, short value);
+
+    /**
+     * this method copies words into memory, starting at address 0
+     * @param words words to copy (at most WORDS)
+     */
+    default void load(short[] words) {
+        for (int i = 0; i < words.length; i++) {
+            write(i, words[i]);
+        }
+    }
+}
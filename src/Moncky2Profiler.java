@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+Opt-in execution profiler for the interpreter (see Moncky2Interpreter.setProfiler).
+The run loop calls record once for every instruction, before the instruction runs. All counters are primitive arrays:
+- hits per program counter (instruction index, or address for memory images)
+- executions per opcode
+- taken and not taken counts per jump, with the last target (taken means the jump changed the program counter)
+- reads and writes per memory address
+The report maps program counters back to source lines and labels, and lists the loops (backward jumps) that ran most.
+ */
+public class Moncky2Profiler {
+
+    //number of lines in the "hottest" lists of the text report
+    public static final int TOP = 15;
+
+    private long[] hits = new long[0];
+    private long[] taken = new long[0];
+    private long[] notTaken = new long[0];
+    private int[] lastTarget = new int[0];
+    private final long[] opcodes = new long[CommandDecoder.MNEMONICS.length];
+    private final long[] reads = new long[Moncky2Memory.WORDS];
+    private final long[] writes = new long[Moncky2Memory.WORDS];
+    private long instructions = 0;
+
+    //source information of every program counter, null for memory images
+    private int[] sourceLines = null;
+    private String[] sourceTexts = null;
+    private String[] labels = null;
+    private int[] labelOffsets = null;
+
+    /**
+     * this method clears all counters, the interpreter calls it when a program is loaded
+     * @param length number of program counters (decoded instructions, or Moncky2Memory.WORDS for memory images)
+     * @param rawCode lines of the source code, or null for memory images
+     */
+    public void reset(int length, String[] rawCode) {
+        hits = new long[length];
+        taken = new long[length];
+        notTaken = new long[length];
+        lastTarget = new int[length];
+        Arrays.fill(opcodes, 0);
+        Arrays.fill(reads, 0);
+        Arrays.fill(writes, 0);
+        instructions = 0;
+        sourceLines = null;
+        sourceTexts = null;
+        labels = null;
+        labelOffsets = null;
+        if (rawCode != null) mapSource(rawCode, length);
+    }
+
+    //finds the source line and the label above every instruction, the same lines Moncky2Interpreter.removeLabelsAndComments keeps
+    private void mapSource(String[] rawCode, int length) {
+        sourceLines = new int[length];
+        sourceTexts = new String[length];
+        labels = new String[length];
+        labelOffsets = new int[length];
+        String label = null;
+        int labelStart = 0;
+        int pc = 0;
+        for (int line = 0; line < rawCode.length && pc < length; line++) {
+            String command = rawCode[line].strip();
+            if (command.isEmpty() || command.startsWith(";")) continue;
+            if (command.startsWith(":")) {
+                label = SymbolTable.getLabelName(command);
+                labelStart = pc;
+                continue;
+            }
+            sourceLines[pc] = line + 1;
+            sourceTexts[pc] = command;
+            labels[pc] = label;
+            labelOffsets[pc] = pc - labelStart;
+            pc++;
+        }
+    }
+
+    /**
+     * this method counts an instruction, it is called by the run loop before the instruction runs
+     * @param pc program counter of the instruction
+     * @param instruction decoded instruction (see CommandDecoder)
+     * @param flags packed flags before the instruction (see Moncky2ALU)
+     * @param register the registers before the instruction
+     */
+    public void record(int pc, int instruction, int flags, short[] register) {
+        int opcode = instruction & 0xFF;
+        instructions++;
+        hits[pc]++;
+        opcodes[opcode]++;
+        switch (opcode) {
+            case CommandDecoder.OP_LD:
+                reads[register[(instruction >> 12) & 0xF] & 0xFFFF]++;
+                break;
+            case CommandDecoder.OP_ST:
+                writes[register[(instruction >> 12) & 0xF] & 0xFFFF]++;
+                break;
+            case CommandDecoder.OP_JP:
+            case CommandDecoder.OP_JPC:
+            case CommandDecoder.OP_JPNC:
+            case CommandDecoder.OP_JPZ:
+            case CommandDecoder.OP_JPNZ:
+            case CommandDecoder.OP_JPS:
+            case CommandDecoder.OP_JPNS:
+            case CommandDecoder.OP_JPO:
+            case CommandDecoder.OP_JPNO: {
+                //a target of 0 does not jump (except for jp), the next instruction after a jump is the one after the target
+                int target = register[(instruction >> 8) & 0xF];
+                boolean jumps = opcode == CommandDecoder.OP_JP || (condition(opcode, flags) && target != 0);
+                if (jumps) {
+                    taken[pc]++;
+                    lastTarget[pc] = target + 1;
+                } else {
+                    notTaken[pc]++;
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private static boolean condition(int opcode, int flags) {
+        switch (opcode) {
+            case CommandDecoder.OP_JPC: return (flags & Moncky2ALU.FLAG_CARRY) != 0;
+            case CommandDecoder.OP_JPNC: return (flags & Moncky2ALU.FLAG_CARRY) == 0;
+            case CommandDecoder.OP_JPZ: return (flags & Moncky2ALU.FLAG_ZERO) != 0;
+            case CommandDecoder.OP_JPNZ: return (flags & Moncky2ALU.FLAG_ZERO) == 0;
+            case CommandDecoder.OP_JPS: return (flags & Moncky2ALU.FLAG_SIGN) != 0;
+            case CommandDecoder.OP_JPNS: return (flags & Moncky2ALU.FLAG_SIGN) == 0;
+            case CommandDecoder.OP_JPO: return (flags & Moncky2ALU.FLAG_OVERFLOW) != 0;
+            default: return (flags & Moncky2ALU.FLAG_OVERFLOW) == 0;
+        }
+    }
+
+    //"line 12, :loop+3" for source code, "address 0x0012" for memory images
+    private String location(int pc) {
+        if (sourceLines == null) return String.format("address 0x%04x", pc);
+        String location = "line " + sourceLines[pc];
+        if (labels[pc] != null) location += ", " + labels[pc] + "+" + labelOffsets[pc];
+        return location;
+    }
+
+    //a loop is a taken backward jump: the loop runs from the target of the jump up to the jump
+    private List<int[]> findLoops() {
+        List<int[]> loops = new ArrayList<>();
+        for (int pc = 0; pc < taken.length; pc++) {
+            if (taken[pc] > 0 && lastTarget[pc] >= 0 && lastTarget[pc] <= pc) loops.add(new int[]{lastTarget[pc], pc});
+        }
+        loops.sort(Comparator.comparingLong((int[] loop) -> -taken[loop[1]]));
+        return loops;
+    }
+
+    //number of instructions executed between two program counters (both included)
+    private long rangeHits(int from, int to) {
+        long sum = 0;
+        for (int pc = from; pc <= to; pc++) sum += hits[pc];
+        return sum;
+    }
+
+    private List<Integer> hottest(long[] counts, int limit) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) indexes.add(i);
+        }
+        indexes.sort(Comparator.comparingLong((Integer i) -> -counts[i]).thenComparingInt(i -> i));
+        return indexes.subList(0, Math.min(limit, indexes.size()));
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0.0 : 100.0 * part / total;
+    }
+
+    /**
+     * this method builds the text report: hottest instructions and loops, opcode histogram, jumps, and memory use
+     * @return report text
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("profile of ").append(instructions).append(" executed instructions\n");
+
+        report.append("\nhottest instructions\n");
+        for (int pc : hottest(hits, TOP)) {
+            report.append(String.format("  %6d  %12d  %5.1f%%  %-24s %s%n", pc, hits[pc], percent(hits[pc], instructions),
+                    location(pc), sourceTexts == null ? "" : sourceTexts[pc]));
+        }
+
+        report.append("\nhottest loops (taken backward jumps)\n");
+        List<int[]> loops = findLoops();
+        for (int[] loop : loops.subList(0, Math.min(TOP, loops.size()))) {
+            long loopHits = rangeHits(loop[0], loop[1]);
+            report.append(String.format("  %s to %s: %d iterations, %d instructions (%.1f%%)%n", location(loop[0]), location(loop[1]),
+                    taken[loop[1]], loopHits, percent(loopHits, instructions)));
+        }
+
+        report.append("\nopcodes\n");
+        for (int opcode : hottest(opcodes, opcodes.length)) {
+            report.append(String.format("  %-8s %12d  %5.1f%%%n", CommandDecoder.MNEMONICS[opcode], opcodes[opcode], percent(opcodes[opcode], instructions)));
+        }
+
+        report.append("\njumps\n");
+        for (int pc = 0; pc < taken.length; pc++) {
+            long total = taken[pc] + notTaken[pc];
+            if (total == 0) continue;
+            report.append(String.format("  %6d  %-24s taken %d, not taken %d (%.1f%% taken)%n", pc, location(pc), taken[pc], notTaken[pc], percent(taken[pc], total)));
+        }
+
+        long totalReads = 0;
+        long totalWrites = 0;
+        long[] accesses = new long[Moncky2Memory.WORDS];
+        for (int address = 0; address < Moncky2Memory.WORDS; address++) {
+            totalReads += reads[address];
+            totalWrites += writes[address];
+            accesses[address] = reads[address] + writes[address];
+        }
+        report.append("\nmemory: ").append(totalReads).append(" reads, ").append(totalWrites).append(" writes\n");
+        for (int address : hottest(accesses, TOP)) {
+            report.append(String.format("  #%-6d reads %d, writes %d%n", address, reads[address], writes[address]));
+        }
+        return report.toString();
+    }
+
+    /**
+     * this method builds the full profile as JSON: every instruction that ran, every opcode, jump, loop, and memory address that was used
+     * @return JSON text
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"instructions\": ").append(instructions).append(",\n");
+
+        json.append("  \"pcs\": [");
+        String separator = "\n";
+        for (int pc = 0; pc < hits.length; pc++) {
+            if (hits[pc] == 0) continue;
+            json.append(separator).append("    {\"pc\": ").append(pc).append(", \"hits\": ").append(hits[pc]);
+            appendSource(json, pc);
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"opcodes\": {");
+        separator = "\n";
+        for (int opcode = 0; opcode < opcodes.length; opcode++) {
+            if (opcodes[opcode] == 0) continue;
+            json.append(separator).append("    \"").append(CommandDecoder.MNEMONICS[opcode]).append("\": ").append(opcodes[opcode]);
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"jumps\": [");
+        separator = "\n";
+        for (int pc = 0; pc < taken.length; pc++) {
+            if (taken[pc] + notTaken[pc] == 0) continue;
+            json.append(separator).append("    {\"pc\": ").append(pc).append(", \"taken\": ").append(taken[pc])
+                    .append(", \"notTaken\": ").append(notTaken[pc]);
+            appendSource(json, pc);
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"loops\": [");
+        separator = "\n";
+        for (int[] loop : findLoops()) {
+            json.append(separator).append("    {\"from\": ").append(loop[0]).append(", \"to\": ").append(loop[1])
+                    .append(", \"iterations\": ").append(taken[loop[1]]).append(", \"instructions\": ").append(rangeHits(loop[0], loop[1])).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"memory\": [");
+        separator = "\n";
+        for (int address = 0; address < Moncky2Memory.WORDS; address++) {
+            if (reads[address] + writes[address] == 0) continue;
+            json.append(separator).append("    {\"address\": ").append(address).append(", \"reads\": ").append(reads[address])
+                    .append(", \"writes\": ").append(writes[address]).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private void appendSource(StringBuilder json, int pc) {
+        if (sourceLines == null) return;
+        json.append(", \"line\": ").append(sourceLines[pc]);
+        if (labels[pc] != null) json.append(", \"label\": \"").append(escape(labels[pc])).append("\", \"offset\": ").append(labelOffsets[pc]);
+        json.append(", \"source\": \"").append(escape(sourceTexts[pc])).append('"');
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') escaped.append('\\').append(c);
+            else if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * this method writes the text and JSON reports
+     * @param textFile location of the text report
+     * @param jsonFile location of the JSON report
+     * @throws IOException when a report can't be written
+     */
+    public void writeReports(Path textFile, Path jsonFile) throws IOException {
+        Files.writeString(textFile, getReport());
+        Files.writeString(jsonFile, toJson());
+    }
+
+    //getter for the hits per program counter
+    public long[] getHits() {
+        return hits;
+    }
+
+    //getter for the executions per opcode, indexed by opcode (see CommandDecoder)
+    public long[] getOpcodeCounts() {
+        return opcodes;
+    }
+}
@@ -0,0 +1,507 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Cache of program results, addressed by the content of the program instead of its text.
+
+The key is a SHA-256 hash of the normalized program and its initial memory:
+- source code is normalized like loadCode does it: empty lines, comments, and labels are removed
+  (Moncky2Interpreter.removeLabelsAndComments), and every instruction is decoded (CommandDecoder), so labels become
+  the numbers they stand for and the spelling of registers, numbers, and whitespace doesn't matter. Commands the
+  decoder can't read are hashed as their stripped text. A source program starts with empty memory
+- a memory image is hashed as its words (without the zeros at the end), it is the program and the initial memory
+So submissions that only differ in comments, blank lines, whitespace, or label names get the same key.
+
+An entry holds the final cpu state (status, error, instruction count, registers, flags, ALU value, non-zero memory)
+and the linter diagnostics, assembler errors, and assembled image of the text it was made from. Diagnostics and
+assembler errors mention line numbers, so they are only reused for the same text (see getSourceHash), for another
+text with the same key the caller checks and assembles it again and reuses only the run.
+
+Entries are kept in memory in least-recently-used order until they take more than maxBytes (estimated). With a
+directory, every entry is also written to a file named after its key, and an entry that is not in memory is read
+from there (and kept in memory again). Writing a file is best effort, an entry that can't be written stays in
+memory only (getDiskErrors). The directory is not cleaned up by the cache.
+ */
+public class Moncky2ResultCache {
+
+    //first bytes of an entry file, and its format version
+    private static final int FILE_MAGIC = 0x4D32_5243;
+    private static final int FILE_VERSION = 2;
+
+    //the result of one program
+    public static class Entry {
+        private final String status;
+        private final String error;
+        private final long instructionCount;
+        private final short[] registers;
+        private final int flags;
+        private final short alu;
+        private final int[] memoryAddresses;
+        private final short[] memoryValues;
+        private final String sourceHash;
+        private final List<LintDiagnostic> diagnostics;
+        private final List<String> assemblyErrors;
+        private final String hex;
+
+        /**
+         * constructor
+         * @param status final status of the run (for example "halted")
+         * @param error message of the error that stopped the run, or null
+         * @param instructionCount number of instructions the run executed
+         * @param registers final registers (copied)
+         * @param flags final packed ALU flags
+         * @param alu final ALU value
+         * @param memory final memory, only the non-zero words are kept
+         * @param sourceHash hash of the exact text of the program (see hashText)
+         * @param diagnostics linter diagnostics of the text
+         * @param assemblyErrors assembler errors of the text
+         * @param hex assembled memory image of the text, or null
+         */
+        public Entry(String status, String error, long instructionCount, short[] registers, int flags, short alu,
+                     Moncky2Memory memory, String sourceHash, List<LintDiagnostic> diagnostics, List<String> assemblyErrors, String hex) {
+            this.status = status;
+            this.error = error;
+            this.instructionCount = instructionCount;
+            this.registers = registers.clone();
+            this.flags = flags;
+            this.alu = alu;
+            int count = 0;
+            for (int i = 0; i < Moncky2Memory.WORDS; i++) {
+                if (memory.read(i) != 0) count++;
+            }
+            memoryAddresses = new int[count];
+            memoryValues = new short[count];
+            count = 0;
+            for (int i = 0; i < Moncky2Memory.WORDS; i++) {
+                short value = memory.read(i);
+                if (value == 0) continue;
+                memoryAddresses[count] = i;
+                memoryValues[count++] = value;
+            }
+            this.sourceHash = sourceHash;
+            this.diagnostics = List.copyOf(diagnostics);
+            this.assemblyErrors = List.copyOf(assemblyErrors);
+            this.hex = hex;
+        }
+
+        private Entry(String status, String error, long instructionCount, short[] registers, int flags, short alu,
+                      int[] memoryAddresses, short[] memoryValues, String sourceHash, List<LintDiagnostic> diagnostics,
+                      List<String> assemblyErrors, String hex) {
+            this.status = status;
+            this.error = error;
+            this.instructionCount = instructionCount;
+            this.registers = registers;
+            this.flags = flags;
+            this.alu = alu;
+            this.memoryAddresses = memoryAddresses;
+            this.memoryValues = memoryValues;
+            this.sourceHash = sourceHash;
+            this.diagnostics = diagnostics;
+            this.assemblyErrors = assemblyErrors;
+            this.hex = hex;
+        }
+
+        /**
+         * this method creates an entry with the same run for another text with the same key
+         * @param sourceHash hash of the other text
+         * @param diagnostics linter diagnostics of the other text
+         * @param assemblyErrors assembler errors of the other text
+         * @param hex assembled memory image of the other text, or null
+         * @return new entry
+         */
+        public Entry withSource(String sourceHash, List<LintDiagnostic> diagnostics, List<String> assemblyErrors, String hex) {
+            return new Entry(status, error, instructionCount, registers, flags, alu, memoryAddresses, memoryValues,
+                    sourceHash, List.copyOf(diagnostics), List.copyOf(assemblyErrors), hex);
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getInstructionCount() {
+            return instructionCount;
+        }
+
+        //getter for a copy of the final registers
+        public short[] getRegisters() {
+            return registers.clone();
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public short getALU() {
+            return alu;
+        }
+
+        //getter for the addresses of the non-zero memory words, in increasing order (do not change the array)
+        public int[] getMemoryAddresses() {
+            return memoryAddresses;
+        }
+
+        //getter for the values of the non-zero memory words, in the order of getMemoryAddresses (do not change the array)
+        public short[] getMemoryValues() {
+            return memoryValues;
+        }
+
+        public String getSourceHash() {
+            return sourceHash;
+        }
+
+        public List<LintDiagnostic> getDiagnostics() {
+            return diagnostics;
+        }
+
+        public List<String> getAssemblyErrors() {
+            return assemblyErrors;
+        }
+
+        public String getHex() {
+            return hex;
+        }
+
+        //estimated size of the entry in memory, in bytes
+        private long estimateBytes() {
+            long bytes = 160 + registers.length * 2L + memoryAddresses.length * 6L;
+            bytes += 2L * (length(status) + length(error) + length(sourceHash) + length(hex));
+            for (LintDiagnostic diagnostic : diagnostics) {
+                bytes += 64 + 2L * (length(diagnostic.getMessage()) + length(diagnostic.getHint()));
+            }
+            for (String assemblyError : assemblyErrors) {
+                bytes += 40 + 2L * assemblyError.length();
+            }
+            return bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long diskErrors = 0;
+
+    /**
+     * constructor
+     * @param maxBytes estimated size of the entries kept in memory, older entries are dropped first
+     * @param directory directory for the entry files, or null to keep entries in memory only
+     * @throws IOException when the directory can't be created
+     */
+    public Moncky2ResultCache(long maxBytes, Path directory) throws IOException {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        if (directory != null) Files.createDirectories(directory);
+    }
+
+    /**
+     * this method computes the key of source code
+     * @param code raw code with labels, comments, and empty lines
+     * @return hexadecimal SHA-256 of the normalized program
+     */
+    public static String key(String code) {
+        String[] lines = code.split("\n");
+        SymbolTable symbolTable = new SymbolTable(lines);
+        String[] commands = Moncky2Interpreter.removeLabelsAndComments(Moncky2Interpreter.stripEmptyCommands(lines));
+        MessageDigest digest = sha256();
+        digest.update("moncky2 source\n".getBytes(StandardCharsets.US_ASCII));
+        Moncky2Lexer lexer = new Moncky2Lexer();
+        byte[] word = new byte[5];
+        for (String command : commands) {
+            int instruction;
+            try {
+                instruction = CommandDecoder.decodeCommand(lexer, command, symbolTable);
+            } catch (RuntimeException e) {
+                //a missing label: loadCode fails with its name, so the text is part of the key
+                instruction = CommandDecoder.OP_LEGACY;
+            }
+            if (instruction == CommandDecoder.OP_LEGACY) {
+                //executed as text, the text decides what happens
+                digest.update((byte) 1);
+                digest.update((command.strip() + "\n").getBytes(StandardCharsets.UTF_8));
+                continue;
+            }
+            word[0] = 0;
+            word[1] = (byte) (instruction >>> 24);
+            word[2] = (byte) (instruction >>> 16);
+            word[3] = (byte) (instruction >>> 8);
+            word[4] = (byte) instruction;
+            digest.update(word);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * this method computes the key of a memory image
+     * @param image words of the image, starting at address 0
+     * @return hexadecimal SHA-256 of the words without the zeros at the end
+     */
+    public static String key(short[] image) {
+        int length = image.length;
+        while (length > 0 && image[length - 1] == 0) length--;
+        MessageDigest digest = sha256();
+        digest.update("moncky2 image\n".getBytes(StandardCharsets.US_ASCII));
+        byte[] bytes = new byte[length * 2];
+        for (int i = 0; i < length; i++) {
+            bytes[2 * i] = (byte) (image[i] >>> 8);
+            bytes[2 * i + 1] = (byte) image[i];
+        }
+        digest.update(bytes);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * this method hashes the exact text of a program, to know if the diagnostics of an entry belong to it
+     * @param text text of the program
+     * @return hexadecimal SHA-256 of the text
+     */
+    public static String hashText(String text) {
+        return toHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * this method looks up an entry, in memory first and then in the directory
+     * @param key key of the program (see key)
+     * @return the entry, or null when the program is not in the cache
+     */
+    public Entry get(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+        }
+        Entry entry = directory != null ? readFile(key) : null;
+        synchronized (this) {
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            keep(key, entry);
+            return entry;
+        }
+    }
+
+    /**
+     * this method adds or replaces an entry, in memory and in the directory
+     * the directory is best effort: when the file can't be written (directory removed, disk full, ...) the entry is
+     * only kept in memory and the failure is counted in getDiskErrors
+     * @param key key of the program (see key)
+     * @param entry result of the program
+     */
+    public void put(String key, Entry entry) {
+        synchronized (this) {
+            keep(key, entry);
+        }
+        if (directory == null) return;
+        try {
+            writeFile(key, entry);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                diskErrors++;
+            }
+        }
+    }
+
+    //adds an entry to the memory tier and drops the least recently used entries until it fits
+    private void keep(String key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (old != null) bytes -= old.estimateBytes();
+        bytes += entry.estimateBytes();
+        var iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            //the newest entry stays, even when it is larger than maxBytes on its own
+            if (eldest.getKey().equals(key)) break;
+            bytes -= eldest.getValue().estimateBytes();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private Entry readFile(String key) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(directory.resolve(key + ".bin")))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) return null;
+            String status = readNullable(in);
+            String error = readNullable(in);
+            long instructionCount = in.readLong();
+            short[] registers = new short[in.readInt()];
+            for (int i = 0; i < registers.length; i++) registers[i] = in.readShort();
+            int flags = in.readInt();
+            short alu = in.readShort();
+            int[] memoryAddresses = new int[in.readInt()];
+            short[] memoryValues = new short[memoryAddresses.length];
+            for (int i = 0; i < memoryAddresses.length; i++) {
+                memoryAddresses[i] = in.readInt();
+                memoryValues[i] = in.readShort();
+            }
+            String sourceHash = readNullable(in);
+            List<LintDiagnostic> diagnostics = new ArrayList<>();
+            int diagnosticCount = in.readInt();
+            for (int i = 0; i < diagnosticCount; i++) {
+                diagnostics.add(new LintDiagnostic(in.readInt(), in.readInt(), LintDiagnostic.Code.valueOf(readNullable(in)),
+                        readNullable(in), readNullable(in), in.readBoolean()));
+            }
+            List<String> assemblyErrors = new ArrayList<>();
+            int errorCount = in.readInt();
+            for (int i = 0; i < errorCount; i++) assemblyErrors.add(readNullable(in));
+            String hex = readNullable(in);
+            return new Entry(status, error, instructionCount, registers, flags, alu, memoryAddresses, memoryValues,
+                    sourceHash, List.copyOf(diagnostics), List.copyOf(assemblyErrors), hex);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            //a broken or old file counts as a miss, the next put replaces it
+            return null;
+        }
+    }
+
+    private void writeFile(String key, Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            writeNullable(out, entry.status);
+            writeNullable(out, entry.error);
+            out.writeLong(entry.instructionCount);
+            out.writeInt(entry.registers.length);
+            for (short register : entry.registers) out.writeShort(register);
+            out.writeInt(entry.flags);
+            out.writeShort(entry.alu);
+            out.writeInt(entry.memoryAddresses.length);
+            for (int i = 0; i < entry.memoryAddresses.length; i++) {
+                out.writeInt(entry.memoryAddresses[i]);
+                out.writeShort(entry.memoryValues[i]);
+            }
+            writeNullable(out, entry.sourceHash);
+            out.writeInt(entry.diagnostics.size());
+            for (LintDiagnostic diagnostic : entry.diagnostics) {
+                out.writeInt(diagnostic.getLine());
+                out.writeInt(diagnostic.getColumn());
+                writeNullable(out, diagnostic.getCode().name());
+                writeNullable(out, diagnostic.getMessage());
+                writeNullable(out, diagnostic.getHint());
+                out.writeBoolean(diagnostic.isAdvice());
+            }
+            out.writeInt(entry.assemblyErrors.size());
+            for (String assemblyError : entry.assemblyErrors) writeNullable(out, assemblyError);
+            writeNullable(out, entry.hex);
+        }
+        //written next to the final file and moved, so a reader never sees half an entry
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, directory.resolve(key + ".bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    //every text is written as its length and UTF-8 bytes, writeUTF is limited to 65535 bytes (a large hex image or message)
+    private static void writeNullable(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    /**
+     * this method appends the metrics of the cache as a JSON object
+     * @param json builder the object is appended to
+     */
+    public synchronized void appendJson(StringBuilder json) {
+        long lookups = hits + diskHits + misses;
+        json.append("{\"hits\": ").append(hits)
+                .append(", \"diskHits\": ").append(diskHits)
+                .append(", \"misses\": ").append(misses)
+                .append(", \"hitRate\": ").append(String.format("%.3f", lookups == 0 ? 0.0 : (hits + diskHits) / (double) lookups))
+                .append(", \"entries\": ").append(entries.size())
+                .append(", \"bytes\": ").append(bytes)
+                .append(", \"maxBytes\": ").append(maxBytes)
+                .append(", \"evictions\": ").append(evictions)
+                .append(", \"diskErrors\": ").append(diskErrors).append('}');
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    //getter for the number of entries that could not be written to the directory
+    public synchronized long getDiskErrors() {
+        return diskErrors;
+    }
+
+    //getter for the number of entries in memory
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    //getter for the estimated size of the entries in memory, in bytes
+    public synchronized long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Runs many jobs (see Moncky2Job) on a small pool of worker threads.
+A worker takes a job from the ready queue, runs one slice of at most sliceSize instructions, and puts the job back
+at the end of the queue when it has not finished. No program can keep a worker busy for longer than one slice,
+and a program that never halts is stopped by its instruction budget or its deadline.
+
+Scheduling policies:
+- ROUND_ROBIN: jobs take turns in the order they were submitted
+- PRIORITY: the waiting job with the highest priority runs next, jobs with the same priority take turns
+
+close() lets the workers finish the slice they are running, and then cancels every job that has not finished
+(status CANCELLED), so every completion completes. A job submitted after close is cancelled right away.
+ */
+public class Moncky2Scheduler implements AutoCloseable {
+
+    public enum Policy {
+        ROUND_ROBIN, PRIORITY
+    }
+
+    //default number of instructions in one slice
+    public static final long DEFAULT_SLICE_SIZE = 100_000;
+
+    private final long sliceSize;
+    private final BlockingQueue<Moncky2Job> ready;
+    private final ExecutorService workers;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * constructor, starts the worker threads
+     * @param threads number of worker threads
+     * @param sliceSize maximum number of instructions a job runs before the worker moves on to the next job
+     * @param policy order in which waiting jobs run
+     */
+    public Moncky2Scheduler(int threads, long sliceSize, Policy policy) {
+        if (threads < 1) throw new IllegalArgumentException("number of threads must be at least 1");
+        if (sliceSize < 1) throw new IllegalArgumentException("slice size must be at least 1");
+        this.sliceSize = sliceSize;
+        if (policy == Policy.PRIORITY) {
+            ready = new PriorityBlockingQueue<>(64, Comparator.comparingInt(Moncky2Job::getPriority).reversed()
+                    .thenComparingLong(job -> job.sequence));
+        } else {
+            ready = new LinkedBlockingQueue<>();
+        }
+        workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * this method adds a job to the ready queue
+     * @param job job that has not been submitted before
+     * @return the job, use getCompletion to wait for it
+     */
+    public Moncky2Job submit(Moncky2Job job) {
+        enqueue(job);
+        //close may have emptied the queue before the job was added
+        if (closed) cancelWaiting();
+        return job;
+    }
+
+    private void enqueue(Moncky2Job job) {
+        job.sequence = sequence.getAndIncrement();
+        ready.add(job);
+    }
+
+    //loop of a worker thread: run one slice of the next job until the scheduler is closed
+    //a job that needs another slice goes back in the queue, also when the scheduler is closed (close cancels it)
+    private void work() {
+        try {
+            while (!closed) {
+                Moncky2Job job = ready.take();
+                if (!job.runSlice(sliceSize)) enqueue(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //getter for the number of jobs waiting for a worker
+    public int getWaitingJobs() {
+        return ready.size();
+    }
+
+    //stops the worker threads after their current slice, and cancels the jobs that have not finished
+    @Override
+    public void close() {
+        closed = true;
+        workers.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                //a slice is at most sliceSize instructions, so the workers stop soon
+                if (workers.awaitTermination(1, TimeUnit.SECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        cancelWaiting();
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    //cancels the jobs in the ready queue, only called when no worker takes jobs any more
+    private void cancelWaiting() {
+        Moncky2Job job;
+        while ((job = ready.poll()) != null) {
+            job.cancel();
+        }
+    }
+}
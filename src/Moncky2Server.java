@@ -0,0 +1,456 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Local HTTP service that checks, assembles, and simulates programs, so a grading pipeline pays the JVM startup once
+instead of once per submission (built on the HTTP server of the JDK, com.sun.net.httpserver).
+
+POST /run with assembly code (or a "v2.0 raw" memory image) as body:
+- assembly code is checked by the linter, assembled, and simulated from the source (like Moncky2Interpreter)
+- a memory image is loaded and simulated (like Moncky2Interpreter with a .hex file)
+Query parameters: budget=N (instructions, at most the budget of the server), timeout=ms (at most the timeout of the server).
+The answer is a JSON object:
+    {"status": "halted", "error": null, "instructions": 5383, "runTimeMs": 0.412,
+     "diagnostics": [...], "assemblyErrors": [...], "hex": "v2.0 raw\n...",
+     "registers": [16 numbers], "memory": {"address": value, ...}}
+status is halted, failed (error tells why), budget_exceeded, deadline_exceeded, or cancelled (the server was closed
+before the program finished). memory only has the non-zero words.
+GET /stats answers with the number of requests and the latency percentiles of the last LATENCY_WINDOW requests.
+
+With a Moncky2ResultCache (-cache-mb, -cache-dir), halted and failed results are kept by the hash of the normalized
+program, so a program that was already run (even with other comments, blank lines, or label names) is answered right
+away on the HTTP thread with "cached": true, without a job. A cached result is only used when it needed no more
+instructions than the budget of the request. For another text with the same key the linter and assembler run again,
+because their messages mention line numbers. /stats also shows the hits and misses of the cache.
+
+The body is read by a few HTTP threads, the work runs as a Moncky2Job on a Moncky2Scheduler, so a program that never
+halts is stopped by its budget or timeout and can't keep a worker busy. At most maxInFlight requests are accepted at
+a time (running or waiting for a worker), more requests are answered with 503 and a Retry-After header right away
+(backpressure), so a burst of submissions can't pile up in memory. The worker that finishes a job writes the answer.
+
+The server only listens on the loopback address.
+
+usage: Moncky2Server [-port N] [-threads N] [-queue N] [-budget N] [-timeout ms] [-jit] [-cache-mb N] [-cache-dir dir]
+ */
+public class Moncky2Server implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final long DEFAULT_BUDGET = 100_000_000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    //largest request body in bytes
+    public static final int MAX_BODY_BYTES = 1 << 20;
+    //number of recent requests the latency percentiles are computed from
+    public static final int LATENCY_WINDOW = 8192;
+    //largest time limit in milliseconds that can be counted in nanoseconds
+    private static final long MAX_MILLIS = Long.MAX_VALUE / 1_000_000;
+    //threads that read request bodies and hand them to the scheduler
+    private static final int HTTP_THREADS = 2;
+    //size of the result cache in MB when only -cache-dir is given
+    private static final long DEFAULT_CACHE_MB = 64;
+
+    private final HttpServer server;
+    private final ExecutorService httpThreads;
+    private final Moncky2Scheduler scheduler;
+    private final int maxInFlight;
+    private final long budget;
+    private final long timeLimit;
+    private final boolean bytecodeCompilation;
+    //results of earlier requests, or null without a cache
+    private final Moncky2ResultCache cache;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    //latencies of the last LATENCY_WINDOW answered /run requests in nanoseconds, a ring buffer
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long latencyCount = 0;
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = -1;
+        long budget = DEFAULT_BUDGET;
+        long timeout = DEFAULT_TIMEOUT_MILLIS;
+        boolean jit = false;
+        long cacheMB = -1;
+        Path cacheDirectory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-port": port = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-queue": queue = Integer.parseInt(args[++i]); break;
+                case "-budget": budget = Long.parseLong(args[++i]); break;
+                case "-timeout": timeout = Long.parseLong(args[++i]); break;
+                case "-jit": jit = true; break;
+                case "-cache-mb": cacheMB = Long.parseLong(args[++i]); break;
+                case "-cache-dir": cacheDirectory = Path.of(args[++i]); break;
+                default: throw new RuntimeException("unknown argument " + args[i]);
+            }
+        }
+        //by default a request waits for a worker when every worker is busy, up to 4 requests per worker
+        int maxInFlight = queue >= 0 ? threads + queue : threads * 5;
+        Moncky2ResultCache cache = null;
+        if (cacheMB >= 0 || cacheDirectory != null) {
+            cache = new Moncky2ResultCache((cacheMB >= 0 ? cacheMB : DEFAULT_CACHE_MB) << 20, cacheDirectory);
+        }
+        Moncky2Server server = new Moncky2Server(port, threads, maxInFlight, budget, timeout, jit, cache);
+        System.out.println("listening on http://127.0.0.1:" + server.getPort() + "/run (" + threads + " workers, "
+                + maxInFlight + " requests at a time)");
+    }
+
+    /**
+     * constructor, starts the server
+     * @param port port on the loopback address, 0 for any free port
+     * @param threads number of worker threads that lint, assemble, and simulate
+     * @param maxInFlight maximum number of accepted requests that have not been answered yet
+     * @param budget maximum number of instructions a program may run
+     * @param timeLimitMillis maximum time a program may run in milliseconds
+     * @param bytecodeCompilation true to compile programs to JVM bytecode before simulating them
+     * @throws IOException when the port can't be opened
+     */
+    public Moncky2Server(int port, int threads, int maxInFlight, long budget, long timeLimitMillis, boolean bytecodeCompilation) throws IOException {
+        this(port, threads, maxInFlight, budget, timeLimitMillis, bytecodeCompilation, null);
+    }
+
+    /**
+     * constructor, starts the server with a result cache
+     * @param port port on the loopback address, 0 for any free port
+     * @param threads number of worker threads that lint, assemble, and simulate
+     * @param maxInFlight maximum number of accepted requests that have not been answered yet
+     * @param budget maximum number of instructions a program may run
+     * @param timeLimitMillis maximum time a program may run in milliseconds
+     * @param bytecodeCompilation true to compile programs to JVM bytecode before simulating them
+     * @param cache cache for the results, it may be shared with other servers, or null to run every request
+     * @throws IOException when the port can't be opened
+     */
+    public Moncky2Server(int port, int threads, int maxInFlight, long budget, long timeLimitMillis, boolean bytecodeCompilation,
+                         Moncky2ResultCache cache) throws IOException {
+        if (maxInFlight < 1) throw new IllegalArgumentException("at least one request has to be accepted at a time");
+        this.maxInFlight = maxInFlight;
+        this.budget = budget;
+        this.timeLimit = Math.min(timeLimitMillis, MAX_MILLIS) * 1_000_000;
+        this.bytecodeCompilation = bytecodeCompilation;
+        this.cache = cache;
+        scheduler = new Moncky2Scheduler(threads, Moncky2Scheduler.DEFAULT_SLICE_SIZE, Moncky2Scheduler.Policy.ROUND_ROBIN);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+        httpThreads = Executors.newFixedThreadPool(HTTP_THREADS);
+        server.setExecutor(httpThreads);
+        server.createContext("/run", this::handleRun);
+        server.createContext("/stats", this::handleStats);
+        server.start();
+    }
+
+    //getter for the port the server listens on
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    //cancels the requests that are still running (they are answered with status cancelled) and stops accepting requests
+    @Override
+    public void close() {
+        scheduler.close();
+        server.stop(0);
+        httpThreads.shutdownNow();
+    }
+
+    //POST /run: admits the request and submits it to the scheduler, the worker that finishes it answers
+    private void handleRun(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        if (!exchange.getRequestMethod().equals("POST")) {
+            sendError(exchange, 405, "use POST with the program as body");
+            return;
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "too many requests, try again later");
+            return;
+        }
+        boolean submitted = false;
+        try {
+            String body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                sendError(exchange, 413, "program larger than " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            if (body.isBlank()) {
+                sendError(exchange, 400, "empty program");
+                return;
+            }
+            long jobBudget = Math.min(budget, queryLong(exchange.getRequestURI(), "budget", budget));
+            //a timeout of more than MAX_MILLIS is no limit, it would overflow in nanoseconds
+            long jobTimeLimit = Math.min(timeLimit, Math.min(queryLong(exchange.getRequestURI(), "timeout", MAX_MILLIS), MAX_MILLIS) * 1_000_000);
+            Submission submission = new Submission(body);
+            String key = cache != null ? submission.key() : null;
+            if (key != null) {
+                Moncky2ResultCache.Entry entry = cache.get(key);
+                //a result that needed more instructions than this request may use is run again, to end with budget_exceeded
+                if (entry != null && entry.getInstructionCount() <= jobBudget) {
+                    //answerCached counts the request as answered
+                    submitted = true;
+                    answerCached(exchange, submission, entry, start);
+                    return;
+                }
+            }
+            Moncky2Job job = new Moncky2Job("request " + requests.get(), submission::load, 0, jobBudget, System.nanoTime() + jobTimeLimit);
+            job.getCompletion().thenAccept(finished -> answer(exchange, submission, finished, key, start));
+            scheduler.submit(job);
+            submitted = true;
+        } catch (RuntimeException e) {
+            sendError(exchange, 400, e.getMessage());
+        } finally {
+            if (!submitted) inFlight.decrementAndGet();
+        }
+    }
+
+    //writes the result of a finished job, on the worker thread that finished it, and keeps it in the cache
+    private void answer(HttpExchange exchange, Submission submission, Moncky2Job job, String key, long start) {
+        try {
+            Moncky2Interpreter m2i = job.getInterpreter();
+            Moncky2ResultCache.Entry entry = new Moncky2ResultCache.Entry(job.getStatus().name().toLowerCase(),
+                    job.getError() == null ? null : String.valueOf(job.getError().getMessage()), m2i.getInstructionCount(),
+                    m2i.getRegister(), m2i.getFlags(), m2i.getALU(), m2i.getMemory(),
+                    Moncky2ResultCache.hashText(submission.body), submission.diagnostics, submission.assemblyErrors, submission.hex);
+            if (key != null && isCacheable(job.getStatus())) cache.put(key, entry);
+            send(exchange, 200, describe(entry, job.getRunTime(), false));
+        } catch (IOException e) {
+            //the client is gone, there is nobody to tell
+        } catch (RuntimeException e) {
+            sendInternalError(exchange, e);
+        } finally {
+            inFlight.decrementAndGet();
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    //writes a result from the cache, on the HTTP thread
+    private void answerCached(HttpExchange exchange, Submission submission, Moncky2ResultCache.Entry entry, long start) throws IOException {
+        try {
+            if (!entry.getSourceHash().equals(Moncky2ResultCache.hashText(submission.body))) {
+                //same program in another text: only the run is reused, the messages are made for this text
+                submission.check();
+                entry = entry.withSource(Moncky2ResultCache.hashText(submission.body), submission.diagnostics, submission.assemblyErrors, submission.hex);
+            }
+            send(exchange, 200, describe(entry, 0, true));
+        } catch (RuntimeException e) {
+            sendInternalError(exchange, e);
+        } finally {
+            inFlight.decrementAndGet();
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * this method tells if a result may be reused: it has to depend on the program only
+     * budget and deadline results depend on the request, and with bytecode compilation a failure inside a compiled
+     * block may leave another state than the interpreter does, so only failures of the interpreter are kept
+     * @param status status of the finished job
+     * @return true if the result can be cached
+     */
+    private boolean isCacheable(Moncky2Job.Status status) {
+        return status == Moncky2Job.Status.HALTED || (status == Moncky2Job.Status.FAILED && !bytecodeCompilation);
+    }
+
+    //GET /stats: request counts and latency percentiles
+    private void handleStats(HttpExchange exchange) throws IOException {
+        long[] window;
+        synchronized (latencies) {
+            window = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_WINDOW));
+        }
+        Arrays.sort(window);
+        StringBuilder stats = new StringBuilder(256);
+        stats.append("{\"requests\": ").append(requests.get())
+                .append(", \"rejected\": ").append(rejected.get())
+                .append(", \"inFlight\": ").append(inFlight.get())
+                .append(", \"waitingJobs\": ").append(scheduler.getWaitingJobs())
+                .append(", \"latencyMs\": {\"count\": ").append(window.length);
+        appendPercentile(stats, "p50", window, 0.50);
+        appendPercentile(stats, "p90", window, 0.90);
+        appendPercentile(stats, "p99", window, 0.99);
+        appendPercentile(stats, "max", window, 1.0);
+        stats.append("}, \"cache\": ");
+        if (cache == null) stats.append("null");
+        else cache.appendJson(stats);
+        stats.append("}\n");
+        send(exchange, 200, stats.toString());
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = nanos;
+        }
+    }
+
+    //nearest-rank percentile of sorted latencies, in milliseconds
+    private static void appendPercentile(StringBuilder stats, String name, long[] sorted, double fraction) {
+        stats.append(", \"").append(name).append("\": ");
+        if (sorted.length == 0) {
+            stats.append("null");
+            return;
+        }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        stats.append(String.format("%.3f", sorted[Math.max(rank, 1) - 1] / 1e6));
+    }
+
+    /**
+     * this method builds the JSON answer of a request
+     * @param entry the result of the program with its lint and assembler results
+     * @param runTime time the program ran in nanoseconds (0 for a cached result)
+     * @param cached true if the result comes from the cache
+     * @return JSON object, ending with a newline
+     */
+    private static String describe(Moncky2ResultCache.Entry entry, long runTime, boolean cached) {
+        StringBuilder answer = new StringBuilder(4096);
+        answer.append("{\n  \"status\": \"").append(entry.getStatus()).append("\",\n");
+        answer.append("  \"error\": ");
+        if (entry.getError() == null) answer.append("null");
+        else answer.append('"').append(LintReporter.escape(entry.getError())).append('"');
+        answer.append(",\n  \"instructions\": ").append(entry.getInstructionCount());
+        answer.append(",\n  \"runTimeMs\": ").append(String.format("%.3f", runTime / 1e6));
+        answer.append(",\n  \"cached\": ").append(cached);
+        answer.append(",\n  \"diagnostics\": ");
+        LintReporter.appendJsonList(answer, entry.getDiagnostics(), "  ");
+        answer.append(",\n  \"assemblyErrors\": [");
+        List<String> assemblyErrors = entry.getAssemblyErrors();
+        for (int i = 0; i < assemblyErrors.size(); i++) {
+            if (i > 0) answer.append(", ");
+            answer.append('"').append(LintReporter.escape(assemblyErrors.get(i))).append('"');
+        }
+        answer.append("],\n  \"hex\": ");
+        if (entry.getHex() == null) answer.append("null");
+        else answer.append('"').append(LintReporter.escape(entry.getHex())).append('"');
+        answer.append(",\n  \"registers\": [");
+        short[] register = entry.getRegisters();
+        for (int i = 0; i < register.length; i++) {
+            if (i > 0) answer.append(", ");
+            answer.append(register[i]);
+        }
+        answer.append("],\n  \"memory\": {");
+        int[] addresses = entry.getMemoryAddresses();
+        short[] values = entry.getMemoryValues();
+        for (int i = 0; i < addresses.length; i++) {
+            if (i > 0) answer.append(", ");
+            answer.append('"').append(addresses[i]).append("\": ").append(values[i]);
+        }
+        answer.append("}\n}\n");
+        return answer.toString();
+    }
+
+    //one /run request: the program text, and the lint and assembler results once the job has loaded it
+    private class Submission {
+        private final String body;
+        private List<LintDiagnostic> diagnostics = List.of();
+        private List<String> assemblyErrors = List.of();
+        private String hex = null;
+
+        private Submission(String body) {
+            this.body = body;
+        }
+
+        private boolean isImage() {
+            return body.stripLeading().startsWith(HexImage.HEADER);
+        }
+
+        //key of the program in the result cache, or null when it can't be read (the job reports why)
+        private String key() {
+            try {
+                if (isImage()) return Moncky2ResultCache.key(HexImage.parse(body.replace("\r\n", "\n")));
+                return Moncky2ResultCache.key(body.replace("\r\n", "\n"));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        //loader of the job, runs on the worker
+        private void load(Moncky2Interpreter m2i) {
+            m2i.setBytecodeCompilation(bytecodeCompilation);
+            if (isImage()) {
+                m2i.loadImage(HexImage.parse(body.replace("\r\n", "\n")));
+                return;
+            }
+            check();
+            m2i.loadCode(body.replace("\r\n", "\n"));
+        }
+
+        //runs the linter and the assembler on assembly code, a memory image has no diagnostics
+        private void check() {
+            if (isImage()) return;
+            String code = body.replace("\r\n", "\n");
+            Moncky2Linter linter = new Moncky2Linter(code, "request");
+            //the worker threads already use the processors, so the linter doesn't check blocks in parallel
+            linter.setParallel(false);
+            diagnostics = linter.check();
+            Moncky2Assembler assembler = new Moncky2Assembler(code);
+            short[] words = assembler.assemble();
+            assemblyErrors = new ArrayList<>(assembler.getErrors());
+            if (assemblyErrors.isEmpty()) hex = StandardCharsets.US_ASCII.decode(MemoryImageWriter.encode(words, MemoryImageWriter.Format.RAW)).toString();
+        }
+    }
+
+    //reads the request body, null when it is larger than MAX_BODY_BYTES
+    private static String readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) return null;
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    //reads a number that is at least 0 from the query of a request, or returns the default when it is not there
+    private static long queryLong(URI uri, String name, long defaultValue) {
+        String query = uri.getRawQuery();
+        if (query == null) return defaultValue;
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                long value;
+                try {
+                    value = Long.parseLong(parameter.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("query parameter " + name + " is not a number");
+                }
+                if (value < 0) throw new RuntimeException("query parameter " + name + " can't be negative");
+                return value;
+            }
+        }
+        return defaultValue;
+    }
+
+    //answers 500 when building an answer failed, so the client never waits for an answer that doesn't come
+    private static void sendInternalError(HttpExchange exchange, RuntimeException e) {
+        try {
+            sendError(exchange, 500, "internal error: " + e);
+        } catch (IOException | RuntimeException ignored) {
+            //the answer was already started, or the client is gone
+            exchange.close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "{\"error\": \"" + LintReporter.escape(message) + "\"}\n");
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Sends programs to Moncky2Server from several clients at once and checks the answers, everything on localhost.
+Without a URL it starts a server in this JVM on a free port (with a small queue, so backpressure can be seen).
+
+For every program in moncky2in/demos the expected instruction count and registers are computed with a local
+interpreter first. Every 200 answer must have the same instruction count and registers, a 503 answer (server busy)
+is counted and retried after a short pause. At the end the client latencies and the /stats of the server are printed.
+Every other round the programs are sent with a comment line in front, so a result cache is hit by text that differs.
+-cache-mb gives the local server a result cache of that size.
+
+usage: Moncky2ServerLoad [url of the server, e.g. http://127.0.0.1:8080] [-requests N] [-clients N] [-cache-mb N]
+ */
+public class Moncky2ServerLoad {
+
+    private static final long RETRY_PAUSE_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int requests = 2000;
+        int clients = 16;
+        long cacheMB = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-requests")) requests = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-clients")) clients = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-cache-mb")) cacheMB = Long.parseLong(args[++i]);
+            else url = args[i];
+        }
+        Moncky2Server localServer = null;
+        if (url == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            Moncky2ResultCache cache = cacheMB >= 0 ? new Moncky2ResultCache(cacheMB << 20, null) : null;
+            localServer = new Moncky2Server(0, threads, threads * 2, Moncky2Server.DEFAULT_BUDGET, Moncky2Server.DEFAULT_TIMEOUT_MILLIS, false, cache);
+            url = "http://127.0.0.1:" + localServer.getPort();
+        }
+        try {
+            run(url, requests, clients);
+        } finally {
+            if (localServer != null) localServer.close();
+        }
+    }
+
+    private static void run(String url, int requests, int clients) throws Exception {
+        List<String> programs = new ArrayList<>();
+        List<String[]> expected = new ArrayList<>();
+        try (var files = Files.list(Path.of("moncky2in/demos"))) {
+            for (Path file : files.sorted().toList()) {
+                String code = Files.readString(file);
+                Moncky2Interpreter m2i = new Moncky2Interpreter();
+                try {
+                    m2i.interpretCode(code);
+                } catch (RuntimeException e) {
+                    //programs that fail are sent too, only halting ones are compared
+                    programs.add(code);
+                    expected.add(null);
+                    continue;
+                }
+                programs.add(code);
+                expected.add(new String[]{"\"instructions\": " + m2i.getInstructionCount() + ",", "\"registers\": " + Arrays.toString(m2i.getRegister())});
+            }
+        }
+
+        HttpClient client = HttpClient.newHttpClient();
+        URI runUri = URI.create(url + "/run");
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger busy = new AtomicInteger();
+        AtomicInteger wrong = new AtomicInteger();
+        long[] latencies = new long[requests];
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> done = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            done.add(pool.submit(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < requests) {
+                    int program = index % programs.size();
+                    String code = (index / programs.size()) % 2 == 0 ? programs.get(program) : ";round " + index / programs.size() + "\n" + programs.get(program);
+                    HttpRequest request = HttpRequest.newBuilder(runUri).POST(HttpRequest.BodyPublishers.ofString(code)).build();
+                    long sent = System.nanoTime();
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    while (response.statusCode() == 503) {
+                        busy.incrementAndGet();
+                        Thread.sleep(RETRY_PAUSE_MILLIS);
+                        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    }
+                    latencies[index] = System.nanoTime() - sent;
+                    if (response.statusCode() == 200 && matches(response.body(), expected.get(program))) {
+                        ok.incrementAndGet();
+                    } else {
+                        wrong.incrementAndGet();
+                        System.out.println("unexpected answer " + response.statusCode() + ": " + response.body());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : done) future.get();
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests from %d clients in %.2f s (%.0f requests/s): %d ok, %d wrong, %d answered busy (retried)%n",
+                requests, clients, seconds, requests / seconds, ok.get(), wrong.get(), busy.get());
+        System.out.printf("client latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99), percentile(latencies, 1.0));
+        HttpResponse<String> stats = client.send(HttpRequest.newBuilder(URI.create(url + "/stats")).build(), HttpResponse.BodyHandlers.ofString());
+        System.out.print("server stats: " + stats.body());
+        if (wrong.get() > 0) throw new RuntimeException(wrong.get() + " wrong answers");
+    }
+
+    //true when the answer has the expected instruction count and registers (or the program is not compared)
+    private static boolean matches(String answer, String[] expected) {
+        if (expected == null) return true;
+        for (String part : expected) {
+            if (!answer.contains(part)) return false;
+        }
+        return answer.contains("\"status\": \"halted\"");
+    }
+
+    //nearest-rank percentile in milliseconds
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+Reverse execution for a loaded program: the program can be moved back to any instruction it already ran.
+
+While the program runs forward, a checkpoint is taken every `interval` instructions. A checkpoint holds the registers,
+the ALU value, the flags, and the instruction count. Memory is not copied. The memory of the interpreter is wrapped,
+and the first write to a page (PAGE_WORDS words) after a checkpoint saves the old words of that page in the checkpoint.
+So a checkpoint holds only the pages that were dirtied after it, and the memory used grows with the amount of
+changed data, not with the number of instructions.
+
+Going back to instruction N:
+1. the saved pages of the newest checkpoints are written back, newest first, down to the last checkpoint at or
+   before N. Memory is then exactly what it was at that checkpoint, and the newer checkpoints are dropped
+2. the registers, ALU value and flags of the checkpoint are restored
+3. the program runs forward one instruction at a time (no superinstructions or bytecode compilation) up to N,
+   taking checkpoints again on the way
+The program is deterministic, so running it again gives the same states. The profiler, tracer and recorder of the
+interpreter see the instructions that are run again.
+
+Create the time travel after loadCode/loadImage. The first checkpoint is the state at that moment, the program can't
+go back further than that.
+ */
+public class Moncky2TimeTravel {
+
+    //words in one page of saved memory (a power of two)
+    public static final int PAGE_WORDS = 256;
+    private static final int PAGE_BITS = Integer.numberOfTrailingZeros(PAGE_WORDS);
+    private static final int PAGES = Moncky2Memory.WORDS / PAGE_WORDS;
+
+    //state at one instruction count, and the old words of the pages written after it
+    private static class Checkpoint {
+        private final long position;
+        private final short[] registers;
+        private final short alu;
+        private final int flags;
+        private final boolean halted;
+        private int[] pages = new int[4];
+        private short[][] oldWords = new short[4][];
+        private int pageCount = 0;
+
+        private Checkpoint(Moncky2Interpreter interpreter) {
+            position = interpreter.getInstructionCount();
+            registers = interpreter.getRegister().clone();
+            alu = interpreter.getALU();
+            flags = interpreter.getFlags();
+            halted = interpreter.isHalted();
+        }
+
+        private void save(int page, short[] words) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+                oldWords = Arrays.copyOf(oldWords, pageCount * 2);
+            }
+            pages[pageCount] = page;
+            oldWords[pageCount++] = words;
+        }
+    }
+
+    //memory of the interpreter: saves a page in the newest checkpoint before its first write after that checkpoint
+    private class CheckpointMemory implements Moncky2Memory {
+        private final Moncky2Memory memory;
+        private final boolean[] dirty = new boolean[PAGES];
+
+        private CheckpointMemory(Moncky2Memory memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        public short read(int address) {
+            return memory.read(address);
+        }
+
+        @Override
+        public void write(int address, short value) {
+            int page = address >>> PAGE_BITS;
+            //negative and too large addresses fail in the wrapped memory, like they do without time travel
+            if (page < PAGES && !dirty[page]) savePage(page);
+            memory.write(address, value);
+        }
+
+        private void savePage(int page) {
+            short[] words = new short[PAGE_WORDS];
+            int start = page << PAGE_BITS;
+            for (int i = 0; i < PAGE_WORDS; i++) {
+                words[i] = memory.read(start + i);
+            }
+            checkpoints.get(checkpoints.size() - 1).save(page, words);
+            savedWords += PAGE_WORDS;
+            dirty[page] = true;
+        }
+    }
+
+    private final Moncky2Interpreter interpreter;
+    private final long interval;
+    private final CheckpointMemory memory;
+    private final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+    //words of memory kept in the checkpoints
+    private long savedWords = 0;
+
+    /**
+     * constructor, takes the first checkpoint and wraps the memory of the interpreter
+     * @param interpreter interpreter with a loaded program (loadCode or loadImage)
+     * @param interval instructions between two checkpoints, a smaller interval uses more memory and makes going back faster
+     */
+    public Moncky2TimeTravel(Moncky2Interpreter interpreter, long interval) {
+        if (interval < 1) throw new RuntimeException("checkpoint interval has to be at least 1");
+        this.interpreter = interpreter;
+        this.interval = interval;
+        memory = new CheckpointMemory(interpreter.getMemory());
+        interpreter.setMemory(memory);
+        checkpoints.add(new Checkpoint(interpreter));
+    }
+
+    /**
+     * this method runs the program forward like Moncky2Interpreter.run, in slices of at most one checkpoint interval
+     * @param maxInstructions maximum number of instructions to run (Long.MAX_VALUE to run until halt)
+     * @return true if the program halted
+     */
+    public boolean run(long maxInstructions) {
+        long end = saturatedAdd(getPosition(), maxInstructions);
+        while (!interpreter.isHalted() && getPosition() < end) {
+            interpreter.run(Math.min(end, nextCheckpoint()) - getPosition());
+            checkpointIfDue();
+        }
+        return interpreter.isHalted();
+    }
+
+    /**
+     * this method runs one instruction forward (see Moncky2Interpreter.step)
+     * @return true if the program halted
+     */
+    public boolean step() {
+        boolean halted = interpreter.step();
+        checkpointIfDue();
+        return halted;
+    }
+
+    /**
+     * this method moves the program back by a number of instructions
+     * @param count instructions to undo, the program stops at the first checkpoint when there aren't that many
+     */
+    public void stepBack(long count) {
+        goTo(Math.max(getFirstPosition(), getPosition() - count));
+    }
+
+    /**
+     * this method moves the program to the state after a number of instructions, back or forward
+     * @param position instruction count to go to, at least getFirstPosition()
+     */
+    public void goTo(long position) {
+        if (position < getFirstPosition()) throw new RuntimeException("no checkpoint before instruction " + position);
+        if (position < getPosition()) {
+            int index = checkpoints.size() - 1;
+            while (checkpoints.get(index).position > position) index--;
+            restore(index);
+        }
+        while (!interpreter.isHalted() && getPosition() < position) step();
+    }
+
+    /**
+     * this method moves the program back to the newest checkpoint before an instruction count
+     * @param position instruction count, greater than getFirstPosition() and at most getPosition()
+     * @return instruction count of the checkpoint
+     */
+    public long rewindBefore(long position) {
+        if (position <= getFirstPosition() || position > getPosition()) throw new RuntimeException("no checkpoint before instruction " + position);
+        int index = checkpoints.size() - 1;
+        while (checkpoints.get(index).position >= position) index--;
+        restore(index);
+        return getPosition();
+    }
+
+    //writes back the pages saved after checkpoint index, newest first, and drops the newer checkpoints
+    private void restore(int index) {
+        for (int i = checkpoints.size() - 1; i >= index; i--) {
+            Checkpoint checkpoint = checkpoints.get(i);
+            for (int p = checkpoint.pageCount - 1; p >= 0; p--) {
+                int start = checkpoint.pages[p] << PAGE_BITS;
+                short[] words = checkpoint.oldWords[p];
+                for (int w = 0; w < PAGE_WORDS; w++) {
+                    memory.memory.write(start + w, words[w]);
+                }
+                savedWords -= PAGE_WORDS;
+            }
+            if (i > index) checkpoints.remove(i);
+        }
+        Checkpoint checkpoint = checkpoints.get(index);
+        checkpoint.pages = new int[4];
+        checkpoint.oldWords = new short[4][];
+        checkpoint.pageCount = 0;
+        Arrays.fill(memory.dirty, false);
+        interpreter.setState(checkpoint.registers, checkpoint.alu, checkpoint.flags, checkpoint.position, checkpoint.halted);
+    }
+
+    //takes a checkpoint once the program ran interval instructions after the newest one
+    private void checkpointIfDue() {
+        if (getPosition() < nextCheckpoint() || interpreter.isHalted()) return;
+        Arrays.fill(memory.dirty, false);
+        checkpoints.add(new Checkpoint(interpreter));
+    }
+
+    private long nextCheckpoint() {
+        return checkpoints.get(checkpoints.size() - 1).position + interval;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < a ? Long.MAX_VALUE : sum;
+    }
+
+    //getter for the number of instructions the program ran
+    public long getPosition() {
+        return interpreter.getInstructionCount();
+    }
+
+    //getter for the earliest instruction count the program can go back to
+    public long getFirstPosition() {
+        return checkpoints.get(0).position;
+    }
+
+    //getter for the instruction count of the newest checkpoint at or before the current position
+    public long getCheckpointPosition() {
+        return checkpoints.get(checkpoints.size() - 1).position;
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    //getter for the number of memory words kept to go back (PAGE_WORDS for every dirtied page of every checkpoint)
+    public long getSavedWords() {
+        return savedWords;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+Renders a trace file written by Moncky2Tracer as text, one line per executed instruction:
+
+    #12      pc 0x0004  add r1, r2        r1=0x0007                  flags ----
+    #13      pc 0x0005  st r1, (r3)       mem[0x0100]<-0x0007        flags ----
+
+Usage: Moncky2TraceDecoder <trace file> [-from N] [-count N]
+-from skips the first N records, -count stops after N records. The file is read in blocks, so traces of tens of
+millions of instructions can be rendered (or piped through grep) without loading them in memory.
+ */
+public class Moncky2TraceDecoder {
+
+    //records read from the file with one call
+    private static final int READ_RECORDS = 4096;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("usage: Moncky2TraceDecoder <trace file> [-from N] [-count N]");
+            return;
+        }
+        long from = 0;
+        long count = Long.MAX_VALUE;
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("-from")) from = Long.parseLong(args[i + 1]);
+            if (args[i].equals("-count")) count = Long.parseLong(args[i + 1]);
+        }
+        try {
+            StringBuilder out = new StringBuilder(1 << 16);
+            decode(Path.of(args[0]), from, count, out);
+            System.out.print(out);
+        }
+        catch (IOException e) {
+            System.out.println("could not read trace file " + args[0]);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * this method renders the records of a trace file as text
+     * the text is printed to System.out whenever the builder gets large, the rest is left in out
+     * @param path trace file written by Moncky2Tracer
+     * @param from number of records to skip
+     * @param count maximum number of records to render
+     * @param out builder the text is appended to
+     * @throws IOException when the file can't be read
+     */
+    public static void decode(Path path, long from, long count, StringBuilder out) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Moncky2Tracer.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            byte[] magic = new byte[Moncky2Tracer.MAGIC.length];
+            if (header.remaining() < Moncky2Tracer.HEADER_BYTES) throw new RuntimeException("not a Moncky-2 trace file: " + path);
+            header.get(magic);
+            if (!Arrays.equals(magic, Moncky2Tracer.MAGIC)) throw new RuntimeException("not a Moncky-2 trace file: " + path);
+            int version = header.getInt();
+            int recordBytes = header.getInt();
+            if (version != Moncky2Tracer.VERSION || recordBytes != Moncky2Tracer.RECORD_BYTES) {
+                throw new RuntimeException("unsupported trace version " + version + " with records of " + recordBytes + " bytes");
+            }
+
+            channel.position(Moncky2Tracer.HEADER_BYTES + from * Moncky2Tracer.RECORD_BYTES);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_RECORDS * Moncky2Tracer.RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long sequence = from;
+            long end = count == Long.MAX_VALUE ? Long.MAX_VALUE : from + count;
+            while (sequence < end && channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.remaining() >= Moncky2Tracer.RECORD_BYTES && sequence < end) {
+                    appendRecord(out, sequence++, buffer.getLong(), buffer.getLong());
+                }
+                buffer.compact();
+                if (out.length() > (1 << 20)) {
+                    System.out.print(out);
+                    out.setLength(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * this method renders one record
+     * @param out builder the line is appended to
+     * @param sequence number of the record (starting at 0)
+     * @param first first 8 bytes of the record (pc, instruction, written register, flags)
+     * @param second last 8 bytes of the record (register value, memory address and value)
+     */
+    public static void appendRecord(StringBuilder out, long sequence, long first, long second) {
+        int pc = (int) (first & 0xFFFF);
+        int instruction = (int) (first >>> 16);
+        int target = (int) ((first >>> 48) & 0xFF);
+        int flags = (int) ((first >>> 56) & 0xFF);
+
+        int start = out.length();
+        out.append('#').append(sequence);
+        pad(out, start + 9);
+        out.append("pc ");
+        hex(out, pc);
+        out.append("  ").append(CommandDecoder.toText(instruction));
+        pad(out, start + 37);
+        int effects = out.length();
+        if (target != Moncky2Tracer.NO_REGISTER) {
+            out.append('r').append(target).append('=');
+            hex(out, (int) (second & 0xFFFF));
+            out.append(' ');
+        }
+        if ((flags & Moncky2Tracer.MEMORY_READ) != 0) {
+            out.append("<-mem[");
+            hex(out, (int) ((second >>> 16) & 0xFFFF));
+            out.append(']');
+        }
+        if ((flags & Moncky2Tracer.MEMORY_WRITE) != 0) {
+            out.append("mem[");
+            hex(out, (int) ((second >>> 16) & 0xFFFF));
+            out.append("]<-");
+            hex(out, (int) ((second >>> 32) & 0xFFFF));
+        }
+        pad(out, effects + 27);
+        out.append("flags ")
+                .append((flags & Moncky2ALU.FLAG_CARRY) != 0 ? 'c' : '-')
+                .append((flags & Moncky2ALU.FLAG_ZERO) != 0 ? 'z' : '-')
+                .append((flags & Moncky2ALU.FLAG_SIGN) != 0 ? 's' : '-')
+                .append((flags & Moncky2ALU.FLAG_OVERFLOW) != 0 ? 'o' : '-')
+                .append('\n');
+    }
+
+    //appends spaces until the builder has the given length (at least one space)
+    private static void pad(StringBuilder out, int length) {
+        do {
+            out.append(' ');
+        } while (out.length() < length);
+    }
+
+    //appends a 16-bit value as 0x0000
+    private static void hex(StringBuilder out, int value) {
+        out.append("0x");
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            out.append(Character.forDigit((value >> shift) & 0xF, 16));
+        }
+    }
+}
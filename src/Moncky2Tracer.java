@@ -0,0 +1,211 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Execution trace: one fixed-size record for every instruction the run loop executes, written to a binary trace file.
+
+The run loop only stores two longs per instruction in a preallocated ring buffer (no allocation, no I/O, no locks).
+A background thread drains the ring buffer to the file through one ByteBuffer and a FileChannel. The run loop tells
+the drainer how far it got once every PUBLISH_RECORDS records, and only waits when the ring buffer is full, so
+tracing costs a few stores per instruction and runs of tens of millions of instructions can be traced.
+Moncky2TraceDecoder renders a trace file as text.
+
+File layout (little-endian):
+- header of 16 bytes: "MONCKY2T", version (int, 1), record size (int, 16)
+- one record of 16 bytes per executed instruction, in the order they ran:
+  bytes 0-1    program counter (register 15) of the instruction
+  bytes 2-5    decoded instruction (see CommandDecoder)
+  byte  6      register written by the instruction (0-15), or NO_REGISTER
+  byte  7      flags after the instruction (bits 0-3, see Moncky2ALU), MEMORY_READ (bit 4), MEMORY_WRITE (bit 5)
+  bytes 8-9    new value of the written register
+  bytes 10-11  memory address that was read or written
+  bytes 12-13  value that was read or written
+  bytes 14-15  reserved (0)
+ */
+public class Moncky2Tracer implements Closeable {
+
+    public static final byte[] MAGIC = {'M', 'O', 'N', 'C', 'K', 'Y', '2', 'T'};
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 16;
+    public static final int NO_REGISTER = 0xFF;
+    public static final int MEMORY_READ = 0x10;
+    public static final int MEMORY_WRITE = 0x20;
+    //records in the ring buffer when no capacity is given (1 MiB)
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    //records the run loop writes before it tells the drainer about them
+    private static final int PUBLISH_RECORDS = 1024;
+    //records the drainer writes to the file with one call
+    private static final int WRITE_RECORDS = 4096;
+    //time the drainer (or a run loop waiting for space) sleeps when there is nothing to do
+    private static final long PARK_NANOS = 50_000;
+
+    //two longs per record, capacity is a power of two so positions wrap with a mask
+    private final long[] ring;
+    private final int capacity;
+    private final FileChannel channel;
+    private final Thread drainer;
+
+    //records written by the run loop (only used by the run loop)
+    private long written = 0;
+    //last value of drained seen by the run loop
+    private long drainedSeen = 0;
+    //records the drainer may write to the file
+    private volatile long published = 0;
+    //records the drainer has written to the file
+    private volatile long drained = 0;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    /**
+     * constructor, creates the trace file and starts the drainer thread
+     * @param path trace file, an existing file is replaced
+     * @throws IOException when the file can't be created
+     */
+    public Moncky2Tracer(Path path) throws IOException {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * constructor, creates the trace file and starts the drainer thread
+     * @param path trace file, an existing file is replaced
+     * @param capacity records in the ring buffer, rounded up to a power of two (at least PUBLISH_RECORDS)
+     * @throws IOException when the file can't be created
+     */
+    public Moncky2Tracer(Path path, int capacity) throws IOException {
+        this.capacity = Integer.highestOneBit(Math.max(capacity, PUBLISH_RECORDS) * 2 - 1);
+        ring = new long[this.capacity * 2];
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).putInt(RECORD_BYTES).flip();
+        while (header.hasRemaining()) channel.write(header);
+        drainer = new Thread(this::drain, "moncky2-trace-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * this method adds the record of one executed instruction, it is called by the run loop after the instruction ran
+     * @param pc program counter of the instruction
+     * @param instruction decoded instruction (see CommandDecoder)
+     * @param address memory address in register rB before the instruction (only used by ld and st)
+     * @param register the registers after the instruction
+     * @param flags packed flags after the instruction (see Moncky2ALU)
+     */
+    public void record(int pc, int instruction, int address, short[] register, int flags) {
+        int opcode = instruction & 0xFF;
+        int target = NO_REGISTER;
+        int memory = 0;
+        int value = 0;
+        if (opcode == CommandDecoder.OP_LI || (opcode >= CommandDecoder.OP_NOP && opcode <= CommandDecoder.OP_NEG)) {
+            target = (instruction >> 8) & 0xF;
+        } else if (opcode == CommandDecoder.OP_LD) {
+            target = (instruction >> 8) & 0xF;
+            memory = MEMORY_READ;
+            value = register[target];
+        } else if (opcode == CommandDecoder.OP_ST) {
+            memory = MEMORY_WRITE;
+            value = register[(instruction >> 8) & 0xF];
+        }
+        long first = (pc & 0xFFFFL)
+                | (instruction & 0xFFFFFFFFL) << 16
+                | (long) target << 48
+                | (long) (flags | memory) << 56;
+        long second = (target == NO_REGISTER ? 0 : register[target] & 0xFFFFL)
+                | (memory == 0 ? 0 : (address & 0xFFFFL) << 16 | (value & 0xFFFFL) << 32);
+        put(first, second);
+    }
+
+    private void put(long first, long second) {
+        if (written - drainedSeen >= capacity) waitForSpace();
+        int index = (int) (written & (capacity - 1)) * 2;
+        ring[index] = first;
+        ring[index + 1] = second;
+        written++;
+        if ((written & (PUBLISH_RECORDS - 1)) == 0) published = written;
+    }
+
+    //the ring buffer is full: hand everything to the drainer and wait until it has written some of it
+    private void waitForSpace() {
+        published = written;
+        while (written - (drainedSeen = drained) >= capacity) {
+            if (failure != null) throw new RuntimeException("could not write trace", failure);
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    //drainer thread: writes published records to the file until the tracer is closed and everything is written
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_RECORDS * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (true) {
+                boolean last = closed;
+                long end = published;
+                long position = drained;
+                if (position == end) {
+                    if (last) return;
+                    LockSupport.parkNanos(PARK_NANOS);
+                    continue;
+                }
+                while (position < end) {
+                    int index = (int) (position & (capacity - 1)) * 2;
+                    buffer.putLong(ring[index]).putLong(ring[index + 1]);
+                    position++;
+                    if (!buffer.hasRemaining() || position == end) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                        buffer.clear();
+                        //the run loop may reuse the slots once they are in the file
+                        drained = position;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * this method waits until every record so far is in the file
+     * @throws IOException when the file could not be written
+     */
+    public void flush() throws IOException {
+        published = written;
+        while (drained < written) {
+            if (failure != null) throw failure;
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * this method writes the remaining records, stops the drainer, and closes the file
+     * @throws IOException when the file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        published = written;
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    //getter for the number of records written by the run loop
+    public long getRecordCount() {
+        return written;
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/*
+Stays running and checks, compiles, and simulates the code every time it is saved, so there is no JVM startup
+between an edit and its results, and the linter, assembler, and interpreter are already compiled by the JIT.
+
+After every save of the code file (moncky2in/code.txt, or the file given as argument):
+1. the linter checks the code
+2. the compiler assembles it (only the lines that changed) and writes moncky2out/compiledCode.hex
+3. the interpreter runs it in slices and prints the registers and memory
+A save during a run cancels that run (between two steps, or between two slices of the simulation) and starts a new one.
+
+Options:
+- -budget N: stop a simulation after N instructions (default: run until halt or the next save)
+- -jit: compile the code to JVM bytecode before simulating it
+ */
+public class Moncky2Watcher {
+
+    //instructions simulated between two checks for a newer save
+    private static final long SLICE_SIZE = 1_000_000;
+    //editors often write a file in more than one step, events within this time are handled as one save
+    private static final long SETTLE_MILLIS = 20;
+    //runs of every demo program before watching, so the first save is not slowed down by the JIT
+    private static final int WARM_UP_RUNS = 50;
+
+    private final Path codeFile;
+    private final long budget;
+    private final boolean bytecodeCompilation;
+    //the compiler keeps its cache between runs, so a save only encodes the lines that changed
+    private final Moncky2Compiler compiler = new Moncky2Compiler();
+    //runs one save at a time, a new run waits until the cancelled one has stopped
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private AtomicBoolean cancelCurrentRun = new AtomicBoolean();
+    private int runs = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path codeFile = Path.of("moncky2in/code.txt");
+        long budget = Long.MAX_VALUE;
+        boolean jit = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-budget") && i + 1 < args.length) budget = Long.parseLong(args[++i]);
+            else if (args[i].equals("-jit")) jit = true;
+            else codeFile = Path.of(args[i]);
+        }
+        Moncky2Watcher watcher = new Moncky2Watcher(codeFile, budget, jit);
+        watcher.warmUp(Path.of("moncky2in/demos"));
+        watcher.watch();
+    }
+
+    /**
+     * constructor
+     * @param codeFile file with the code that is run after every save
+     * @param budget maximum number of instructions of a simulation (Long.MAX_VALUE for no limit)
+     * @param bytecodeCompilation true to simulate with compiled bytecode (see Moncky2BytecodeCompiler)
+     */
+    public Moncky2Watcher(Path codeFile, long budget, boolean bytecodeCompilation) {
+        this.codeFile = codeFile.toAbsolutePath();
+        this.budget = budget;
+        this.bytecodeCompilation = bytecodeCompilation;
+    }
+
+    /**
+     * this method assembles and simulates the programs in a directory a number of times without printing anything,
+     * so the JIT compiles the assembler and interpreter before the first save
+     * programs that fail or don't halt within one slice are skipped
+     * @param directory directory with example programs (moncky2in/demos)
+     */
+    public void warmUp(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return;
+        long start = System.nanoTime();
+        Path[] programs;
+        try (Stream<Path> files = Files.list(directory)) {
+            programs = files.filter(Files::isRegularFile).toArray(Path[]::new);
+        }
+        for (Path program : programs) {
+            String code = Files.readString(program);
+            try {
+                for (int i = 0; i < WARM_UP_RUNS; i++) {
+                    new IncrementalAssembler().assemble(code);
+                    Moncky2Interpreter m2i = new Moncky2Interpreter();
+                    m2i.loadCode(code);
+                    if (!m2i.run(SLICE_SIZE)) break;
+                }
+            } catch (RuntimeException ignored) {
+                //broken demo programs are only used as far as they go
+            }
+        }
+        System.out.printf("warmed up in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * this method runs the code once, then waits for saves of the code file and runs it again after every save
+     * it only returns when the thread is interrupted
+     */
+    public void watch() throws IOException, InterruptedException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            codeFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("watching " + codeFile + " (Ctrl+C to stop)");
+            startRun();
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean saved = isCodeFileEvent(key);
+                //wait until the editor is done writing, and collect the events of the same save
+                WatchKey next;
+                while ((next = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    saved |= isCodeFileEvent(next);
+                }
+                if (saved) startRun();
+            }
+        } finally {
+            cancelCurrentRun.set(true);
+            worker.shutdownNow();
+        }
+    }
+
+    //true if one of the events of the key is about the code file, the key is reset for the next events
+    private boolean isCodeFileEvent(WatchKey key) {
+        boolean codeFileEvent = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                codeFileEvent = true;
+            } else if (codeFile.getFileName().equals(event.context())) {
+                codeFileEvent = true;
+            }
+        }
+        key.reset();
+        return codeFileEvent;
+    }
+
+    //cancels the run that is busy and queues a new one
+    private void startRun() {
+        cancelCurrentRun.set(true);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        cancelCurrentRun = cancelled;
+        int run = ++runs;
+        worker.execute(() -> runOnce(run, cancelled));
+    }
+
+    /**
+     * this method lints, assembles, and simulates the code file once
+     * @param run number of the run, printed above its results
+     * @param cancelled becomes true when a newer save arrives, the run stops at the next check
+     */
+    private void runOnce(int run, AtomicBoolean cancelled) {
+        if (cancelled.get()) return;
+        System.out.println("----- run " + run + ": " + codeFile.getFileName() + " -----");
+        long start = System.nanoTime();
+        String code;
+        try {
+            code = Files.readString(codeFile);
+        } catch (IOException e) {
+            System.out.println("can't read " + codeFile + ": " + e.getMessage());
+            return;
+        }
+
+        long lintStart = System.nanoTime();
+        new Moncky2Linter(code).runCheck();
+        double lintTime = (System.nanoTime() - lintStart) / 1e6;
+        if (stopIfCancelled(run, cancelled)) return;
+
+        long assembleStart = System.nanoTime();
+        try {
+            compiler.compileCode(code);
+            compiler.parseHexCommands();
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+        double assembleTime = (System.nanoTime() - assembleStart) / 1e6;
+        if (stopIfCancelled(run, cancelled)) return;
+
+        long simulateStart = System.nanoTime();
+        Moncky2Interpreter m2i = new Moncky2Interpreter();
+        m2i.setBytecodeCompilation(bytecodeCompilation);
+        String result;
+        double simulateTime;
+        try {
+            m2i.loadCode(code);
+            boolean halted = false;
+            while (!halted && m2i.getInstructionCount() < budget) {
+                if (stopIfCancelled(run, cancelled)) return;
+                halted = m2i.run(Math.min(SLICE_SIZE, budget - m2i.getInstructionCount()));
+            }
+            simulateTime = (System.nanoTime() - simulateStart) / 1e6;
+            result = halted ? "halted" : "stopped after " + budget + " instructions (-budget)";
+            m2i.printCPU();
+        } catch (RuntimeException e) {
+            simulateTime = (System.nanoTime() - simulateStart) / 1e6;
+            result = "failed: " + e.getMessage();
+        }
+        System.out.printf("run %d %s: lint %.1f ms, assemble %.1f ms, simulate %.1f ms (%d instructions), total %.1f ms%n",
+                run, result, lintTime, assembleTime, simulateTime, m2i.getInstructionCount(), (System.nanoTime() - start) / 1e6);
+    }
+
+    private boolean stopIfCancelled(int run, AtomicBoolean cancelled) {
+        if (!cancelled.get()) return false;
+        System.out.println("run " + run + " cancelled, the file was saved again");
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/*
+Memory split into pages of PAGE_WORDS words that are shared copy-on-write between forks.
+
+A new PagedMemory allocates nothing: every page points at one shared page of zeros. The first write to a page
+gives this memory its own copy of the page, later writes go straight to that copy. fork() copies only the table of
+pages (PAGES references), after that the memory and its fork share every page and both copy a page before they
+write to it. So forking is cheap, and a fork only pays for the pages it changes.
+
+The page table of one memory is only used by one thread, forks of it can run on other threads: a shared page is
+never written, it is copied first.
+ */
+public class PagedMemory implements Moncky2Memory {
+
+    //words in one page (a power of two)
+    public static final int PAGE_WORDS = 1024;
+    private static final int PAGE_BITS = Integer.numberOfTrailingZeros(PAGE_WORDS);
+    private static final int PAGE_MASK = PAGE_WORDS - 1;
+    public static final int PAGES = WORDS / PAGE_WORDS;
+    //page every new memory starts with, it is never written
+    private static final short[] ZERO_PAGE = new short[PAGE_WORDS];
+
+    private final short[][] pages;
+    //true for the pages this memory may write in place, the others are shared with a fork (or the zero page)
+    private final boolean[] owned = new boolean[PAGES];
+
+    //constructor, every word is 0
+    public PagedMemory() {
+        pages = new short[PAGES][];
+        Arrays.fill(pages, ZERO_PAGE);
+    }
+
+    private PagedMemory(short[][] pages) {
+        this.pages = pages;
+    }
+
+    /**
+     * this method copies any memory into a new PagedMemory, only the pages with a word that isn't 0 are allocated
+     * @param memory memory to copy
+     * @return paged copy of the memory
+     */
+    public static PagedMemory copyOf(Moncky2Memory memory) {
+        PagedMemory copy = new PagedMemory();
+        for (int address = 0; address < WORDS; address++) {
+            short value = memory.read(address);
+            if (value != 0) copy.write(address, value);
+        }
+        return copy;
+    }
+
+    @Override
+    public short read(int address) {
+        return pages[address >> PAGE_BITS][address & PAGE_MASK];
+    }
+
+    @Override
+    public void write(int address, short value) {
+        int page = address >> PAGE_BITS;
+        if (!owned[page]) ownPage(page);
+        pages[page][address & PAGE_MASK] = value;
+    }
+
+    @Override
+    public void load(short[] words) {
+        for (int start = 0; start < words.length; start += PAGE_WORDS) {
+            int page = start >> PAGE_BITS;
+            if (!owned[page]) ownPage(page);
+            System.arraycopy(words, start, pages[page], 0, Math.min(PAGE_WORDS, words.length - start));
+        }
+    }
+
+    //gives this memory its own copy of a shared page
+    private void ownPage(int page) {
+        pages[page] = pages[page].clone();
+        owned[page] = true;
+    }
+
+    /**
+     * this method creates a memory with the same words that shares every page with this memory
+     * both memories copy a shared page before they write to it, so they never see each other's writes
+     * @return the fork
+     */
+    public PagedMemory fork() {
+        //from now on every page is shared, so neither memory may write one in place
+        Arrays.fill(owned, false);
+        return new PagedMemory(pages.clone());
+    }
+
+    //getter for the number of pages this memory has copied (the others are shared or still 0)
+    public int getOwnedPages() {
+        int count = 0;
+        for (boolean page : owned) {
+            if (page) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.function.IntConsumer;
+
+/*
+Recorder that keeps only the last instruction words that were executed, in a ring buffer of fixed size.
+Memory use stays the same no matter how long the program runs.
+ */
+public class RecentInstructionBuffer implements IntConsumer {
+
+    private final short[] words;
+    //total number of words recorded so far (the next word goes to index recorded % size)
+    private long recorded = 0;
+
+    /**
+     * @param size number of instruction words to keep
+     */
+    public RecentInstructionBuffer(int size) {
+        words = new short[size];
+    }
+
+    @Override
+    public void accept(int word) {
+        words[(int) (recorded % words.length)] = (short) word;
+        recorded++;
+    }
+
+    //getter for the total number of recorded words, including the ones that were overwritten
+    public long getRecordedCount() {
+        return recorded;
+    }
+
+    /**
+     * @return the kept instruction words, from oldest to newest
+     */
+    public short[] getWords() {
+        int kept = (int) Math.min(recorded, words.length);
+        short[] result = new short[kept];
+        for (int i = 0; i < kept; i++) {
+            result[i] = words[(int) ((recorded - kept + i) % words.length)];
+        }
+        return result;
+    }
+}
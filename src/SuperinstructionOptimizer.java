@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+/*
+Optional optimization stage over a decoded program (see CommandDecoder).
+Common instruction sequences are merged into one superinstruction, so the interpreter dispatches once for the whole sequence.
+
+The optimized program has the same length as the decoded program. A superinstruction is placed at the index of the
+first instruction of its sequence and reads its operands from the decoded program, the other instructions of the
+sequence stay where they are. Jumps into the middle of a sequence therefore still work.
+Instructions that read or write register 15 are never fused, because the superinstruction only updates register 15 at the end.
+ */
+public class SuperinstructionOptimizer {
+
+    //opcodes of superinstructions, they follow the opcodes of CommandDecoder
+    public static final int OP_LI_SHL = 32;       // li rY, k      shl rX, rY
+    public static final int OP_LI_LI_SHL = 33;    // li rX, v      li rY, k      shl rX, rY
+    public static final int OP_SUB_JUMP = 34;     // sub rA, rB    jpXX rC
+    public static final int OP_LI_JUMP = 35;      // li rX, :label jp/jpXX rX
+    public static final int OP_LI_SUB_JUMP = 36;  // li rA, v      sub rA, rB    jpXX rC
+    public static final int OP_ALU_ALU = 37;      // two ALU operations in a row
+    public static final int FIRST_FUSED = OP_LI_SHL;
+
+    //names and lengths (number of fused instructions) of the superinstructions, indexed by opcode - FIRST_FUSED
+    public static final String[] NAMES = {"li+shl", "li+li+shl", "sub+jump", "li+jump", "li+sub+jump", "alu+alu"};
+    public static final int[] LENGTHS = {2, 3, 2, 2, 3, 2};
+
+    //number of places in the program where each superinstruction was used
+    private final int[] sites = new int[NAMES.length];
+    //number of times each superinstruction was executed, counted by the interpreter in this array
+    private final long[] executions = new long[NAMES.length];
+
+    /**
+     * this method replaces the first instruction of every recognized sequence with a superinstruction
+     * a superinstruction keeps the register and immediate fields of the first instruction, only the opcode changes
+     * the statistics are reset, they describe the new program
+     * @param program decoded program (not changed)
+     * @return optimized program with the same length
+     */
+    public int[] optimize(int[] program) {
+        Arrays.fill(sites, 0);
+        Arrays.fill(executions, 0);
+        int[] optimized = program.clone();
+        for (int i = 0; i < program.length; i++) {
+            int fused = fuseAt(program, i);
+            if (fused >= 0) {
+                optimized[i] = (program[i] & ~0xFF) | fused;
+                sites[fused - FIRST_FUSED]++;
+            }
+        }
+        return optimized;
+    }
+
+    //returns the longest superinstruction starting at index i, or -1 if there is none
+    private static int fuseAt(int[] program, int i) {
+        int first = program[i];
+        int second = i + 1 < program.length ? program[i + 1] : CommandDecoder.OP_SKIP;
+        int third = i + 2 < program.length ? program[i + 2] : CommandDecoder.OP_SKIP;
+        int op1 = first & 0xFF;
+        int op2 = second & 0xFF;
+        int op3 = third & 0xFF;
+        if (!fusable(first) || !fusable(second)) return -1;
+
+        if (op1 == CommandDecoder.OP_LI && op2 == CommandDecoder.OP_LI && op3 == CommandDecoder.OP_SHL && fusable(third)
+                && CommandDecoder.registerA(third) == CommandDecoder.registerA(first)
+                && CommandDecoder.registerB(third) == CommandDecoder.registerA(second)) {
+            return OP_LI_LI_SHL;
+        }
+        if (op1 == CommandDecoder.OP_LI && op2 == CommandDecoder.OP_SUB && isConditionalJump(op3) && fusable(third)
+                && CommandDecoder.registerA(second) == CommandDecoder.registerA(first)) {
+            return OP_LI_SUB_JUMP;
+        }
+        if (op1 == CommandDecoder.OP_LI && op2 == CommandDecoder.OP_SHL && CommandDecoder.registerB(second) == CommandDecoder.registerA(first)) {
+            return OP_LI_SHL;
+        }
+        if (op1 == CommandDecoder.OP_SUB && isConditionalJump(op2)) {
+            return OP_SUB_JUMP;
+        }
+        if (op1 == CommandDecoder.OP_LI && (op2 == CommandDecoder.OP_JP || isConditionalJump(op2))
+                && CommandDecoder.registerA(second) == CommandDecoder.registerA(first)) {
+            return OP_LI_JUMP;
+        }
+        if (isALU(op1) && isALU(op2)) {
+            return OP_ALU_ALU;
+        }
+        return -1;
+    }
+
+    //instructions that can be part of a superinstruction: no register 15, no memory access, nothing that can fail
+    private static boolean fusable(int instruction) {
+        int opcode = instruction & 0xFF;
+        if (opcode != CommandDecoder.OP_LI && opcode != CommandDecoder.OP_JP && !isConditionalJump(opcode) && !isALU(opcode)) {
+            return false;
+        }
+        if (CommandDecoder.registerA(instruction) == 15) return false;
+        return opcode == CommandDecoder.OP_LI || opcode == CommandDecoder.OP_JP || isConditionalJump(opcode)
+                || CommandDecoder.registerB(instruction) != 15;
+    }
+
+    public static boolean isConditionalJump(int opcode) {
+        return opcode >= CommandDecoder.OP_JPC && opcode <= CommandDecoder.OP_JPNO;
+    }
+
+    public static boolean isALU(int opcode) {
+        return opcode >= CommandDecoder.OP_NOP && opcode <= CommandDecoder.OP_NEG;
+    }
+
+    /**
+     * this method builds a report with, for every superinstruction, how often it was placed and executed
+     * and how many dispatches it saved
+     * @param instructionCount total number of executed instructions (Moncky2Interpreter.getInstructionCount)
+     * @return report text, one line per superinstruction
+     */
+    public String getReport(long instructionCount) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-12s %8s %12s %16s %8s%n", "fusion", "sites", "executions", "saved dispatches", "saved %"));
+        long totalSaved = 0;
+        for (int i = 0; i < NAMES.length; i++) {
+            long saved = executions[i] * (LENGTHS[i] - 1);
+            totalSaved += saved;
+            report.append(String.format("%-12s %8d %12d %16d %7.1f%%%n", NAMES[i], sites[i], executions[i], saved,
+                    instructionCount == 0 ? 0.0 : 100.0 * saved / instructionCount));
+        }
+        report.append(String.format("%d instructions executed with %d dispatches%n", instructionCount, instructionCount - totalSaved));
+        return report.toString();
+    }
+
+    //getter for the number of places each superinstruction was used, indexed by opcode - FIRST_FUSED
+    public int[] getSites() {
+        return sites;
+    }
+
+    //getter for the number of executions of each superinstruction, indexed by opcode - FIRST_FUSED
+    public long[] getExecutions() {
+        return executions;
+    }
+}
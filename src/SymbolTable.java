@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SymbolTable {
+
+    //label -> value loaded by "li rX, :label" (index of the instruction before the label)
+    private final HashMap<String, Short> labelValues = new HashMap<>();
+    //label -> line number (starting at 1) where the label is defined
+    private final HashMap<String, Integer> labelLines = new HashMap<>();
+    //every definition of a label that was already defined earlier, as "label" and "line number" pairs
+    private final ArrayList<String> duplicateLabels = new ArrayList<>();
+    private final ArrayList<Integer> duplicateLines = new ArrayList<>();
+
+    /**
+     * constructor with the raw lines of a program (including blank lines, comments, and labels)
+     * goes through the code once and stores the value and line of every label
+     * when a label is defined more than once, the first definition is used
+     * @param codeLines raw lines of source code
+     */
+    public SymbolTable(String[] codeLines) {
+        int instructionCount = 0;
+        Moncky2Lexer lexer = new Moncky2Lexer();
+        for (int i = 0; i < codeLines.length; i++) {
+            int kind = Moncky2Lexer.firstKind(codeLines[i]);
+            if (kind == Moncky2Lexer.NONE || kind == Moncky2Lexer.COMMENT) continue;
+            if (kind != Moncky2Lexer.LABEL) {
+                instructionCount++;
+                continue;
+            }
+            lexer.lex(codeLines[i]);
+            String label = lexer.text(0);
+            if (labelValues.containsKey(label)) {
+                duplicateLabels.add(label);
+                duplicateLines.add(i + 1);
+                continue;
+            }
+            labelValues.put(label, (short) (instructionCount - 1));
+            labelLines.put(label, i + 1);
+        }
+    }
+
+    //empty table, filled by moved
+    private SymbolTable() {
+    }
+
+    /**
+     * this method makes the table of a program in which lines were added or removed without changing a label line
+     * the labels from firstLine on get the same name, and move by lineShift lines and valueShift instructions
+     * @param firstLine line number (starting at 1) of the first label that moved
+     * @param lineShift number of lines added before those labels (negative when lines were removed)
+     * @param valueShift number of instructions added before those labels (negative when instructions were removed)
+     * @return a new table, this table does not change
+     */
+    public SymbolTable moved(int firstLine, int lineShift, int valueShift) {
+        SymbolTable moved = new SymbolTable();
+        for (Map.Entry<String, Integer> label : labelLines.entrySet()) {
+            int line = label.getValue();
+            short value = labelValues.get(label.getKey());
+            if (line >= firstLine) {
+                line += lineShift;
+                value += valueShift;
+            }
+            moved.labelValues.put(label.getKey(), value);
+            moved.labelLines.put(label.getKey(), line);
+        }
+        moved.duplicateLabels.addAll(duplicateLabels);
+        for (int line : duplicateLines) {
+            moved.duplicateLines.add(line >= firstLine ? line + lineShift : line);
+        }
+        return moved;
+    }
+
+    /**
+     * this method reads the name of a label from a label line ":loop   ;comment" -> ":loop" (the first token, see Moncky2Lexer)
+     * @param labelLine stripped line of code starting with ':'
+     * @return the label including the ':'
+     */
+    public static String getLabelName(String labelLine) {
+        Moncky2Lexer lexer = new Moncky2Lexer();
+        lexer.lex(labelLine);
+        return lexer.text(0);
+    }
+
+    public boolean contains(String label) {
+        return labelValues.containsKey(label);
+    }
+
+    /**
+     * @param label the label to look up, starting with ':'
+     * @return value loaded into a register by "li rX, :label"
+     */
+    public short getValue(String label) {
+        Short value = labelValues.get(label);
+        if (value == null) {
+            //throw an exception when no label is found in code
+            throw new RuntimeException("label " + label + " not found in code");
+        }
+        return value;
+    }
+
+    /**
+     * @param label the label to look up, starting with ':'
+     * @return line number (starting at 1) of the first definition of the label, or -1 if it is not defined
+     */
+    public int getLine(String label) {
+        return labelLines.getOrDefault(label, -1);
+    }
+
+    //getter for the labels that are defined more than once (one entry for each extra definition)
+    public ArrayList<String> getDuplicateLabels() {
+        return duplicateLabels;
+    }
+
+    //getter for the line numbers of the extra definitions, in the same order as getDuplicateLabels
+    public ArrayList<Integer> getDuplicateLines() {
+        return duplicateLines;
+    }
+
+    /**
+     * this method looks for "li rX, :label" instructions that use a label that is not defined
+     * @param commands list of instructions without blank lines, comments, or labels
+     * @return every missing label, in the order they are used
+     */
+    public ArrayList<String> findMissingLabels(String[] commands) {
+        ArrayList<String> missingLabels = new ArrayList<>();
+        Moncky2Lexer lexer = new Moncky2Lexer();
+        for (String command : commands) {
+            if (command.indexOf(':') < 0) continue;
+            lexer.lex(command);
+            if (lexer.is(0, "li") && lexer.kind(2) == Moncky2Lexer.LABEL) {
+                String label = lexer.text(2);
+                if (!contains(label) && !missingLabels.contains(label)) missingLabels.add(label);
+            }
+        }
+        return missingLabels;
+    }
+}